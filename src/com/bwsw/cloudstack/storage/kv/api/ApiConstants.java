@@ -37,5 +37,7 @@ public class ApiConstants {
     public static final String SCROLL = "scroll";
     public static final String SCROLL_ID = "scrollid";
     public static final String TIMEOUT = "timeout";
+    public static final String PREFIX = "prefix";
+    public static final String CURSOR = "cursor";
 
 }
@@ -18,6 +18,7 @@
 package com.bwsw.cloudstack.storage.kv.api;
 
 import com.bwsw.cloudstack.storage.kv.response.KvStorageResponse;
+import com.bwsw.cloudstack.storage.kv.response.KvStorages;
 import com.bwsw.cloudstack.storage.kv.service.KvStorageManager;
 import com.cloud.exception.ConcurrentOperationException;
 import com.cloud.user.Account;
@@ -47,6 +48,10 @@ public class ListAccountKvStoragesCmd extends BaseListCmd {
     @Parameter(name = ApiConstants.ACCOUNT_ID, type = CommandType.UUID, entityType = AccountResponse.class, required = true, description = "the ID of the account")
     private Long accountId;
 
+    @Parameter(name = com.bwsw.cloudstack.storage.kv.api.ApiConstants.CURSOR, type = CommandType.STRING,
+            description = "a cursor returned by the previous request to retrieve the next page or * to retrieve the first page; page is ignored if specified")
+    private String cursor;
+
     @Inject
     private KvStorageManager _kvStorageManager;
 
@@ -54,6 +59,10 @@ public class ListAccountKvStoragesCmd extends BaseListCmd {
         return accountId;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
     @Override
     public long getEntityOwnerId() {
         Account account = _entityMgr.findById(Account.class, getAccountId());
@@ -66,6 +75,12 @@ public class ListAccountKvStoragesCmd extends BaseListCmd {
 
     @Override
     public void execute() throws ServerApiException, ConcurrentOperationException {
+        if (getCursor() != null) {
+            KvStorages response = _kvStorageManager.listAccountStorages(getAccountId(), getCursor(), getPageSizeVal());
+            response.setResponseName(getCommandName());
+            setResponseObject(response);
+            return;
+        }
         ListResponse<KvStorageResponse> response = _kvStorageManager.listAccountStorages(getAccountId(), getStartIndex(), getPageSizeVal());
         response.setResponseName(getCommandName());
         response.setObjectName("kvstorages");
@@ -22,6 +22,7 @@ import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
 import org.apache.cloudstack.acl.RoleType;
 import org.apache.cloudstack.api.APICommand;
 import org.apache.cloudstack.api.BaseCmd;
+import org.apache.cloudstack.api.Parameter;
 import org.apache.cloudstack.api.ResponseObject;
 
 @APICommand(name = ListKvStorageKeysCmd.API_NAME, description = "List keys in the storage", responseObject = KvKeys.class, requestHasSensitiveInfo = false,
@@ -31,9 +32,30 @@ public class ListKvStorageKeysCmd extends BaseKvStorageCmd {
 
     public static final String API_NAME = "listKvStorageKeys";
 
+    @Parameter(name = ApiConstants.PREFIX, required = false, type = CommandType.STRING, description = "a prefix of keys to be listed")
+    private String prefix;
+
+    @Parameter(name = ApiConstants.CURSOR, required = false, type = CommandType.STRING, description = "a cursor returned by the previous request to retrieve the next page")
+    private String cursor;
+
+    @Parameter(name = ApiConstants.SIZE, required = false, type = CommandType.INTEGER, description = "a number of keys returned in the page")
+    private Integer size;
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
     @Override
     protected KvOperationResponse getResponse() {
-        return _kvStorageManager.listKeys(getStorageId());
+        return _kvStorageManager.listKeys(getStorageId(), getPrefix(), getCursor(), getSize());
     }
 
     @Override
@@ -19,6 +19,8 @@ package com.bwsw.cloudstack.storage.kv.cache;
 
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 
@@ -26,7 +28,57 @@ public interface KvStorageCache {
 
     Optional<KvStorage> get(String id) throws ExecutionException;
 
+    /**
+     * Returns storages by ids loading missing ones with a single request.
+     */
+    Map<String, Optional<KvStorage>> getAll(Iterable<String> ids) throws ExecutionException;
+
     void invalidateAll(Iterable<String> ids);
 
+    /**
+     * Starts recording storages changed or invalidated so that storages retrieved from the registry afterwards are not
+     * cached by {@link #putAll(Collection)} if they have been changed since.
+     */
+    void startWarmUp();
+
+    /**
+     * Caches storages retrieved from the registry after the warm-up is started unless they are cached already or have
+     * been changed since the warm-up start.
+     *
+     * @return the number of cached storages
+     */
+    int putAll(Collection<KvStorage> storages);
+
+    void finishWarmUp();
+
+    /**
+     * Reloads cached storages asynchronously. Current values are returned until new ones are loaded and are kept
+     * if reloading fails. Storages not cached are not loaded.
+     *
+     * @return the number of storages being reloaded
+     */
+    int refreshAll(Iterable<String> ids);
+
     void invalidateAll();
+
+    /**
+     * Starts an update of the filter of existing storage ids. Ids of storages cached, refreshed or invalidated after the
+     * update is started are put to the filter passed to {@link #finishIdFilterUpdate(KvStorageIdFilter)}.
+     */
+    void startIdFilterUpdate();
+
+    /**
+     * Sets the filter of existing storage ids so that storages not contained in the filter are returned as nonexistent
+     * without registry lookups. Ids of storages cached, refreshed or invalidated afterwards are put to the filter.
+     *
+     * @param idFilter the filter built from the registry after the update is started; null keeps the current filter
+     */
+    void finishIdFilterUpdate(KvStorageIdFilter idFilter);
+
+    /**
+     * Invalidates cached access checks of storages for all calling accounts.
+     */
+    void invalidateAccess(Iterable<String> ids);
+
+    void invalidateAccess();
 }
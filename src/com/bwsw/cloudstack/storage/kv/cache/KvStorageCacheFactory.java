@@ -20,4 +20,6 @@ package com.bwsw.cloudstack.storage.kv.cache;
 public interface KvStorageCacheFactory {
 
     KvStorageCache getCache();
+
+    KvValueCache getValueCache();
 }
@@ -23,16 +23,36 @@ import com.bwsw.cloudstack.storage.kv.exception.InvalidEntityException;
 import com.bwsw.cloudstack.storage.kv.security.AccessChecker;
 import com.bwsw.cloudstack.storage.kv.service.KvExecutor;
 import com.bwsw.cloudstack.storage.kv.service.KvRequestBuilder;
+import com.bwsw.cloudstack.storage.kv.util.TimeManager;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
 
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageAccessCacheMaxSize;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageAccessCacheTtl;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCacheAbsentMaxSize;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCacheAbsentTtl;
 import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCacheMaxSize;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageValueCacheAccountTtl;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageValueCacheMaxSize;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageValueCacheTempTtl;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageValueCacheVmTtl;
 
 public class KvStorageCacheFactoryImpl implements KvStorageCacheFactory {
 
@@ -48,6 +68,9 @@ public class KvStorageCacheFactoryImpl implements KvStorageCacheFactory {
     @Inject
     private KvStorageClientManager _kvStorageClientManager;
 
+    @Inject
+    private TimeManager _timeManager;
+
     @Override
     public KvStorageCache getCache() {
         LoadingCache<String, Optional<KvStorage>> cache = CacheBuilder.newBuilder().maximumSize(KvStorageCacheMaxSize.value()).expireAfterAccess(1, TimeUnit.HOURS)
@@ -55,19 +78,74 @@ public class KvStorageCacheFactoryImpl implements KvStorageCacheFactory {
                     @Override
                     public Optional<KvStorage> load(String key) throws Exception {
                         GetRequest request = _kvRequestBuilder.getGetRequest(key);
-                        KvStorage storage = _kvExecutor.get(_kvStorageClientManager.getEsClient(), request, KvStorage.class);
-                        if (storage == null) {
-                            return Optional.empty();
-                        }
-                        if (storage.getType() == null || storage.getDeleted() == null) {
-                            throw new InvalidEntityException();
-                        }
-                        if (storage.getDeleted()) {
-                            return Optional.empty();
+                        return getCachedStorage(_kvExecutor.get(_kvStorageClientManager.getEsClient(), request, KvStorage.class));
+                    }
+
+                    @Override
+                    public ListenableFuture<Optional<KvStorage>> reload(String key, Optional<KvStorage> oldValue) {
+                        SettableFuture<Optional<KvStorage>> future = SettableFuture.create();
+                        GetRequest request = _kvRequestBuilder.getGetRequest(key);
+                        _kvExecutor.getAsync(_kvStorageClientManager.getEsClient(), request, KvStorage.class).whenComplete((storage, throwable) -> {
+                            if (throwable != null) {
+                                future.setException(throwable);
+                                return;
+                            }
+                            try {
+                                future.set(getCachedStorage(storage));
+                            } catch (Exception e) {
+                                future.setException(e);
+                            }
+                        });
+                        return future;
+                    }
+
+                    @Override
+                    public Map<String, Optional<KvStorage>> loadAll(Iterable<? extends String> keys) throws Exception {
+                        List<String> ids = Lists.newArrayList(keys);
+                        MultiGetRequest request = _kvRequestBuilder.getMultiGetRequest(ids);
+                        Map<String, KvStorage> storages = _kvExecutor.multiGet(_kvStorageClientManager.getEsClient(), request, KvStorage.class);
+                        Map<String, Optional<KvStorage>> results = new HashMap<>();
+                        for (String id : ids) {
+                            results.put(id, getCachedStorage(storages.get(id)));
                         }
-                        return Optional.of(storage);
+                        return results;
                     }
                 });
-        return new KvStorageCacheImpl(cache, _accessChecker);
+        Cache<String, Set<Long>> accessCache = null;
+        if (KvStorageAccessCacheTtl.value() > 0) {
+            accessCache = CacheBuilder.newBuilder().maximumSize(KvStorageAccessCacheMaxSize.value()).expireAfterWrite(KvStorageAccessCacheTtl.value(), TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        Cache<String, Boolean> absentCache = null;
+        if (KvStorageCacheAbsentTtl.value() > 0) {
+            absentCache = CacheBuilder.newBuilder().maximumSize(KvStorageCacheAbsentMaxSize.value()).expireAfterWrite(KvStorageCacheAbsentTtl.value(), TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return new KvStorageCacheImpl(cache, _accessChecker, accessCache, absentCache);
+    }
+
+    private static Optional<KvStorage> getCachedStorage(KvStorage storage) {
+        if (storage == null) {
+            return Optional.empty();
+        }
+        if (storage.getType() == null || storage.getDeleted() == null) {
+            throw new InvalidEntityException();
+        }
+        if (storage.getDeleted()) {
+            return Optional.empty();
+        }
+        return Optional.of(storage);
+    }
+
+    @Override
+    public KvValueCache getValueCache() {
+        Map<KvStorage.KvStorageType, Integer> ttls = new EnumMap<>(KvStorage.KvStorageType.class);
+        ttls.put(KvStorage.KvStorageType.ACCOUNT, KvStorageValueCacheAccountTtl.value());
+        ttls.put(KvStorage.KvStorageType.TEMP, KvStorageValueCacheTempTtl.value());
+        ttls.put(KvStorage.KvStorageType.VM, KvStorageValueCacheVmTtl.value());
+        long maxTtl = Math.max(0, Collections.max(ttls.values()));
+        Cache<KvValueCacheImpl.ValueKey, KvValueCacheImpl.CachedValue> cache = CacheBuilder.newBuilder().maximumSize(KvStorageValueCacheMaxSize.value())
+                .expireAfterWrite(maxTtl, TimeUnit.MILLISECONDS).build();
+        return new KvValueCacheImpl(cache, ttls, _timeManager);
     }
 }
@@ -20,41 +20,271 @@ package com.bwsw.cloudstack.storage.kv.cache;
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 import com.bwsw.cloudstack.storage.kv.exception.InvalidEntityException;
 import com.bwsw.cloudstack.storage.kv.security.AccessChecker;
+import com.google.common.cache.Cache;
 import com.google.common.cache.LoadingCache;
+import org.apache.cloudstack.context.CallContext;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 public class KvStorageCacheImpl implements KvStorageCache {
 
     private final LoadingCache<String, Optional<KvStorage>> _cache;
     private final AccessChecker _accessChecker;
+    private final Cache<String, Set<Long>> _accessCache;
+    private final Cache<String, Boolean> _absentCache;
+    private final Object _idFilterLock = new Object();
+    private volatile KvStorageIdFilter _idFilter;
+    private Set<String> _idFilterUpdateIds;
+    private volatile WarmUp _warmUp;
 
-    KvStorageCacheImpl(LoadingCache<String, Optional<KvStorage>> cache, AccessChecker accessChecker) {
+    /**
+     * @param accessCache the cache of accounts granted access by the storage; null disables caching
+     * @param absentCache the cache of nonexistent and deleted storage ids; null disables caching
+     */
+    KvStorageCacheImpl(LoadingCache<String, Optional<KvStorage>> cache, AccessChecker accessChecker, Cache<String, Set<Long>> accessCache,
+            Cache<String, Boolean> absentCache) {
         this._cache = cache;
         _accessChecker = accessChecker;
+        _accessCache = accessCache;
+        _absentCache = absentCache;
     }
 
     public Optional<KvStorage> get(String id) throws ExecutionException {
-        Optional<KvStorage> cachedStorage = _cache.get(id);
-        if (cachedStorage.isPresent()) {
-            KvStorage storage = cachedStorage.get();
-            try {
-                _accessChecker.check(storage);
-            } catch (InvalidEntityException e) {
-                return Optional.empty();
+        if (isAbsent(id)) {
+            return Optional.empty();
+        }
+        return check(cacheAbsent(id, _cache.get(id)));
+    }
+
+    @Override
+    public Map<String, Optional<KvStorage>> getAll(Iterable<String> ids) throws ExecutionException {
+        Map<String, Optional<KvStorage>> results = new HashMap<>();
+        List<String> loadedIds = new ArrayList<>();
+        for (String id : ids) {
+            if (isAbsent(id)) {
+                results.put(id, Optional.empty());
+            } else {
+                loadedIds.add(id);
             }
         }
-        return cachedStorage;
+        for (Map.Entry<String, Optional<KvStorage>> entry : _cache.getAll(loadedIds).entrySet()) {
+            results.put(entry.getKey(), check(cacheAbsent(entry.getKey(), entry.getValue())));
+        }
+        return results;
     }
 
     @Override
     public void invalidateAll(Iterable<String> ids) {
+        recordChanged(ids);
         _cache.invalidateAll(ids);
+        invalidateAccess(ids);
+        forgetAbsent(ids);
+    }
+
+    @Override
+    public void startWarmUp() {
+        _warmUp = new WarmUp();
+    }
+
+    @Override
+    public int putAll(Collection<KvStorage> storages) {
+        WarmUp warmUp = _warmUp;
+        if (warmUp == null) {
+            throw new IllegalStateException("Warm-up is not started");
+        }
+        int cached = 0;
+        List<String> ids = new ArrayList<>();
+        for (KvStorage storage : storages) {
+            if (storage.getType() == null || !Boolean.FALSE.equals(storage.getDeleted()) || warmUp.isChanged(storage.getId())) {
+                continue;
+            }
+            Optional<KvStorage> value = Optional.of(storage);
+            if (_cache.asMap().putIfAbsent(storage.getId(), value) == null) {
+                // changes are recorded before invalidation so that a change concurrent with the put is either seen here
+                // or invalidates the put value
+                if (warmUp.isChanged(storage.getId())) {
+                    _cache.asMap().remove(storage.getId(), value);
+                    continue;
+                }
+                cached++;
+            }
+            ids.add(storage.getId());
+        }
+        forgetAbsent(ids);
+        return cached;
+    }
+
+    @Override
+    public void finishWarmUp() {
+        _warmUp = null;
+    }
+
+    @Override
+    public int refreshAll(Iterable<String> ids) {
+        recordChanged(ids);
+        // changed storages may be created ones
+        forgetAbsent(ids);
+        int refreshed = 0;
+        for (String id : ids) {
+            if (_cache.asMap().containsKey(id)) {
+                _cache.refresh(id);
+                refreshed++;
+            }
+        }
+        return refreshed;
     }
 
     @Override
     public void invalidateAll() {
+        WarmUp warmUp = _warmUp;
+        if (warmUp != null) {
+            warmUp.setAllChanged();
+        }
         _cache.invalidateAll();
+        invalidateAccess();
+        if (_absentCache != null) {
+            _absentCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void startIdFilterUpdate() {
+        synchronized (_idFilterLock) {
+            _idFilterUpdateIds = new HashSet<>();
+        }
+    }
+
+    @Override
+    public void finishIdFilterUpdate(KvStorageIdFilter idFilter) {
+        synchronized (_idFilterLock) {
+            if (idFilter != null) {
+                // ids put to the current filter during the update may be missing from the registry snapshot
+                if (_idFilterUpdateIds != null) {
+                    _idFilterUpdateIds.forEach(idFilter::put);
+                }
+                _idFilter = idFilter;
+            }
+            _idFilterUpdateIds = null;
+        }
+    }
+
+    @Override
+    public void invalidateAccess(Iterable<String> ids) {
+        if (_accessCache != null) {
+            _accessCache.invalidateAll(ids);
+        }
+    }
+
+    @Override
+    public void invalidateAccess() {
+        if (_accessCache != null) {
+            _accessCache.invalidateAll();
+        }
+    }
+
+    private boolean isAbsent(String id) {
+        KvStorageIdFilter idFilter = _idFilter;
+        return _absentCache != null && _absentCache.getIfPresent(id) != null || idFilter != null && !idFilter.mightContain(id);
+    }
+
+    /**
+     * Moves nonexistent and deleted storages from the storage cache to the cache of absent storages so that they do not
+     * evict existing storages.
+     */
+    private Optional<KvStorage> cacheAbsent(String id, Optional<KvStorage> storage) {
+        if (!storage.isPresent()) {
+            _cache.asMap().remove(id, storage);
+            if (_absentCache != null) {
+                _absentCache.put(id, Boolean.TRUE);
+            }
+        }
+        return storage;
+    }
+
+    private void recordChanged(Iterable<String> ids) {
+        WarmUp warmUp = _warmUp;
+        if (warmUp != null) {
+            ids.forEach(warmUp::addChanged);
+        }
+    }
+
+    private void forgetAbsent(Iterable<String> ids) {
+        if (_absentCache != null) {
+            _absentCache.invalidateAll(ids);
+        }
+        synchronized (_idFilterLock) {
+            for (String id : ids) {
+                if (_idFilter != null) {
+                    _idFilter.put(id);
+                }
+                if (_idFilterUpdateIds != null) {
+                    _idFilterUpdateIds.add(id);
+                }
+            }
+        }
+    }
+
+    private Optional<KvStorage> check(Optional<KvStorage> cachedStorage) {
+        if (cachedStorage.isPresent() && !isAccessible(cachedStorage.get())) {
+            return Optional.empty();
+        }
+        return cachedStorage;
+    }
+
+    private boolean isAccessible(KvStorage storage) {
+        if (_accessCache == null || storage.getType() == KvStorage.KvStorageType.TEMP) {
+            return check(storage);
+        }
+        long accountId = CallContext.current().getCallingAccountId();
+        Set<Long> accountIds = _accessCache.getIfPresent(storage.getId());
+        if (accountIds != null && accountIds.contains(accountId)) {
+            return true;
+        }
+        // denied access is thrown and invalid entities are rechecked, neither is cached
+        if (!check(storage)) {
+            return false;
+        }
+        // accounts added later expire with the ones checked first so that no check is cached longer than the ttl
+        _accessCache.asMap().computeIfAbsent(storage.getId(), id -> ConcurrentHashMap.newKeySet()).add(accountId);
+        return true;
+    }
+
+    private boolean check(KvStorage storage) {
+        try {
+            _accessChecker.check(storage);
+            return true;
+        } catch (InvalidEntityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Ids of storages changed since the warm-up registry snapshot was taken.
+     */
+    private static class WarmUp {
+
+        private final Set<String> _changedIds = ConcurrentHashMap.newKeySet();
+        private volatile boolean _allChanged;
+
+        void addChanged(String id) {
+            _changedIds.add(id);
+        }
+
+        void setAllChanged() {
+            _allChanged = true;
+        }
+
+        boolean isChanged(String id) {
+            return _allChanged || _changedIds.contains(id);
+        }
     }
 }
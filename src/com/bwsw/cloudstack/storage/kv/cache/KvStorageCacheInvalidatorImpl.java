@@ -0,0 +1,72 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.cache;
+
+import com.bwsw.cloudstack.storage.kv.event.EventTypes;
+import com.bwsw.cloudstack.storage.kv.event.KvStorageCacheEventSubscriber;
+import com.cloud.event.EventCategory;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import org.apache.cloudstack.framework.events.Event;
+import org.apache.cloudstack.framework.events.EventBus;
+import org.apache.log4j.Logger;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Invalidates changed storages in the local cache and publishes their ids to the event bus. The recommended event buses
+ * deliver events to the publishing management server only, so that other management servers rely on
+ * {@link KvStorageCacheUpdater} and serve changed storages until its next update scan.
+ */
+public class KvStorageCacheInvalidatorImpl implements KvStorageCacheInvalidator {
+
+    private static final Logger s_logger = Logger.getLogger(KvStorageCacheInvalidatorImpl.class);
+
+    private static final String EVENT_SOURCE = "management-server";
+    private static final int EVENT_BATCH_SIZE = 500;
+
+    @Inject
+    private EventBus _eventBus;
+
+    @Inject
+    private KvStorageCache _kvStorageCache;
+
+    private final Gson _gson = new Gson();
+
+    @Override
+    public void invalidate(Collection<String> storageIds) {
+        if (storageIds.isEmpty()) {
+            return;
+        }
+        _kvStorageCache.invalidateAll(storageIds);
+        for (List<String> ids : Lists.partition(new ArrayList<>(storageIds), EVENT_BATCH_SIZE)) {
+            Event event = new Event(EVENT_SOURCE, EventCategory.ACTION_EVENT.getName(), EventTypes.EVENT_KV_STORAGE_CACHE_INVALIDATE,
+                    KvStorageCacheEventSubscriber.RESOURCE_TYPE, null);
+            event.setDescription(_gson.toJson(Collections.singletonMap(KvStorageCacheEventSubscriber.STORAGES_DETAIL, String.join(",", ids))));
+            try {
+                _eventBus.publish(event);
+            } catch (Exception e) {
+                s_logger.error("Unable to publish the cache invalidation event for storages " + ids, e);
+            }
+        }
+    }
+}
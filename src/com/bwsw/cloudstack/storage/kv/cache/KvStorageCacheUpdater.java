@@ -18,20 +18,32 @@
 package com.bwsw.cloudstack.storage.kv.cache;
 
 import com.bwsw.cloudstack.storage.kv.client.KvStorageClientManager;
-import com.bwsw.cloudstack.storage.kv.entity.ScrollableListResponse;
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 import com.bwsw.cloudstack.storage.kv.service.KvExecutor;
 import com.bwsw.cloudstack.storage.kv.service.KvRequestBuilder;
 import com.bwsw.cloudstack.storage.kv.util.TimeManager;
 import com.cloud.utils.component.ComponentLifecycleBase;
+import com.google.common.util.concurrent.RateLimiter;
 import org.apache.log4j.Logger;
 import org.elasticsearch.action.search.SearchRequest;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCacheFilterPeriod;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCacheMaxSize;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCacheUpdatePeriod;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCacheWarmUpRate;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageScrollSlices;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageValueCacheStatsPeriod;
 
 public class KvStorageCacheUpdater extends ComponentLifecycleBase {
 
@@ -39,34 +51,82 @@ public class KvStorageCacheUpdater extends ComponentLifecycleBase {
 
     private static final int UPDATE_BATCH_SIZE = 1000;
     private static final int UPDATE_BATCH_TIMEOUT = 60000; // 1 minute
-    private static final int UPDATE_PERIOD = 60000; // 1 minute
+    private static final int WARM_UP_BATCH_SIZE = 1000;
 
     private class KvStorageCacheUpdateTask extends TimerTask {
 
         private long lastUpdated = _timeManager.getCurrentTimestamp();
+        private boolean degraded;
 
         @Override
         public void run() {
             s_logger.info("Update of KV storage cache started");
-            int updatedEntries = 0;
+            AtomicInteger updatedEntries = new AtomicInteger();
             long startTimestamp = _timeManager.getCurrentTimestamp();
-            SearchRequest request = _kvRequestBuilder.getLastUpdatedStoragesRequest(lastUpdated - UPDATE_PERIOD, UPDATE_BATCH_SIZE, UPDATE_BATCH_TIMEOUT);
+            SearchRequest request = _kvRequestBuilder.getLastUpdatedStoragesRequest(lastUpdated - _updatePeriod, UPDATE_BATCH_SIZE, UPDATE_BATCH_TIMEOUT);
             try {
-                ScrollableListResponse<String> response = _kvExecutor.scrollIds(_kvStorageClientManager.getEsClient(), request);
-                while (response != null && response.getResults() != null && !response.getResults().isEmpty()) {
-                    _kvStorageCache.invalidateAll(response.getResults());
-                    updatedEntries += response.getResults().size();
-                    response = _kvExecutor.scrollIds(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getScrollRequest(response.getScrollId(), UPDATE_BATCH_TIMEOUT));
-                }
+                _kvExecutor.scrollIds(_kvStorageClientManager.getEsClient(), request, KvStorageScrollSlices.value(),
+                        ids -> updatedEntries.addAndGet(_kvStorageCache.refreshAll(ids)));
                 lastUpdated = startTimestamp;
-            } catch (IOException e) {
-                s_logger.error("Unable to update KV storage cache", e);
-                _kvStorageCache.invalidateAll();
+                if (degraded) {
+                    s_logger.info("KV storage cache updates are restored");
+                    degraded = false;
+                }
+            } catch (Exception e) {
+                // cached storages are served until the registry is available, the next update covers the missed changes
+                if (!degraded) {
+                    s_logger.error("Unable to update KV storage cache, cached storages are served until the next successful update", e);
+                    degraded = true;
+                } else {
+                    s_logger.warn("Unable to update KV storage cache: " + e.getMessage());
+                }
             }
             s_logger.info("Update of KV storage cache finished: updated entries " + updatedEntries);
         }
     }
 
+    private class KvStorageIdFilterUpdateTask extends TimerTask {
+
+        @Override
+        public void run() {
+            s_logger.info("Update of KV storage id filter started");
+            List<String> storageIds = Collections.synchronizedList(new ArrayList<>());
+            SearchRequest request = _kvRequestBuilder.getExistingStoragesRequest(UPDATE_BATCH_SIZE, UPDATE_BATCH_TIMEOUT);
+            _kvStorageCache.startIdFilterUpdate();
+            try {
+                _kvExecutor.scrollIds(_kvStorageClientManager.getEsClient(), request, KvStorageScrollSlices.value(), storageIds::addAll);
+            } catch (Exception e) {
+                // the current filter is kept
+                _kvStorageCache.finishIdFilterUpdate(null);
+                s_logger.error("Unable to update KV storage id filter", e);
+                return;
+            }
+            KvStorageIdFilter idFilter = new KvStorageIdFilter(storageIds.size());
+            storageIds.forEach(idFilter::put);
+            _kvStorageCache.finishIdFilterUpdate(idFilter);
+            s_logger.info("Update of KV storage id filter finished: storage ids " + storageIds.size());
+        }
+    }
+
+    private class KvValueCacheStatsTask extends TimerTask {
+
+        private long lastHitCount;
+        private long lastMissCount;
+
+        @Override
+        public void run() {
+            long hitCount = _kvValueCache.getHitCount();
+            long missCount = _kvValueCache.getMissCount();
+            long hits = hitCount - lastHitCount;
+            long misses = missCount - lastMissCount;
+            lastHitCount = hitCount;
+            lastMissCount = missCount;
+            String hitRate = hits + misses > 0 ? String.format("%.1f%%", 100.0 * hits / (hits + misses)) : "n/a";
+            s_logger.info("KV storage value cache: hits " + hits + ", misses " + misses + ", hit rate " + hitRate + " (total hits " + hitCount + ", misses " + missCount
+                    + ")");
+        }
+    }
+
     @Inject
     private KvRequestBuilder _kvRequestBuilder;
 
@@ -76,6 +136,9 @@ public class KvStorageCacheUpdater extends ComponentLifecycleBase {
     @Inject
     private KvStorageCache _kvStorageCache;
 
+    @Inject
+    private KvValueCache _kvValueCache;
+
     @Inject
     private KvStorageClientManager _kvStorageClientManager;
 
@@ -84,22 +147,78 @@ public class KvStorageCacheUpdater extends ComponentLifecycleBase {
 
     private Timer _timer;
 
+    private int _updatePeriod;
+
+    private volatile boolean _stopped;
+
     @Override
     public boolean configure(String name, Map<String, Object> params) throws ConfigurationException {
         super.configure(name, params);
         _timer = new Timer("KvStorageCacheUpdater");
+        _updatePeriod = Math.max(1000, KvStorageCacheUpdatePeriod.value());
         return true;
     }
 
     @Override
     public boolean start() {
-        _timer.schedule(new KvStorageCacheUpdateTask(), UPDATE_PERIOD, UPDATE_PERIOD);
+        _timer.schedule(new KvStorageCacheUpdateTask(), _updatePeriod, _updatePeriod);
+        int filterPeriod = KvStorageCacheFilterPeriod.value();
+        if (filterPeriod > 0) {
+            _timer.schedule(new KvStorageIdFilterUpdateTask(), 0, Math.max(1000, filterPeriod));
+        }
+        int valueCacheStatsPeriod = KvStorageValueCacheStatsPeriod.value();
+        if (valueCacheStatsPeriod > 0) {
+            _timer.schedule(new KvValueCacheStatsTask(), valueCacheStatsPeriod, valueCacheStatsPeriod);
+        }
+        int warmUpRate = KvStorageCacheWarmUpRate.value();
+        if (warmUpRate > 0) {
+            int limit = KvStorageCacheMaxSize.value();
+            s_logger.info("Warm-up of KV storage cache started: limit " + limit + " entries, rate " + warmUpRate + " entries per second");
+            RateLimiter rateLimiter = RateLimiter.create(warmUpRate);
+            int batchSize = Math.min(warmUpRate, WARM_UP_BATCH_SIZE);
+            Thread thread = new Thread(() -> warmUp(rateLimiter, batchSize, limit), "KvStorageCacheWarmUp");
+            thread.setDaemon(true);
+            thread.start();
+        }
         return true;
     }
 
     @Override
     public boolean stop() {
+        _stopped = true;
         _timer.cancel();
         return true;
     }
+
+    /**
+     * Caches most recently updated storages paced by the rate limiter until the limit is reached, the registry is
+     * exhausted or the updater is stopped.
+     */
+    void warmUp(RateLimiter rateLimiter, int batchSize, int limit) {
+        AtomicInteger cachedEntries = new AtomicInteger();
+        SearchRequest request = _kvRequestBuilder.getRecentlyUpdatedStoragesRequest(batchSize, UPDATE_BATCH_TIMEOUT);
+        // started before the registry snapshot is taken by the scroll
+        _kvStorageCache.startWarmUp();
+        try {
+            // the single slice keeps the most recently updated first order
+            _kvExecutor.scroll(_kvStorageClientManager.getEsClient(), request, 1, KvStorage.class, storages -> {
+                if (_stopped) {
+                    throw new CancellationException();
+                }
+                rateLimiter.acquire(storages.size());
+                int cached = cachedEntries.addAndGet(_kvStorageCache.putAll(storages.subList(0, Math.min(storages.size(), limit - cachedEntries.get()))));
+                s_logger.info("Warm-up of KV storage cache: cached entries " + cached);
+                if (cached >= limit) {
+                    throw new CancellationException();
+                }
+            });
+        } catch (CancellationException e) {
+            // the limit is reached or the updater is stopped
+        } catch (Exception e) {
+            s_logger.error("Unable to warm up KV storage cache", e);
+        } finally {
+            _kvStorageCache.finishWarmUp();
+        }
+        s_logger.info("Warm-up of KV storage cache finished: cached entries " + cachedEntries);
+    }
 }
@@ -0,0 +1,51 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.cache;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Probabilistic set of existing storage ids. Ids put to the filter are always reported as possibly existing, other ids
+ * are reported as possibly existing with the false positive probability of 1%.
+ */
+public class KvStorageIdFilter {
+
+    private static final int MIN_EXPECTED_IDS = 10000;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final BloomFilter<CharSequence> _filter;
+
+    /**
+     * @param ids the number of ids the filter is built with; the filter is sized for twice as many ids to keep the false
+     *            positive probability while storages are created
+     */
+    public KvStorageIdFilter(int ids) {
+        _filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(MIN_EXPECTED_IDS, 2L * ids), FALSE_POSITIVE_PROBABILITY);
+    }
+
+    public synchronized void put(String id) {
+        _filter.put(id);
+    }
+
+    public synchronized boolean mightContain(String id) {
+        return _filter.mightContain(id);
+    }
+}
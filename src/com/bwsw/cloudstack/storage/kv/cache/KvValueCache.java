@@ -0,0 +1,47 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.cache;
+
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
+
+public interface KvValueCache {
+
+    /**
+     * Returns the cached response of the value retrieval or null if the response is not cached or caching is disabled
+     * for the storage type.
+     */
+    KvOperationResponse get(KvStorage storage, String key);
+
+    void put(KvStorage storage, String key, KvOperationResponse response);
+
+    void invalidate(String storageId, Iterable<String> keys);
+
+    void invalidateAll(String storageId);
+
+    /**
+     * Returns the number of value retrievals served from the cache since its creation.
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of value retrievals not served from the cache since its creation except retrievals from
+     * storages with caching disabled.
+     */
+    long getMissCount();
+}
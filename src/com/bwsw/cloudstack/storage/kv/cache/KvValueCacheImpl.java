@@ -0,0 +1,147 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.cache;
+
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
+import com.bwsw.cloudstack.storage.kv.util.TimeManager;
+import com.google.common.cache.Cache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class KvValueCacheImpl implements KvValueCache {
+
+    private final Cache<ValueKey, CachedValue> _cache;
+    private final Map<KvStorage.KvStorageType, Integer> _ttls;
+    private final TimeManager _timeManager;
+    private final AtomicLong _hitCount = new AtomicLong();
+    private final AtomicLong _missCount = new AtomicLong();
+
+    KvValueCacheImpl(Cache<ValueKey, CachedValue> cache, Map<KvStorage.KvStorageType, Integer> ttls, TimeManager timeManager) {
+        _cache = cache;
+        _ttls = ttls;
+        _timeManager = timeManager;
+    }
+
+    @Override
+    public KvOperationResponse get(KvStorage storage, String key) {
+        if (getTtl(storage) <= 0) {
+            return null;
+        }
+        ValueKey valueKey = new ValueKey(storage.getId(), key);
+        CachedValue value = _cache.getIfPresent(valueKey);
+        if (value != null && value.getExpirationTimestamp() <= _timeManager.getCurrentTimestamp()) {
+            _cache.asMap().remove(valueKey, value);
+            value = null;
+        }
+        if (value == null) {
+            _missCount.incrementAndGet();
+            return null;
+        }
+        _hitCount.incrementAndGet();
+        return value.getResponse();
+    }
+
+    @Override
+    public void put(KvStorage storage, String key, KvOperationResponse response) {
+        int ttl = getTtl(storage);
+        if (ttl > 0) {
+            _cache.put(new ValueKey(storage.getId(), key), new CachedValue(response, _timeManager.getCurrentTimestamp() + ttl));
+        }
+    }
+
+    @Override
+    public void invalidate(String storageId, Iterable<String> keys) {
+        for (String key : keys) {
+            _cache.invalidate(new ValueKey(storageId, key));
+        }
+    }
+
+    @Override
+    public void invalidateAll(String storageId) {
+        _cache.asMap().keySet().removeIf(valueKey -> valueKey.getStorageId().equals(storageId));
+    }
+
+    @Override
+    public long getHitCount() {
+        return _hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return _missCount.get();
+    }
+
+    private int getTtl(KvStorage storage) {
+        Integer ttl = storage.getType() == null ? null : _ttls.get(storage.getType());
+        return ttl == null ? 0 : ttl;
+    }
+
+    static class ValueKey {
+
+        private final String _storageId;
+        private final String _key;
+
+        ValueKey(String storageId, String key) {
+            _storageId = storageId;
+            _key = key;
+        }
+
+        String getStorageId() {
+            return _storageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ValueKey valueKey = (ValueKey)o;
+            return Objects.equals(_storageId, valueKey._storageId) && Objects.equals(_key, valueKey._key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_storageId, _key);
+        }
+    }
+
+    static class CachedValue {
+
+        private final KvOperationResponse _response;
+        private final long _expirationTimestamp;
+
+        CachedValue(KvOperationResponse response, long expirationTimestamp) {
+            _response = response;
+            _expirationTimestamp = expirationTimestamp;
+        }
+
+        KvOperationResponse getResponse() {
+            return _response;
+        }
+
+        long getExpirationTimestamp() {
+            return _expirationTimestamp;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of an update or delete by query request.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ByQueryResponse {
+
+    private long total;
+    private long updated;
+    private long deleted;
+    @JsonProperty("version_conflicts")
+    private long versionConflicts;
+    private List<Object> failures = Collections.emptyList();
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(long updated) {
+        this.updated = updated;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(long deleted) {
+        this.deleted = deleted;
+    }
+
+    public long getVersionConflicts() {
+        return versionConflicts;
+    }
+
+    public void setVersionConflicts(long versionConflicts) {
+        this.versionConflicts = versionConflicts;
+    }
+
+    public List<Object> getFailures() {
+        return failures;
+    }
+
+    public void setFailures(List<Object> failures) {
+        this.failures = failures != null ? failures : Collections.emptyList();
+    }
+
+    /**
+     * Checks that the request executed with conflicts proceeded has processed all matching documents.
+     */
+    public boolean isComplete() {
+        return versionConflicts == 0 && failures.isEmpty();
+    }
+}
@@ -30,9 +30,6 @@ public class CreateStorageRequest {
         if (registryRequest == null) {
             throw new IllegalArgumentException("Null registry request");
         }
-        if (storageIndexRequest == null) {
-            throw new IllegalArgumentException("Null data index request");
-        }
         this.registryRequest = registryRequest;
         this.storageIndexRequest = storageIndexRequest;
         this.historyIndexRequest = historyIndexRequest;
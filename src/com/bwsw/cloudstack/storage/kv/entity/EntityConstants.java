@@ -35,5 +35,10 @@ public class EntityConstants {
     public static final String PAGE = "page";
     public static final String SIZE = "size";
     public static final String SCROLL_ID = "scrollid";
+    public static final String CURSOR = "cursor";
+    public static final String LAYOUT = "layout";
+    public static final String SHARED_INDEX = "shared_index";
+    public static final String TYPE = "type";
+    public static final String ACCOUNT = "account";
 
 }
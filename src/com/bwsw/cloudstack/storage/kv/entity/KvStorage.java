@@ -33,6 +33,14 @@ public class KvStorage extends BaseResponse implements ResponseEntity {
         ACCOUNT, VM, TEMP
     }
 
+    /**
+     * Layout of storage data and history indices. Storages without the layout use dedicated indices.
+     */
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
+    public enum KvStorageLayout {
+        DEDICATED, SHARED
+    }
+
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @SerializedName(ApiConstants.ID)
     private String id;
@@ -65,6 +73,10 @@ public class KvStorage extends BaseResponse implements ResponseEntity {
     @SerializedName(com.bwsw.cloudstack.storage.kv.api.ApiConstants.LAST_UPDATED)
     private Long lastUpdated;
 
+    private KvStorageLayout layout;
+
+    private Integer sharedIndex;
+
     @JsonIgnore
     @SerializedName(ApiConstants.URL)
     private String url;
@@ -196,6 +208,29 @@ public class KvStorage extends BaseResponse implements ResponseEntity {
         this.lastUpdated = lastUpdated;
     }
 
+    @JsonProperty(EntityConstants.LAYOUT)
+    public KvStorageLayout getLayout() {
+        return layout;
+    }
+
+    public void setLayout(KvStorageLayout layout) {
+        this.layout = layout;
+    }
+
+    @JsonProperty(EntityConstants.SHARED_INDEX)
+    public Integer getSharedIndex() {
+        return sharedIndex;
+    }
+
+    public void setSharedIndex(Integer sharedIndex) {
+        this.sharedIndex = sharedIndex;
+    }
+
+    @JsonIgnore
+    public boolean isShared() {
+        return layout == KvStorageLayout.SHARED;
+    }
+
     public String getUrl() {
         return url;
     }
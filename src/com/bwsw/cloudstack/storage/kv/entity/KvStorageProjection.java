@@ -0,0 +1,48 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.entity;
+
+/**
+ * Source fields of registry documents fetched by registry searches and scrolls. Fields not fetched are null
+ * in {@link KvStorage} entities parsed from search results.
+ */
+public enum KvStorageProjection {
+
+    /**
+     * Fields required to delete storage data and registry documents.
+     */
+    CLEANUP(EntityConstants.HISTORY_ENABLED, EntityConstants.LAYOUT, EntityConstants.SHARED_INDEX),
+    /**
+     * Fields required to mark storages of removed accounts and VMs deleted.
+     */
+    OWNER(EntityConstants.TYPE, EntityConstants.ACCOUNT),
+    /**
+     * Document ids only.
+     */
+    ID;
+
+    private final String[] _fields;
+
+    KvStorageProjection(String... fields) {
+        _fields = fields;
+    }
+
+    public String[] getFields() {
+        return _fields.clone();
+    }
+}
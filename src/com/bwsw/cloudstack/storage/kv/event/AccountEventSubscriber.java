@@ -17,6 +17,7 @@
 
 package com.bwsw.cloudstack.storage.kv.event;
 
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
 import com.bwsw.cloudstack.storage.kv.service.KvStorageManager;
 import com.cloud.event.EventCategory;
 import com.cloud.event.EventTypes;
@@ -26,12 +27,17 @@ import org.apache.cloudstack.framework.events.Event;
 public class AccountEventSubscriber extends BaseEventSubscriber {
 
     private final KvStorageManager _kvStorageManager;
+    private final KvStorageCache _kvStorageCache;
 
-    public AccountEventSubscriber(KvStorageManager kvStorageManager) {
+    public AccountEventSubscriber(KvStorageManager kvStorageManager, KvStorageCache kvStorageCache) {
         if (kvStorageManager == null) {
             throw new IllegalArgumentException("Null storage manager");
         }
+        if (kvStorageCache == null) {
+            throw new IllegalArgumentException("Null storage cache");
+        }
         _kvStorageManager = kvStorageManager;
+        _kvStorageCache = kvStorageCache;
     }
 
     @Override
@@ -54,6 +60,8 @@ public class AccountEventSubscriber extends BaseEventSubscriber {
         if (event.getResourceUUID() != null && getEventCategory().equals(EventCategory.getEventCategory(event.getEventCategory())) && getResourceType()
                 .equals(event.getResourceType())) {
             if (EventTypes.EVENT_ACCOUNT_DELETE.equals(event.getEventType()) && isExecutionRequired(event)) {
+                // access checks are cached by storages, those of the account storages and of the account as a caller are not known
+                _kvStorageCache.invalidateAccess();
                 try {
                     _kvStorageManager.deleteAccountStorages(event.getResourceUUID());
                     _logger.info("KV storages for the account " + event.getResourceUUID() + " have been deleted");
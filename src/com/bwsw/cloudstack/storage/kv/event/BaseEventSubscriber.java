@@ -27,6 +27,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.Map;
 
 public abstract class BaseEventSubscriber implements EventSubscriber {
@@ -55,7 +56,7 @@ public abstract class BaseEventSubscriber implements EventSubscriber {
     protected boolean isExecutionRequired(Event event) {
         if (!Strings.isNullOrEmpty(event.getDescription())) {
             try {
-                Map<String, String> details = _gson.fromJson(event.getDescription(), _mapType);
+                Map<String, String> details = getDetails(event);
                 if (details.containsKey(STATUS_FIELD)) {
                     return com.cloud.event.Event.State.valueOf(details.get(STATUS_FIELD)) == com.cloud.event.Event.State.Completed && details.containsKey(DESCRIPTION_FIELD)
                             && !StringUtils.startsWith(details.get(DESCRIPTION_FIELD), ERROR_PREFIX);
@@ -67,4 +68,15 @@ public abstract class BaseEventSubscriber implements EventSubscriber {
         }
         return false;
     }
+
+    /**
+     * Parses the event description as a JSON object with string values.
+     */
+    protected Map<String, String> getDetails(Event event) {
+        if (Strings.isNullOrEmpty(event.getDescription())) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> details = _gson.fromJson(event.getDescription(), _mapType);
+        return details != null ? details : Collections.emptyMap();
+    }
 }
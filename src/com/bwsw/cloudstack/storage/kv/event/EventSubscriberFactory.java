@@ -24,4 +24,6 @@ public interface EventSubscriberFactory {
     VmEventSubscriber getVmEventSubscriber() throws EventBusException;
 
     AccountEventSubscriber getAccountEventSubscriber() throws EventBusException;
+
+    KvStorageCacheEventSubscriber getKvStorageCacheEventSubscriber() throws EventBusException;
 }
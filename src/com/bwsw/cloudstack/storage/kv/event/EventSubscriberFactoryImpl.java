@@ -17,6 +17,7 @@
 
 package com.bwsw.cloudstack.storage.kv.event;
 
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
 import com.bwsw.cloudstack.storage.kv.service.KvStorageManager;
 import org.apache.cloudstack.framework.events.EventBus;
 import org.apache.cloudstack.framework.events.EventBusException;
@@ -32,16 +33,26 @@ public class EventSubscriberFactoryImpl implements EventSubscriberFactory {
     @Inject
     private KvStorageManager _kvStorageManager;
 
+    @Inject
+    private KvStorageCache _kvStorageCache;
+
     @Override
     public VmEventSubscriber getVmEventSubscriber() throws EventBusException {
-        VmEventSubscriber subscriber = new VmEventSubscriber(_kvStorageManager);
+        VmEventSubscriber subscriber = new VmEventSubscriber(_kvStorageManager, _kvStorageCache);
         subscribe(subscriber);
         return subscriber;
     }
 
     @Override
     public AccountEventSubscriber getAccountEventSubscriber() throws EventBusException {
-        AccountEventSubscriber subscriber = new AccountEventSubscriber(_kvStorageManager);
+        AccountEventSubscriber subscriber = new AccountEventSubscriber(_kvStorageManager, _kvStorageCache);
+        subscribe(subscriber);
+        return subscriber;
+    }
+
+    @Override
+    public KvStorageCacheEventSubscriber getKvStorageCacheEventSubscriber() throws EventBusException {
+        KvStorageCacheEventSubscriber subscriber = new KvStorageCacheEventSubscriber(_kvStorageCache);
         subscribe(subscriber);
         return subscriber;
     }
@@ -21,4 +21,5 @@ public class EventTypes {
 
     public static final String EVENT_KV_STORAGE_CREATE = "STORAGE.KV.CREATE";
     public static final String EVENT_KV_STORAGE_DELETE = "STORAGE.KV.DELETE";
+    public static final String EVENT_KV_STORAGE_CACHE_INVALIDATE = "STORAGE.KV.CACHE.INVALIDATE";
 }
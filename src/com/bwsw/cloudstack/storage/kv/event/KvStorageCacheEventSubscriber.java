@@ -0,0 +1,76 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.event;
+
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
+import com.cloud.event.EventCategory;
+import com.google.common.base.Splitter;
+import org.apache.cloudstack.framework.events.Event;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Invalidates cached storages changed by other management servers.
+ */
+public class KvStorageCacheEventSubscriber extends BaseEventSubscriber {
+
+    public static final String RESOURCE_TYPE = "KvStorage";
+    public static final String STORAGES_DETAIL = "storages";
+
+    private final KvStorageCache _kvStorageCache;
+
+    public KvStorageCacheEventSubscriber(KvStorageCache kvStorageCache) {
+        if (kvStorageCache == null) {
+            throw new IllegalArgumentException("Null storage cache");
+        }
+        _kvStorageCache = kvStorageCache;
+    }
+
+    @Override
+    public EventCategory getEventCategory() {
+        return EventCategory.ACTION_EVENT;
+    }
+
+    @Override
+    public String[] getEventTypes() {
+        return new String[] {EventTypes.EVENT_KV_STORAGE_CACHE_INVALIDATE};
+    }
+
+    @Override
+    public String getResourceType() {
+        return RESOURCE_TYPE;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if (getEventCategory().equals(EventCategory.getEventCategory(event.getEventCategory())) && getResourceType().equals(event.getResourceType())
+                && EventTypes.EVENT_KV_STORAGE_CACHE_INVALIDATE.equals(event.getEventType())) {
+            try {
+                Map<String, String> details = getDetails(event);
+                if (details.containsKey(STORAGES_DETAIL)) {
+                    List<String> ids = Splitter.on(',').omitEmptyStrings().splitToList(details.get(STORAGES_DETAIL));
+                    _kvStorageCache.invalidateAll(ids);
+                    _logger.debug("KV storages " + ids + " have been invalidated");
+                }
+            } catch (Exception e) {
+                _logger.error("Unable to invalidate KV storages: " + event.getDescription(), e);
+            }
+        }
+    }
+}
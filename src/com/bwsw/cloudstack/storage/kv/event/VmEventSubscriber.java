@@ -17,21 +17,29 @@
 
 package com.bwsw.cloudstack.storage.kv.event;
 
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
 import com.bwsw.cloudstack.storage.kv.service.KvStorageManager;
 import com.cloud.event.EventCategory;
 import com.cloud.event.EventTypes;
 import com.cloud.vm.VirtualMachine;
 import org.apache.cloudstack.framework.events.Event;
 
+import java.util.Collections;
+
 public class VmEventSubscriber extends BaseEventSubscriber {
 
     private final KvStorageManager _kvStorageManager;
+    private final KvStorageCache _kvStorageCache;
 
-    public VmEventSubscriber(KvStorageManager kvStorageManager) {
+    public VmEventSubscriber(KvStorageManager kvStorageManager, KvStorageCache kvStorageCache) {
         if (kvStorageManager == null) {
             throw new IllegalArgumentException("Null storage manager");
         }
+        if (kvStorageCache == null) {
+            throw new IllegalArgumentException("Null storage cache");
+        }
         _kvStorageManager = kvStorageManager;
+        _kvStorageCache = kvStorageCache;
     }
 
     public EventCategory getEventCategory() {
@@ -39,7 +47,7 @@ public class VmEventSubscriber extends BaseEventSubscriber {
     }
 
     public String[] getEventTypes() {
-        return new String[] {EventTypes.EVENT_VM_CREATE, EventTypes.EVENT_VM_EXPUNGE, EventTypes.EVENT_VM_START};
+        return new String[] {EventTypes.EVENT_VM_CREATE, EventTypes.EVENT_VM_EXPUNGE, EventTypes.EVENT_VM_START, EventTypes.EVENT_VM_MOVE};
     }
 
     public String getResourceType() {
@@ -58,6 +66,7 @@ public class VmEventSubscriber extends BaseEventSubscriber {
                     _logger.error("Unable to create the KV storage for VM " + event.getResourceUUID(), e);
                 }
             } else if (EventTypes.EVENT_VM_EXPUNGE.equals(event.getEventType()) && isExecutionRequired(event)) {
+                _kvStorageCache.invalidateAccess(Collections.singleton(event.getResourceUUID()));
                 try {
                     boolean result = _kvStorageManager.deleteVmStorage(event.getResourceUUID());
                     if (result) {
@@ -75,6 +84,9 @@ public class VmEventSubscriber extends BaseEventSubscriber {
                 } catch (Exception e) {
                     _logger.error("Unable to get or create the KV storage for VM " + event.getResourceUUID(), e);
                 }
+            } else if (EventTypes.EVENT_VM_MOVE.equals(event.getEventType()) && isExecutionRequired(event)) {
+                _kvStorageCache.invalidateAccess(Collections.singleton(event.getResourceUUID()));
+                _logger.debug("Access checks of the KV storage for VM " + event.getResourceUUID() + " have been invalidated");
             }
         }
     }
@@ -32,6 +32,8 @@ public class ExceptionFactoryImpl implements ExceptionFactory {
             return new InvalidParameterValueException("The KV storage does not support history");
         case INVALID_HISTORY_REQUEST:
             return new InvalidParameterValueException("Invalid KV history request");
+        case INVALID_CURSOR:
+            return new InvalidParameterValueException("Invalid cursor");
         default:
             return new InvalidParameterValueException(code.name());
         }
@@ -18,15 +18,16 @@
 package com.bwsw.cloudstack.storage.kv.job;
 
 import com.bwsw.cloudstack.storage.kv.entity.Lock;
+import com.bwsw.cloudstack.storage.kv.service.KvScript;
+import com.bwsw.cloudstack.storage.kv.service.KvScriptManager;
 import org.apache.log4j.Logger;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.rest.RestStatus;
-import org.elasticsearch.script.Script;
-import org.elasticsearch.script.ScriptType;
 
+import javax.inject.Inject;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,9 +37,9 @@ public class KvStorageLockManagerImpl implements KvStorageLockManager {
 
     private static final String LOCK_INDEX = "storage-registry-lock";
     private static final String LOCK_TYPE = "_doc";
-    private static final String ACQUIRE_SCRIPT = "if (ctx._source.locked == false || params.timestamp - ctx._source.timestamp > params.interval ) "
-            + "{ ctx._source.locked = true; ctx._source.timestamp = params.timestamp } else { ctx.op='noop'}";
-    private static final String RELEASE_SCRIPT = "ctx._source.locked = false; ctx._source.timestamp = params.timestamp";
+
+    @Inject
+    private KvScriptManager _kvScriptManager;
 
     @Override
     public boolean acquireLock(JobType jobType, RestHighLevelClient client) {
@@ -48,7 +49,7 @@ public class KvStorageLockManagerImpl implements KvStorageLockManager {
         params.put("timestamp", lock.getTimestamp());
         params.put("interval", jobType.getInterval());
 
-        UpdateRequest request = getUpdateRequest(lock.getId(), ACQUIRE_SCRIPT, params);
+        UpdateRequest request = getUpdateRequest(lock.getId(), KvScript.ACQUIRE_LOCK, params);
         request.upsert(getDocument(lock));
 
         try {
@@ -68,7 +69,7 @@ public class KvStorageLockManagerImpl implements KvStorageLockManager {
         Map<String, Object> params = new HashMap<>();
         params.put("timestamp", lock.getTimestamp());
 
-        UpdateRequest request = getUpdateRequest(lock.getId(), RELEASE_SCRIPT, params);
+        UpdateRequest request = getUpdateRequest(lock.getId(), KvScript.RELEASE_LOCK, params);
         try {
             client.update(request);
         } catch (Exception e) {
@@ -76,9 +77,9 @@ public class KvStorageLockManagerImpl implements KvStorageLockManager {
         }
     }
 
-    private UpdateRequest getUpdateRequest(String id, String script, Map<String, Object> params) {
+    private UpdateRequest getUpdateRequest(String id, KvScript script, Map<String, Object> params) {
         UpdateRequest request = new UpdateRequest(LOCK_INDEX, LOCK_TYPE, id);
-        request.script(new Script(ScriptType.INLINE, "painless", script, params));
+        request.script(_kvScriptManager.getScript(script, params));
         return request;
     }
 
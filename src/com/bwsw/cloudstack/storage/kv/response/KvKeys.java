@@ -28,6 +28,9 @@ public class KvKeys extends KvOperationResponse {
     @SerializedName(EntityConstants.ITEMS)
     private List<String> items;
 
+    @SerializedName(EntityConstants.CURSOR)
+    private String cursor;
+
     public KvKeys() {
     }
 
@@ -35,6 +38,11 @@ public class KvKeys extends KvOperationResponse {
         setItems(items);
     }
 
+    public KvKeys(List<String> items, String cursor) {
+        setItems(items);
+        this.cursor = cursor;
+    }
+
     public List<String> getItems() {
         return items;
     }
@@ -46,4 +54,12 @@ public class KvKeys extends KvOperationResponse {
             this.items = items;
         }
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
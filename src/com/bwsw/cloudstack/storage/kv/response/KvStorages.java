@@ -0,0 +1,64 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.response;
+
+import com.bwsw.cloudstack.storage.kv.entity.EntityConstants;
+import com.google.gson.annotations.SerializedName;
+import org.apache.cloudstack.api.BaseResponse;
+
+import java.util.Collections;
+import java.util.List;
+
+public class KvStorages extends BaseResponse {
+
+    @SerializedName(EntityConstants.ITEMS)
+    private List<KvStorageResponse> items;
+
+    @SerializedName(EntityConstants.CURSOR)
+    private String cursor;
+
+    public KvStorages() {
+        setObjectName("kvstorages");
+    }
+
+    public KvStorages(List<KvStorageResponse> items, String cursor) {
+        this();
+        setItems(items);
+        this.cursor = cursor;
+    }
+
+    public List<KvStorageResponse> getItems() {
+        return items;
+    }
+
+    public void setItems(List<KvStorageResponse> items) {
+        if (items == null) {
+            this.items = Collections.emptyList();
+        } else {
+            this.items = items;
+        }
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+}
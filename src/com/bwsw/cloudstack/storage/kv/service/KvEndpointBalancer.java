@@ -0,0 +1,234 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.util.TimeManager;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Balances KV storage operations between KV storage endpoints.
+ * <p>
+ * An endpoint is ejected for the ejection time after the specified number of consecutive failures. When the ejection
+ * time elapses a single probe operation is routed to the endpoint: the endpoint is restored if the operation succeeds
+ * and ejected again otherwise. If all endpoints are ejected the endpoint to be probed first is used.
+ * <p>
+ * The consistent hash strategy routes operations on the storage to the same endpoint while it is available
+ * and fails over to the next endpoints on the hash ring otherwise, so that endpoints get storage affinity.
+ */
+public class KvEndpointBalancer {
+
+    public enum Strategy {
+        ROUND_ROBIN, LEAST_OUTSTANDING, CONSISTENT_HASH
+    }
+
+    private static final int VIRTUAL_NODES = 100;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    private static final Logger s_logger = Logger.getLogger(KvEndpointBalancer.class);
+
+    private final List<KvEndpoint> _endpoints;
+    private final Strategy _strategy;
+    private final int _failureThreshold;
+    private final long _ejectionTime;
+    private final TimeManager _timeManager;
+    private final AtomicInteger _counter = new AtomicInteger();
+    private final NavigableMap<Integer, KvEndpoint> _ring = new TreeMap<>();
+
+    public KvEndpointBalancer(Collection<String> urls, Strategy strategy, int failureThreshold, long ejectionTime, TimeManager timeManager) {
+        _endpoints = Collections.unmodifiableList(urls.stream().map(url -> new KvEndpoint(StringUtils.appendIfMissing(url, "/"))).collect(Collectors.toList()));
+        _strategy = strategy;
+        _failureThreshold = failureThreshold;
+        _ejectionTime = ejectionTime;
+        _timeManager = timeManager;
+        for (KvEndpoint endpoint : _endpoints) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                _ring.put(hash(endpoint.getUrl() + "#" + i), endpoint);
+            }
+        }
+    }
+
+    /**
+     * Selects the endpoint for the operation and increments its outstanding operation count.
+     *
+     * @param storageId the storage id for consistent hashing; operations without the storage are balanced with round robin
+     * @param excluded endpoints the operation has already failed on
+     * @return the selected endpoint or null if all endpoints are excluded
+     */
+    public KvEndpoint acquire(String storageId, Set<KvEndpoint> excluded) {
+        boolean consistentHash = _strategy == Strategy.CONSISTENT_HASH && storageId != null;
+        List<KvEndpoint> candidates = (consistentHash ? getRingEndpoints(storageId) : _endpoints).stream().filter(endpoint -> !excluded.contains(endpoint))
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        long now = _timeManager.getCurrentTimestamp();
+        if (consistentHash) {
+            for (KvEndpoint endpoint : candidates) {
+                if (endpoint.tryAcquire(now, _failureThreshold, _ejectionTime)) {
+                    return endpoint;
+                }
+            }
+            return acquireFirstProbed(candidates);
+        }
+        int offset = Math.floorMod(_counter.getAndIncrement(), candidates.size());
+        KvEndpoint selected = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            KvEndpoint endpoint = candidates.get((offset + i) % candidates.size());
+            if (endpoint.isAvailable(now) && (selected == null || _strategy == Strategy.LEAST_OUTSTANDING && endpoint.getOutstanding() < selected.getOutstanding())) {
+                selected = endpoint;
+                if (_strategy == Strategy.ROUND_ROBIN) {
+                    break;
+                }
+            }
+        }
+        if (selected == null || !selected.tryAcquire(now, _failureThreshold, _ejectionTime)) {
+            // all endpoints are ejected or the probe has been taken concurrently
+            return acquireFirstProbed(candidates);
+        }
+        return selected;
+    }
+
+    public void release(KvEndpoint endpoint) {
+        endpoint.release();
+    }
+
+    public void reportSuccess(KvEndpoint endpoint) {
+        if (endpoint.reportSuccess()) {
+            s_logger.info("KV storage endpoint " + endpoint.getUrl() + " is restored");
+        }
+    }
+
+    public void reportFailure(KvEndpoint endpoint) {
+        if (endpoint.reportFailure(_timeManager.getCurrentTimestamp(), _failureThreshold, _ejectionTime)) {
+            s_logger.warn("KV storage endpoint " + endpoint.getUrl() + " is ejected for " + _ejectionTime + " ms");
+        }
+    }
+
+    public List<KvEndpoint> getEndpoints() {
+        return _endpoints;
+    }
+
+    /**
+     * Returns distinct endpoints in the order of the hash ring starting from the storage id position.
+     */
+    List<KvEndpoint> getRingEndpoints(String storageId) {
+        int hash = hash(storageId);
+        Set<KvEndpoint> endpoints = new LinkedHashSet<>();
+        for (KvEndpoint endpoint : Iterables.concat(_ring.tailMap(hash, true).values(), _ring.headMap(hash, false).values())) {
+            if (endpoints.add(endpoint) && endpoints.size() == _endpoints.size()) {
+                break;
+            }
+        }
+        return new ArrayList<>(endpoints);
+    }
+
+    private KvEndpoint acquireFirstProbed(List<KvEndpoint> candidates) {
+        KvEndpoint endpoint = candidates.stream().min((first, second) -> Long.compare(first.getEjectedUntil(), second.getEjectedUntil())).get();
+        endpoint.acquire();
+        return endpoint;
+    }
+
+    private static int hash(String value) {
+        return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asInt();
+    }
+
+    public static class KvEndpoint {
+
+        private final String _url;
+        private final AtomicInteger _outstanding = new AtomicInteger();
+        private int _failures;
+        private long _ejectedUntil;
+
+        KvEndpoint(String url) {
+            _url = url;
+        }
+
+        public String getUrl() {
+            return _url;
+        }
+
+        public int getOutstanding() {
+            return _outstanding.get();
+        }
+
+        synchronized long getEjectedUntil() {
+            return _ejectedUntil;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            return _ejectedUntil <= now;
+        }
+
+        synchronized boolean tryAcquire(long now, int failureThreshold, long ejectionTime) {
+            if (_ejectedUntil > now) {
+                return false;
+            }
+            if (_failures >= failureThreshold) {
+                // the endpoint is probed, other operations are not routed to it until the probe completes
+                _ejectedUntil = now + ejectionTime;
+            }
+            acquire();
+            return true;
+        }
+
+        void acquire() {
+            _outstanding.incrementAndGet();
+        }
+
+        void release() {
+            _outstanding.decrementAndGet();
+        }
+
+        synchronized boolean reportSuccess() {
+            boolean restored = _ejectedUntil > 0;
+            _failures = 0;
+            _ejectedUntil = 0;
+            return restored;
+        }
+
+        synchronized boolean reportFailure(long now, int failureThreshold, long ejectionTime) {
+            _failures++;
+            if (_failures >= failureThreshold) {
+                _ejectedUntil = now + ejectionTime;
+                return _failures == failureThreshold;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return _url;
+        }
+    }
+}
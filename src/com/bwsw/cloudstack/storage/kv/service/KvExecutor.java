@@ -17,39 +17,102 @@
 
 package com.bwsw.cloudstack.storage.kv.service;
 
+import com.bwsw.cloudstack.storage.kv.entity.ByQueryResponse;
 import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
-import com.bwsw.cloudstack.storage.kv.entity.DeleteStorageRequest;
 import com.bwsw.cloudstack.storage.kv.entity.ResponseEntity;
-import com.bwsw.cloudstack.storage.kv.entity.ScrollableListResponse;
 import org.apache.cloudstack.api.response.ListResponse;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.CheckedConsumer;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Executes Elasticsearch requests and parses their results.
+ * <p>
+ * Futures returned by async methods are completed on the client I/O threads so that dependent stages must not block
+ * or should be executed asynchronously. Failures are reported by completing futures exceptionally.
+ */
 public interface KvExecutor {
 
     <T extends ResponseEntity> T get(RestHighLevelClient client, GetRequest request, Class<T> elementClass) throws IOException;
 
+    /**
+     * Executes the multi get request.
+     *
+     * @return existing documents by ids
+     */
+    <T extends ResponseEntity> Map<String, T> multiGet(RestHighLevelClient client, MultiGetRequest request, Class<T> elementClass) throws IOException;
+
     void index(RestHighLevelClient client, IndexRequest request) throws IOException;
 
     void update(RestHighLevelClient client, UpdateRequest request) throws IOException;
 
-    <T extends ResponseEntity> ListResponse<T> search(RestHighLevelClient client, SearchRequest request, Class<T> elementClass) throws IOException;
+    /**
+     * Executes the bulk request.
+     *
+     * @return failure messages of failed items by document ids
+     */
+    Map<String, String> bulk(RestHighLevelClient client, BulkRequest request) throws IOException;
 
-    <T extends ResponseEntity> ScrollableListResponse<T> scroll(RestHighLevelClient client, SearchRequest request, Class<T> elementClass) throws IOException;
+    <T extends ResponseEntity> ListResponse<T> search(RestHighLevelClient client, SearchRequest request, Class<T> elementClass) throws IOException;
 
-    <T extends ResponseEntity> ScrollableListResponse<T> scroll(RestHighLevelClient client, SearchScrollRequest request, Class<T> elementClass) throws IOException;
+    /**
+     * Scrolls results of the search request with the scroll timeout set. The scroll is split into slices scrolled in parallel
+     * if more than one slice is specified. Scroll contexts are cleared when slices are finished or failed.
+     *
+     * @param slices the number of slices
+     * @param consumer the consumer of result pages; it is invoked by slices concurrently
+     */
+    <T extends ResponseEntity> void scroll(RestHighLevelClient client, SearchRequest request, int slices, Class<T> elementClass,
+            CheckedConsumer<List<T>, Exception> consumer) throws Exception;
 
-    ScrollableListResponse<String> scrollIds(RestHighLevelClient client, SearchRequest request) throws IOException;
+    /**
+     * Scrolls ids of search results the same way as {@link #scroll(RestHighLevelClient, SearchRequest, int, Class, CheckedConsumer)}.
+     */
+    void scrollIds(RestHighLevelClient client, SearchRequest request, int slices, CheckedConsumer<List<String>, Exception> consumer) throws Exception;
 
-    ScrollableListResponse<String> scrollIds(RestHighLevelClient client, SearchScrollRequest request) throws IOException;
+    /**
+     * Executes the update or delete by query request with the low level client since the high level one does not support them.
+     */
+    ByQueryResponse byQuery(RestHighLevelClient client, Request request) throws IOException;
 
     void create(RestHighLevelClient client, CreateStorageRequest request) throws IOException;
 
-    boolean delete(RestHighLevelClient client, DeleteStorageRequest request) throws IOException;
+    /**
+     * Creates indices skipping existing ones.
+     */
+    void createIndices(RestHighLevelClient client, List<CreateIndexRequest> requests) throws IOException;
+
+    <T extends ResponseEntity> CompletableFuture<T> getAsync(RestHighLevelClient client, GetRequest request, Class<T> elementClass);
+
+    /**
+     * Executes the bulk request asynchronously.
+     *
+     * @return failure messages of failed items by document ids
+     */
+    CompletableFuture<Map<String, String>> bulkAsync(RestHighLevelClient client, BulkRequest request);
+
+    /**
+     * Executes the update or delete by query request asynchronously the same way as {@link #byQuery(RestHighLevelClient, Request)}.
+     */
+    CompletableFuture<ByQueryResponse> byQueryAsync(RestHighLevelClient client, Request request);
+
+    /**
+     * Deletes indices asynchronously.
+     *
+     * @return true if indices have been deleted or do not exist
+     */
+    CompletableFuture<Boolean> deleteIndicesAsync(RestHighLevelClient client, DeleteIndexRequest request);
 }
@@ -17,130 +17,321 @@
 
 package com.bwsw.cloudstack.storage.kv.service;
 
+import com.bwsw.cloudstack.storage.kv.entity.ByQueryResponse;
 import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
-import com.bwsw.cloudstack.storage.kv.entity.DeleteStorageRequest;
 import com.bwsw.cloudstack.storage.kv.entity.ResponseEntity;
 import com.bwsw.cloudstack.storage.kv.entity.ScrollableListResponse;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Throwables;
 import org.apache.cloudstack.api.response.ListResponse;
 import org.apache.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexResponse;
-import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.slice.SliceBuilder;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class KvExecutorImpl implements KvExecutor {
 
     private static final Logger s_logger = Logger.getLogger(KvExecutorImpl.class);
 
+    private static final String RESOURCE_ALREADY_EXISTS = "resource_already_exists_exception";
+
     private final ObjectMapper _objectMapper = new ObjectMapper();
+    private final Map<Class<?>, ObjectReader> _objectReaders = new ConcurrentHashMap<>();
 
     @Override
     public <T extends ResponseEntity> T get(RestHighLevelClient client, GetRequest request, Class<T> elementClass) throws IOException {
-        GetResponse response = client.get(request);
-        if (!response.isExists()) {
-            return null;
-        }
-        if (response.isSourceEmpty()) {
-            throw new CloudRuntimeException("Empty result for get operation");
-        }
-        return parseResult(response.getSourceAsString(), elementClass, response.getId());
+        return parseGet(client.get(request), elementClass);
+    }
+
+    @Override
+    public <T extends ResponseEntity> Map<String, T> multiGet(RestHighLevelClient client, MultiGetRequest request, Class<T> elementClass) throws IOException {
+        return parseMultiGet(client.multiGet(request), elementClass);
     }
 
     @Override
     public void index(RestHighLevelClient client, IndexRequest request) throws IOException {
-        IndexResponse response = client.index(request);
-        if (response.status() != RestStatus.CREATED && response.status() != RestStatus.OK) {
-            throw new CloudRuntimeException("Failed to execute create/update operation");
-        }
+        checkIndex(client.index(request));
     }
 
     @Override
     public void update(RestHighLevelClient client, UpdateRequest request) throws IOException {
-        UpdateResponse response = client.update(request);
-        if (response.status() != RestStatus.OK) {
-            throw new CloudRuntimeException("Failed to execute update operation");
-        }
+        checkUpdate(client.update(request));
     }
 
     @Override
-    public <T extends ResponseEntity> ListResponse<T> search(RestHighLevelClient client, SearchRequest request, Class<T> elementClass) throws IOException {
-        SearchResponse response = client.search(request);
-        if (response.status() != RestStatus.OK || response.getHits() == null) {
-            throw new CloudRuntimeException("Failed to execute search operation");
-        }
-        ListResponse<T> results = new ListResponse<>();
-        results.setResponses(parseResults(response, elementClass), (int)response.getHits().getTotalHits());
-        return results;
+    public Map<String, String> bulk(RestHighLevelClient client, BulkRequest request) throws IOException {
+        return parseBulk(client.bulk(request));
     }
 
     @Override
-    public <T extends ResponseEntity> ScrollableListResponse<T> scroll(RestHighLevelClient client, SearchRequest request, Class<T> elementClass) throws IOException {
-        return parseScroll(client.search(request), elementClass);
+    public <T extends ResponseEntity> ListResponse<T> search(RestHighLevelClient client, SearchRequest request, Class<T> elementClass) throws IOException {
+        return parseSearch(client.search(request), elementClass);
     }
 
     @Override
-    public <T extends ResponseEntity> ScrollableListResponse<T> scroll(RestHighLevelClient client, SearchScrollRequest request, Class<T> elementClass) throws IOException {
-        return parseScroll(client.searchScroll(request), elementClass);
+    public <T extends ResponseEntity> void scroll(RestHighLevelClient client, SearchRequest request, int slices, Class<T> elementClass,
+            CheckedConsumer<List<T>, Exception> consumer) throws Exception {
+        scroll(client, request, slices, response -> parseScroll(response, elementClass), consumer);
     }
 
     @Override
-    public ScrollableListResponse<String> scrollIds(RestHighLevelClient client, SearchRequest request) throws IOException {
-        return parseScrollIds(client.search(request));
+    public void scrollIds(RestHighLevelClient client, SearchRequest request, int slices, CheckedConsumer<List<String>, Exception> consumer) throws Exception {
+        scroll(client, request, slices, this::parseScrollIds, consumer);
     }
 
     @Override
-    public ScrollableListResponse<String> scrollIds(RestHighLevelClient client, SearchScrollRequest request) throws IOException {
-        return parseScrollIds(client.searchScroll(request));
+    public ByQueryResponse byQuery(RestHighLevelClient client, Request request) throws IOException {
+        return parseByQuery(client.getLowLevelClient().performRequest(request.getMethod(), request.getEndpoint(), request.getParameters(), request.getEntity()));
     }
 
     @Override
     public void create(RestHighLevelClient client, CreateStorageRequest request) throws IOException {
         index(client, request.getRegistryRequest());
-        createIndex(client, request.getStorageIndexRequest());
-        if (request.getHistoryIndexRequest() != null) {
-            createIndex(client, request.getHistoryIndexRequest());
+        // storage and history indices are created concurrently
+        try {
+            CompletableFuture.allOf(createIndexAsync(client, request.getStorageIndexRequest()), createIndexAsync(client, request.getHistoryIndexRequest())).join();
+        } catch (CompletionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw e;
         }
     }
 
     @Override
-    public boolean delete(RestHighLevelClient client, DeleteStorageRequest request) throws IOException {
-        UpdateResponse registryUpdateResponse = client.update(request.getRegistryUpdateRequest());
-        if (registryUpdateResponse.status() != RestStatus.OK) {
-            return false;
+    public void createIndices(RestHighLevelClient client, List<CreateIndexRequest> requests) throws IOException {
+        for (CreateIndexRequest request : requests) {
+            try {
+                client.indices().create(request);
+            } catch (ElasticsearchException exception) {
+                if (exception.status() != RestStatus.BAD_REQUEST || !exception.getMessage().contains(RESOURCE_ALREADY_EXISTS)) {
+                    throw exception;
+                }
+            }
         }
-        if (!deleteIndex(client, request.getStorageIndexRequest())) {
-            return false;
+    }
+
+    @Override
+    public <T extends ResponseEntity> CompletableFuture<T> getAsync(RestHighLevelClient client, GetRequest request, Class<T> elementClass) {
+        return parse(this.<GetResponse>execute(listener -> client.getAsync(request, listener)), response -> parseGet(response, elementClass));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> bulkAsync(RestHighLevelClient client, BulkRequest request) {
+        return this.<BulkResponse>execute(listener -> client.bulkAsync(request, listener)).thenApply(KvExecutorImpl::parseBulk);
+    }
+
+    @Override
+    public CompletableFuture<ByQueryResponse> byQueryAsync(RestHighLevelClient client, Request request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        try {
+            client.getLowLevelClient().performRequestAsync(request.getMethod(), request.getEndpoint(), request.getParameters(), request.getEntity(),
+                    new ResponseListener() {
+                        @Override
+                        public void onSuccess(Response response) {
+                            future.complete(response);
+                        }
+
+                        @Override
+                        public void onFailure(Exception exception) {
+                            future.completeExceptionally(exception);
+                        }
+                    });
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return parse(future, this::parseByQuery);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteIndicesAsync(RestHighLevelClient client, DeleteIndexRequest request) {
+        return this.<DeleteIndexResponse>execute(listener -> client.indices().deleteAsync(request, listener)).handle((response, throwable) -> {
+            if (throwable == null) {
+                return response.isAcknowledged();
+            }
+            Throwable cause = getCause(throwable);
+            if (cause instanceof ElasticsearchException) {
+                // missing indices have been deleted already
+                return ((ElasticsearchException)cause).status() == RestStatus.NOT_FOUND;
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    private <T> void scroll(RestHighLevelClient client, SearchRequest request, int slices, CheckedFunction<SearchResponse, ScrollableListResponse<T>, IOException> parser,
+            CheckedConsumer<List<T>, Exception> consumer) throws Exception {
+        if (slices <= 1) {
+            scrollSlice(client, request, parser, consumer);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(slices);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (SearchRequest sliceRequest : getSliceRequests(request, slices)) {
+                futures.add(executor.submit(() -> {
+                    scrollSlice(client, sliceRequest, parser, consumer);
+                    return null;
+                }));
+            }
+            // all slices are waited for so that their scroll contexts are cleared before returning
+            Exception exception = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+                    if (exception == null) {
+                        exception = cause;
+                    } else {
+                        exception.addSuppressed(cause);
+                    }
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        } finally {
+            executor.shutdownNow();
         }
-        if (request.getHistoryIndexRequest() != null && !deleteIndex(client, request.getHistoryIndexRequest())) {
-            return false;
+    }
+
+    private <T> void scrollSlice(RestHighLevelClient client, SearchRequest request, CheckedFunction<SearchResponse, ScrollableListResponse<T>, IOException> parser,
+            CheckedConsumer<List<T>, Exception> consumer) throws Exception {
+        String scrollId = null;
+        try {
+            SearchResponse response = client.search(request);
+            while (true) {
+                scrollId = response.getScrollId();
+                ScrollableListResponse<T> results = parser.apply(response);
+                if (results.getResults() == null || results.getResults().isEmpty()) {
+                    break;
+                }
+                consumer.accept(results.getResults());
+                SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+                scrollRequest.scroll(request.scroll());
+                response = client.searchScroll(scrollRequest);
+            }
+        } finally {
+            if (scrollId != null) {
+                clearScroll(client, scrollId);
+            }
         }
-        DeleteResponse registryDeleteResponse = client.delete(request.getRegistryDeleteRequest());
-        return registryDeleteResponse.status() == RestStatus.OK || registryDeleteResponse.status() == RestStatus.NOT_FOUND;
     }
 
-    private <T extends ResponseEntity> List<T> parseResults(SearchResponse response, Class<T> elementClass) throws IOException {
-        List<T> results = new ArrayList<>();
+    List<SearchRequest> getSliceRequests(SearchRequest request, int slices) {
+        List<SearchRequest> requests = new ArrayList<>();
+        for (int i = 0; i < slices; i++) {
+            SearchRequest sliceRequest = new SearchRequest(request.indices(), request.source().copyWithNewSlice(new SliceBuilder(i, slices)));
+            sliceRequest.scroll(request.scroll());
+            requests.add(sliceRequest);
+        }
+        return requests;
+    }
+
+    private void clearScroll(RestHighLevelClient client, String scrollId) {
+        ClearScrollRequest request = new ClearScrollRequest();
+        request.addScrollId(scrollId);
+        try {
+            client.clearScroll(request);
+        } catch (Exception e) {
+            s_logger.warn("Unable to clear the scroll " + scrollId, e);
+        }
+    }
+
+    private <T extends ResponseEntity> T parseGet(GetResponse response, Class<T> elementClass) throws IOException {
+        if (!response.isExists()) {
+            return null;
+        }
+        if (response.isSourceEmpty()) {
+            throw new CloudRuntimeException("Empty result for get operation");
+        }
+        return parseResult(response.getSourceAsBytesRef(), elementClass, response.getId());
+    }
+
+    private <T extends ResponseEntity> Map<String, T> parseMultiGet(MultiGetResponse response, Class<T> elementClass) throws IOException {
+        Map<String, T> results = new HashMap<>();
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed()) {
+                throw new CloudRuntimeException("Failed to execute get operation for " + item.getId() + ": " + item.getFailure().getMessage());
+            }
+            T result = parseGet(item.getResponse(), elementClass);
+            if (result != null) {
+                results.put(item.getId(), result);
+            }
+        }
+        return results;
+    }
+
+    private void checkIndex(IndexResponse response) {
+        if (response.status() != RestStatus.CREATED && response.status() != RestStatus.OK) {
+            throw new CloudRuntimeException("Failed to execute create/update operation");
+        }
+    }
+
+    private void checkUpdate(UpdateResponse response) {
+        if (response.status() != RestStatus.OK) {
+            throw new CloudRuntimeException("Failed to execute update operation");
+        }
+    }
+
+    private <T extends ResponseEntity> ListResponse<T> parseSearch(SearchResponse response, Class<T> elementClass) throws IOException {
+        if (response.status() != RestStatus.OK || response.getHits() == null) {
+            throw new CloudRuntimeException("Failed to execute search operation");
+        }
+        ListResponse<T> results = new ListResponse<>();
+        results.setResponses(parseResults(response, elementClass), (int)response.getHits().getTotalHits());
+        return results;
+    }
+
+    <T extends ResponseEntity> List<T> parseResults(SearchResponse response, Class<T> elementClass) throws IOException {
+        List<T> results = new ArrayList<>(response.getHits().getHits().length);
         for (SearchHit searchHit : response.getHits()) {
-            results.add(parseResult(searchHit.getSourceAsString(), elementClass, searchHit.getId()));
+            results.add(parseResult(searchHit.getSourceRef(), elementClass, searchHit.getId()));
         }
         return results;
     }
@@ -163,26 +354,84 @@ public class KvExecutorImpl implements KvExecutor {
         return new ScrollableListResponse<>(response.getScrollId(), results);
     }
 
-    private <T extends ResponseEntity> T parseResult(String source, Class<T> elementClass, String id) throws IOException {
-        T result = _objectMapper.readValue(source, elementClass);
+    /**
+     * Parses the document source bytes without converting them to a string.
+     */
+    <T extends ResponseEntity> T parseResult(BytesReference source, Class<T> elementClass, String id) throws IOException {
+        if (source == null) {
+            throw new CloudRuntimeException("Empty document source");
+        }
+        BytesRef bytes = source.toBytesRef();
+        T result = _objectReaders.computeIfAbsent(elementClass, _objectMapper::readerFor).readValue(bytes.bytes, bytes.offset, bytes.length);
         result.setId(id);
         return result;
     }
 
-    private boolean deleteIndex(RestHighLevelClient client, DeleteIndexRequest request) throws IOException {
-        try {
-            DeleteIndexResponse storageIndexResponse = client.indices().delete(request);
-            return storageIndexResponse.isAcknowledged();
-        } catch (ElasticsearchException exception) {
-            return exception.status() == RestStatus.NOT_FOUND;
+    private static Map<String, String> parseBulk(BulkResponse response) {
+        Map<String, String> failures = new HashMap<>();
+        if (response.hasFailures()) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    failures.put(item.getId(), item.getFailureMessage());
+                }
+            }
+        }
+        return failures;
+    }
+
+    private ByQueryResponse parseByQuery(Response response) throws IOException {
+        if (response.getStatusLine().getStatusCode() != RestStatus.OK.getStatus() || response.getEntity() == null) {
+            throw new CloudRuntimeException("Failed to execute by query operation: status " + response.getStatusLine().getStatusCode());
+        }
+        try (InputStream content = response.getEntity().getContent()) {
+            return _objectReaders.computeIfAbsent(ByQueryResponse.class, _objectMapper::readerFor).readValue(content);
+        }
+    }
+
+    /**
+     * Creates the index logging I/O failures.
+     */
+    private CompletableFuture<Void> createIndexAsync(RestHighLevelClient client, CreateIndexRequest request) {
+        if (request == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return this.<CreateIndexResponse>execute(listener -> client.indices().createAsync(request, listener)).handle((response, throwable) -> {
+            if (throwable == null) {
+                return null;
+            }
+            Throwable cause = getCause(throwable);
+            if (cause instanceof IOException) {
+                s_logger.error("Unabled to create an index: " + request.index(), cause);
+                return null;
+            }
+            throw new CompletionException(cause);
+        });
     }
 
-    private void createIndex(RestHighLevelClient client, CreateIndexRequest request) {
+    /**
+     * Executes the request with the listener based async client method.
+     */
+    private <R> CompletableFuture<R> execute(Consumer<ActionListener<R>> action) {
+        CompletableFuture<R> future = new CompletableFuture<>();
         try {
-            client.indices().create(request);
-        } catch (IOException e) {
-            s_logger.error("Unabled to create an index: " + request.index(), e);
+            action.accept(ActionListener.wrap(future::complete, future::completeExceptionally));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
         }
+        return future;
+    }
+
+    private static <R, T> CompletableFuture<T> parse(CompletableFuture<R> future, CheckedFunction<R, T, IOException> parser) {
+        return future.thenApply(response -> {
+            try {
+                return parser.apply(response);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static Throwable getCause(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
     }
 }
@@ -25,11 +25,15 @@ import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
 import com.bwsw.cloudstack.storage.kv.response.KvPair;
 import com.bwsw.cloudstack.storage.kv.response.KvResult;
 
+import java.io.Closeable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-public interface KvOperationManager {
+/**
+ * Executes KV storage operations. The manager holds HTTP connections until it is closed.
+ */
+public interface KvOperationManager extends Closeable {
 
     KvOperationResponse get(KvStorage storage, String key);
 
@@ -45,6 +49,8 @@ public interface KvOperationManager {
 
     KvKeys list(KvStorage storage);
 
+    KvKeys list(KvStorage storage, String prefix, String cursor, int size);
+
     KvOperationResponse clear(KvStorage storage);
 
     KvHistoryResult getHistory(KvStorage storage, List<String> keys, List<String> operations, Long start, Long end, List<String> sort, Integer page, Integer size, Long scroll);
@@ -30,45 +30,90 @@ import com.bwsw.cloudstack.storage.kv.response.KvPair;
 import com.bwsw.cloudstack.storage.kv.response.KvResult;
 import com.bwsw.cloudstack.storage.kv.response.KvSuccess;
 import com.bwsw.cloudstack.storage.kv.response.KvValue;
+import com.bwsw.cloudstack.storage.kv.service.KvEndpointBalancer.KvEndpoint;
+import com.bwsw.cloudstack.storage.kv.util.TimeManagerImpl;
 import com.cloud.exception.InvalidParameterValueException;
+import com.cloud.utils.exception.CloudRuntimeException;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
 import org.apache.cloudstack.api.ApiErrorCode;
 import org.apache.cloudstack.api.ServerApiException;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
-public class KvOperationManagerImpl implements KvOperationManager {
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageBalancingStrategy;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCompressionEnabled;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageCompressionThreshold;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageConnectionIdleTimeout;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageConnectionValidationInterval;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageEndpointEjectionTime;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageEndpointFailuresMax;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageMaxConnections;
+import static com.bwsw.cloudstack.storage.kv.service.KvStorageManager.KvStorageMaxConnectionsPerRoute;
+
+public class KvOperationManagerImpl implements KvOperationManager, KvAsyncOperationManager {
 
     private static final int TIMEOUT = 3000;
     private static final String SECRET_KEY_HEADER = "Secret-Key";
     private static final Charset CHARSET = Charset.forName("UTF-8");
     private static final ContentType JSON_CONTENT_TYPE = ContentType.create("application/json");
     private static final ContentType TEXT_PLAIN_CONTENT_TYPE = ContentType.create("text/plain");
+    private static final String ITEMS_FIELD = "items";
+    private static final String CURSOR_FIELD = "cursor";
+    private static final String GZIP_ENCODING = "gzip";
 
     private static final Logger s_logger = Logger.getLogger(KvStorageManagerImpl.class);
 
@@ -78,26 +123,209 @@ public class KvOperationManagerImpl implements KvOperationManager {
     }
 
     @FunctionalInterface
-    private interface CheckedSupplier<T, E extends Exception> {
-        T get() throws E;
+    interface CheckedFunction<T, R, E extends Exception> {
+        R apply(T t) throws E;
     }
 
+    private final PoolingHttpClientConnectionManager _connectionManager;
     private final CloseableHttpClient _httpClient;
-    private final String _url;
+    private final PoolingNHttpClientConnectionManager _asyncConnectionManager;
+    private final CloseableHttpAsyncClient _asyncHttpClient;
+    private final ScheduledExecutorService _asyncConnectionEvictor;
+    private final int _idleTimeout;
+    private final KvEndpointBalancer _endpointBalancer;
+    private final boolean _compressionEnabled;
+    private final int _compressionThreshold;
     private final ObjectMapper objectMapper;
     private final ExceptionFactory exceptionFactory;
 
     public KvOperationManagerImpl(String url, ExceptionFactory exceptionFactory) {
+        this(url, exceptionFactory, KvStorageCompressionEnabled.value(), KvStorageCompressionThreshold.value());
+    }
+
+    /**
+     * @param compressionEnabled true if request bodies should be compressed with gzip and gzip responses should be requested
+     * @param compressionThreshold the minimum size in bytes of request bodies to be compressed
+     */
+    public KvOperationManagerImpl(String url, ExceptionFactory exceptionFactory, boolean compressionEnabled, int compressionThreshold) {
         RequestConfig config = RequestConfig.custom().setConnectTimeout(TIMEOUT).setConnectionRequestTimeout(TIMEOUT).setSocketTimeout(TIMEOUT).build();
-        _httpClient = HttpClients.custom().setDefaultRequestConfig(config).build();
-        this._url = StringUtils.appendIfMissing(url, "/");
+        _connectionManager = new PoolingHttpClientConnectionManager();
+        _connectionManager.setMaxTotal(KvStorageMaxConnections.value());
+        _connectionManager.setDefaultMaxPerRoute(KvStorageMaxConnectionsPerRoute.value());
+        _connectionManager.setValidateAfterInactivity(KvStorageConnectionValidationInterval.value());
+        _httpClient = HttpClients.custom().setDefaultRequestConfig(config).setConnectionManager(_connectionManager).evictExpiredConnections()
+                .evictIdleConnections(KvStorageConnectionIdleTimeout.value(), TimeUnit.MILLISECONDS).build();
+        try {
+            _asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+        } catch (IOReactorException e) {
+            throw new CloudRuntimeException("Unable to create KV storage async HTTP client", e);
+        }
+        _asyncConnectionManager.setMaxTotal(KvStorageMaxConnections.value());
+        _asyncConnectionManager.setDefaultMaxPerRoute(KvStorageMaxConnectionsPerRoute.value());
+        _asyncHttpClient = HttpAsyncClients.custom().setDefaultRequestConfig(config).setConnectionManager(_asyncConnectionManager).build();
+        _asyncHttpClient.start();
+        // the async client has no built-in eviction, idle and expired connections are evicted the way the sync client does
+        _idleTimeout = KvStorageConnectionIdleTimeout.value();
+        _asyncConnectionEvictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "KvAsyncConnectionEvictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriod = Math.max(1000, _idleTimeout);
+        _asyncConnectionEvictor.scheduleWithFixedDelay(this::evictAsyncConnections, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+        _endpointBalancer = new KvEndpointBalancer(getUrls(url), getBalancingStrategy(), KvStorageEndpointFailuresMax.value(), KvStorageEndpointEjectionTime.value(),
+                new TimeManagerImpl());
+        _compressionEnabled = compressionEnabled;
+        _compressionThreshold = compressionThreshold;
         this.objectMapper = new ObjectMapper();
         this.exceptionFactory = exceptionFactory;
     }
 
+    /**
+     * Releases connections and threads of sync and async HTTP clients. Operations fail after the manager is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        _asyncConnectionEvictor.shutdownNow();
+        try {
+            _asyncHttpClient.close();
+        } finally {
+            _httpClient.close();
+        }
+    }
+
     @Override
     public KvOperationResponse get(KvStorage storage, String key) {
-        return execute(() -> new HttpGet(String.format("%sget/%s/%s", _url, encode(storage.getId()), encode(key))), storage.getSecretKey(), (statusCode, entity) -> {
+        return execute(getOperation(storage, key));
+    }
+
+    @Override
+    public KvOperationResponse get(KvStorage storage, Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return new KvData();
+        }
+        return execute(getOperation(storage, keys));
+    }
+
+    @Override
+    public KvPair set(KvStorage storage, String key, String value) {
+        return execute(setOperation(storage, key, value));
+    }
+
+    @Override
+    public KvResult set(KvStorage storage, Map<String, String> data) {
+        if (data == null || data.isEmpty()) {
+            return new KvResult();
+        }
+        return execute(setOperation(storage, data));
+    }
+
+    @Override
+    public KvKey delete(KvStorage storage, String key) {
+        return execute(deleteOperation(storage, key));
+    }
+
+    @Override
+    public KvResult delete(KvStorage storage, Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return new KvResult();
+        }
+        return execute(deleteOperation(storage, keys));
+    }
+
+    @Override
+    public KvKeys list(KvStorage storage) {
+        return execute(listOperation(storage));
+    }
+
+    @Override
+    public KvKeys list(KvStorage storage, String prefix, String cursor, int size) {
+        return execute(listOperation(storage, prefix, cursor, size));
+    }
+
+    @Override
+    public KvOperationResponse clear(KvStorage storage) {
+        return execute(clearOperation(storage));
+    }
+
+    @Override
+    public KvHistoryResult getHistory(KvStorage storage, List<String> keys, List<String> operations, Long start, Long end, List<String> sort, Integer page, Integer size,
+            Long scroll) {
+        return execute(getHistoryOperation(storage, keys, operations, start, end, sort, page, size, scroll));
+    }
+
+    @Override
+    public KvHistoryResult getHistory(String scrollId, long timeout) {
+        return execute(getHistoryOperation(scrollId, timeout));
+    }
+
+    @Override
+    public CompletableFuture<KvOperationResponse> getAsync(KvStorage storage, String key) {
+        return executeAsync(() -> getOperation(storage, key));
+    }
+
+    @Override
+    public CompletableFuture<KvOperationResponse> getAsync(KvStorage storage, Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return CompletableFuture.completedFuture(new KvData());
+        }
+        return executeAsync(() -> getOperation(storage, keys));
+    }
+
+    @Override
+    public CompletableFuture<KvPair> setAsync(KvStorage storage, String key, String value) {
+        return executeAsync(() -> setOperation(storage, key, value));
+    }
+
+    @Override
+    public CompletableFuture<KvResult> setAsync(KvStorage storage, Map<String, String> data) {
+        if (data == null || data.isEmpty()) {
+            return CompletableFuture.completedFuture(new KvResult());
+        }
+        return executeAsync(() -> setOperation(storage, data));
+    }
+
+    @Override
+    public CompletableFuture<KvKey> deleteAsync(KvStorage storage, String key) {
+        return executeAsync(() -> deleteOperation(storage, key));
+    }
+
+    @Override
+    public CompletableFuture<KvResult> deleteAsync(KvStorage storage, Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return CompletableFuture.completedFuture(new KvResult());
+        }
+        return executeAsync(() -> deleteOperation(storage, keys));
+    }
+
+    @Override
+    public CompletableFuture<KvKeys> listAsync(KvStorage storage) {
+        return executeAsync(() -> listOperation(storage));
+    }
+
+    @Override
+    public CompletableFuture<KvKeys> listAsync(KvStorage storage, String prefix, String cursor, int size) {
+        return executeAsync(() -> listOperation(storage, prefix, cursor, size));
+    }
+
+    @Override
+    public CompletableFuture<KvOperationResponse> clearAsync(KvStorage storage) {
+        return executeAsync(() -> clearOperation(storage));
+    }
+
+    @Override
+    public CompletableFuture<KvHistoryResult> getHistoryAsync(KvStorage storage, List<String> keys, List<String> operations, Long start, Long end, List<String> sort,
+            Integer page, Integer size, Long scroll) {
+        return executeAsync(() -> getHistoryOperation(storage, keys, operations, start, end, sort, page, size, scroll));
+    }
+
+    @Override
+    public CompletableFuture<KvHistoryResult> getHistoryAsync(String scrollId, long timeout) {
+        return executeAsync(() -> getHistoryOperation(scrollId, timeout));
+    }
+
+    private KvOperation<KvOperationResponse> getOperation(KvStorage storage, String key) {
+        return new KvOperation<>(url -> new HttpGet(String.format("%sget/%s/%s", url, encode(storage.getId()), encode(key))), storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
                 return new KvValue(EntityUtils.toString(entity, CHARSET));
@@ -109,21 +337,16 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvOperationResponse get(KvStorage storage, Collection<String> keys) {
-        if (keys == null || keys.isEmpty()) {
-            return new KvData();
-        }
-        return execute(() -> {
+    private KvOperation<KvOperationResponse> getOperation(KvStorage storage, Collection<String> keys) {
+        return new KvOperation<>(url -> {
             StringEntity entity = new StringEntity(objectMapper.writeValueAsString(keys), JSON_CONTENT_TYPE);
-            HttpPost request = new HttpPost(String.format("%sget/%s", _url, encode(storage.getId())));
+            HttpPost request = new HttpPost(String.format("%sget/%s", url, encode(storage.getId())));
             request.setEntity(entity);
             return request;
-        }, storage.getSecretKey(), (statusCode, entity) -> {
+        }, storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
-                @SuppressWarnings("unchecked") Map<String, String> items = objectMapper.readValue(EntityUtils.toString(entity, CHARSET), Map.class);
-                return new KvData(items);
+                return new KvData(readMap(entity, keys.size(), this::readString));
             case HttpStatus.SC_NOT_FOUND:
                 throw exceptionFactory.getException(InvalidParameterValueCode.NONEXISTENT_STORAGE);
             default:
@@ -132,17 +355,16 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvPair set(KvStorage storage, String key, String value) {
+    private KvOperation<KvPair> setOperation(KvStorage storage, String key, String value) {
         if (key == null || key.isEmpty()) {
             throw new InvalidParameterValueException("Null or empty key");
         }
-        return execute(() -> {
+        return new KvOperation<>(url -> {
             StringEntity entity = new StringEntity(value, TEXT_PLAIN_CONTENT_TYPE);
-            HttpPut request = new HttpPut(String.format("%sset/%s/%s", _url, encode(storage.getId()), encode(key)));
+            HttpPut request = new HttpPut(String.format("%sset/%s/%s", url, encode(storage.getId()), encode(key)));
             request.setEntity(entity);
             return request;
-        }, storage.getSecretKey(), (statusCode, entity) -> {
+        }, storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
                 return new KvPair(key, value);
@@ -156,32 +378,28 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvResult set(KvStorage storage, Map<String, String> data) {
-        if (data == null || data.isEmpty()) {
-            return new KvResult();
-        }
-        return execute(() -> {
+    private KvOperation<KvResult> setOperation(KvStorage storage, Map<String, String> data) {
+        return new KvOperation<>(url -> {
             StringEntity entity = new StringEntity(objectMapper.writeValueAsString(data), JSON_CONTENT_TYPE);
-            HttpPut request = new HttpPut(String.format("%sset/%s", _url, encode(storage.getId())));
+            HttpPut request = new HttpPut(String.format("%sset/%s", url, encode(storage.getId())));
             request.setEntity(entity);
             return request;
-        }, storage.getSecretKey(), (statusCode, entity) -> {
+        }, storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
-                @SuppressWarnings("unchecked") Map<String, Boolean> items = objectMapper.readValue(EntityUtils.toString(entity, CHARSET), Map.class);
-                return new KvResult(items);
+                return new KvResult(readMap(entity, data.size(), this::readBoolean));
             case HttpStatus.SC_NOT_FOUND:
                 throw exceptionFactory.getException(InvalidParameterValueCode.NONEXISTENT_STORAGE);
+            case HttpStatus.SC_BAD_REQUEST:
+                throw new InvalidParameterValueException("Key/value pairs are invalid");
             default:
                 throw exceptionFactory.getKvOperationException(statusCode);
             }
         });
     }
 
-    @Override
-    public KvKey delete(KvStorage storage, String key) {
-        return execute(() -> new HttpDelete(String.format("%sdelete/%s/%s", _url, storage.getId(), encode(key))), storage.getSecretKey(), (statusCode, entity) -> {
+    private KvOperation<KvKey> deleteOperation(KvStorage storage, String key) {
+        return new KvOperation<>(url -> new HttpDelete(String.format("%sdelete/%s/%s", url, storage.getId(), encode(key))), storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
                 return new KvKey(key);
@@ -193,21 +411,16 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvResult delete(KvStorage storage, Collection<String> keys) {
-        if (keys == null || keys.isEmpty()) {
-            return new KvResult();
-        }
-        return execute(() -> {
+    private KvOperation<KvResult> deleteOperation(KvStorage storage, Collection<String> keys) {
+        return new KvOperation<>(url -> {
             StringEntity entity = new StringEntity(objectMapper.writeValueAsString(keys), JSON_CONTENT_TYPE);
-            HttpPost request = new HttpPost(String.format("%sdelete/%s", _url, encode(storage.getId())));
+            HttpPost request = new HttpPost(String.format("%sdelete/%s", url, encode(storage.getId())));
             request.setEntity(entity);
             return request;
-        }, storage.getSecretKey(), (statusCode, entity) -> {
+        }, storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
-                @SuppressWarnings("unchecked") Map<String, Boolean> items = objectMapper.readValue(EntityUtils.toString(entity, CHARSET), Map.class);
-                return new KvResult(items);
+                return new KvResult(readMap(entity, keys.size(), this::readBoolean));
             case HttpStatus.SC_NOT_FOUND:
                 throw exceptionFactory.getException(InvalidParameterValueCode.NONEXISTENT_STORAGE);
             default:
@@ -216,13 +429,11 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvKeys list(KvStorage storage) {
-        return execute(() -> new HttpGet(String.format("%slist/%s", _url, encode(storage.getId()))), storage.getSecretKey(), (statusCode, entity) -> {
+    private KvOperation<KvKeys> listOperation(KvStorage storage) {
+        return new KvOperation<>(url -> new HttpGet(String.format("%slist/%s", url, encode(storage.getId()))), storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
-                @SuppressWarnings("unchecked") List<String> items = objectMapper.readValue(EntityUtils.toString(entity, CHARSET), List.class);
-                return new KvKeys(items);
+                return new KvKeys(readList(entity, this::readString));
             case HttpStatus.SC_NOT_FOUND:
                 throw exceptionFactory.getException(InvalidParameterValueCode.NONEXISTENT_STORAGE);
             default:
@@ -231,9 +442,34 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvOperationResponse clear(KvStorage storage) {
-        return execute(() -> new HttpPost(String.format("%sclear/%s", _url, encode(storage.getId()))), storage.getSecretKey(), (statusCode, entity) -> {
+    private KvOperation<KvKeys> listOperation(KvStorage storage, String prefix, String cursor, int size) {
+        return new KvOperation<>(url -> {
+            Map<String, String> params = new HashMap<>();
+            params.put("size", String.valueOf(size));
+            if (prefix != null) {
+                params.put("prefix", prefix);
+            }
+            if (cursor != null) {
+                params.put("cursor", cursor);
+            }
+            String query = params.entrySet().stream().map(e -> e.getKey() + "=" + encode(e.getValue())).collect(Collectors.joining("&"));
+            return new HttpGet(String.format("%slist/%s?%s", url, encode(storage.getId()), query));
+        }, storage, (statusCode, entity) -> {
+            switch (statusCode) {
+            case HttpStatus.SC_OK:
+                return readKeyPage(entity, size);
+            case HttpStatus.SC_BAD_REQUEST:
+                throw exceptionFactory.getException(InvalidParameterValueCode.INVALID_CURSOR);
+            case HttpStatus.SC_NOT_FOUND:
+                throw exceptionFactory.getException(InvalidParameterValueCode.NONEXISTENT_STORAGE);
+            default:
+                throw exceptionFactory.getKvOperationException(statusCode);
+            }
+        });
+    }
+
+    private KvOperation<KvOperationResponse> clearOperation(KvStorage storage) {
+        return new KvOperation<>(url -> new HttpPost(String.format("%sclear/%s", url, encode(storage.getId()))), storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
                 return new KvSuccess();
@@ -247,13 +483,12 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvHistoryResult getHistory(KvStorage storage, List<String> keys, List<String> operations, Long start, Long end, List<String> sort, Integer page, Integer size,
-            Long scroll) {
+    private KvOperation<KvHistoryResult> getHistoryOperation(KvStorage storage, List<String> keys, List<String> operations, Long start, Long end, List<String> sort,
+            Integer page, Integer size, Long scroll) {
         if (storage.getHistoryEnabled() == null || !storage.getHistoryEnabled()) {
             throw exceptionFactory.getException(InvalidParameterValueCode.HISTORY_DISABLED_STORAGE);
         }
-        return execute(() -> {
+        return new KvOperation<>(url -> {
             Map<String, String> params = new HashMap<>();
             put(params, "keys", keys);
             put(params, "operations", operations);
@@ -274,8 +509,8 @@ public class KvOperationManagerImpl implements KvOperationManager {
                 params.put("scroll", scroll.toString());
             }
             String query = params.entrySet().stream().map(e -> e.getKey() + "=" + encode(e.getValue())).collect(Collectors.joining("&"));
-            return new HttpGet(String.format("%shistory/%s?%s", _url, encode(storage.getId()), query));
-        }, storage.getSecretKey(), (statusCode, entity) -> {
+            return new HttpGet(String.format("%shistory/%s?%s", url, encode(storage.getId()), query));
+        }, storage, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
                 return objectMapper.readValue(EntityUtils.toString(entity), KvHistoryResult.class);
@@ -289,17 +524,16 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
-    @Override
-    public KvHistoryResult getHistory(String scrollId, long timeout) {
-        return execute(() -> {
+    private KvOperation<KvHistoryResult> getHistoryOperation(String scrollId, long timeout) {
+        return new KvOperation<>(url -> {
             Map<String, Object> body = new HashMap<>();
             body.put("scrollId", scrollId);
             body.put("timeout", timeout);
             StringEntity entity = new StringEntity(objectMapper.writeValueAsString(body), JSON_CONTENT_TYPE);
-            HttpPost request = new HttpPost(String.format("%shistory", _url));
+            HttpPost request = new HttpPost(String.format("%shistory", url));
             request.setEntity(entity);
             return request;
-        }, Optional.empty(), (statusCode, entity) -> {
+        }, null, (statusCode, entity) -> {
             switch (statusCode) {
             case HttpStatus.SC_OK:
                 return objectMapper.readValue(EntityUtils.toString(entity), KvHistoryResult.class);
@@ -311,6 +545,77 @@ public class KvOperationManagerImpl implements KvOperationManager {
         });
     }
 
+    <V> Map<String, V> readMap(HttpEntity entity, int expectedSize, CheckedFunction<JsonParser, V, IOException> valueReader) throws IOException {
+        Map<String, V> items = Maps.newLinkedHashMapWithExpectedSize(expectedSize);
+        try (JsonParser parser = objectMapper.getFactory().createParser(entity.getContent())) {
+            checkToken(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                parser.nextToken();
+                items.put(key, valueReader.apply(parser));
+            }
+            checkToken(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        }
+        return items;
+    }
+
+    <V> List<V> readList(HttpEntity entity, CheckedFunction<JsonParser, V, IOException> valueReader) throws IOException {
+        List<V> items = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(entity.getContent())) {
+            checkToken(parser, parser.nextToken(), JsonToken.START_ARRAY);
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                items.add(valueReader.apply(parser));
+            }
+        }
+        return items;
+    }
+
+    KvKeys readKeyPage(HttpEntity entity, int size) throws IOException {
+        List<String> items = new ArrayList<>(size);
+        String cursor = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(entity.getContent())) {
+            checkToken(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (ITEMS_FIELD.equals(field)) {
+                    checkToken(parser, token, JsonToken.START_ARRAY);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        items.add(readString(parser));
+                    }
+                } else if (CURSOR_FIELD.equals(field)) {
+                    cursor = readString(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            checkToken(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        }
+        return new KvKeys(items, cursor);
+    }
+
+    String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null || !token.isScalarValue()) {
+            throw new JsonParseException(parser, "Unexpected token " + token);
+        }
+        return parser.getValueAsString();
+    }
+
+    Boolean readBoolean(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null || !token.isBoolean()) {
+            throw new JsonParseException(parser, "Unexpected token " + token);
+        }
+        return parser.getBooleanValue();
+    }
+
+    private void checkToken(JsonParser parser, JsonToken token, JsonToken expectedToken) throws JsonParseException {
+        if (token != expectedToken) {
+            throw new JsonParseException(parser, "Unexpected token " + token + ", expected " + expectedToken);
+        }
+    }
+
     private void put(Map<String, String> map, String key, List<String> values) {
         if (values != null && !values.isEmpty()) {
             map.put(key, values.stream().collect(Collectors.joining(",")));
@@ -326,33 +631,205 @@ public class KvOperationManagerImpl implements KvOperationManager {
         }
     }
 
-    private <T extends KvOperationResponse> T execute(CheckedSupplier<HttpUriRequest, Exception> requestSupplier, String secretKey,
-            CheckedBiFunction<Integer, HttpEntity, T, Exception> responseFactory) {
-        return execute(requestSupplier, Optional.ofNullable(secretKey), responseFactory);
+    private <T extends KvOperationResponse> T execute(KvOperation<T> operation) {
+        Set<KvEndpoint> excluded = new HashSet<>();
+        while (true) {
+            KvEndpoint endpoint = acquire(operation.getStorageId(), excluded);
+            CloseableHttpResponse response = null;
+            try {
+                HttpUriRequest request = compress(operation.getRequest(endpoint.getUrl()));
+                try {
+                    response = _httpClient.execute(request);
+                } catch (IOException e) {
+                    if (failover(endpoint, excluded, e)) {
+                        continue;
+                    }
+                    throw e;
+                }
+                int statusCode = response.getStatusLine().getStatusCode();
+                report(endpoint, statusCode);
+                return operation.getResponse(statusCode, response.getEntity());
+            } catch (Exception e) {
+                throw getException(e);
+            } finally {
+                _endpointBalancer.release(endpoint);
+                if (response != null) {
+                    try {
+                        response.close();
+                    } catch (IOException e) {
+                        // do nothing
+                        s_logger.error("Unable to close response", e);
+                    }
+                }
+            }
+        }
+    }
+
+    void evictAsyncConnections() {
+        _asyncConnectionManager.closeExpiredConnections();
+        _asyncConnectionManager.closeIdleConnections(_idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private <T extends KvOperationResponse> CompletableFuture<T> executeAsync(Supplier<KvOperation<T>> operationSupplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executeAsync(operationSupplier.get(), future, new HashSet<>());
+        } catch (Exception e) {
+            future.completeExceptionally(getException(e));
+        }
+        return future;
     }
 
-    private <T extends KvOperationResponse> T execute(CheckedSupplier<HttpUriRequest, Exception> requestSupplier, Optional<String> secretKey,
-            CheckedBiFunction<Integer, HttpEntity, T, Exception> responseFactory) {
-        CloseableHttpResponse response = null;
+    private <T extends KvOperationResponse> void executeAsync(KvOperation<T> operation, CompletableFuture<T> future, Set<KvEndpoint> excluded) {
+        KvEndpoint endpoint = acquire(operation.getStorageId(), excluded);
         try {
-            HttpUriRequest request = requestSupplier.get();
-            secretKey.ifPresent(s -> request.setHeader(SECRET_KEY_HEADER, s));
-            response = _httpClient.execute(request);
-            return responseFactory.apply(response.getStatusLine().getStatusCode(), response.getEntity());
-        } catch (InvalidParameterValueException e) {
-            throw e;
+            HttpUriRequest request = compress(operation.getRequest(endpoint.getUrl()));
+            if (_compressionEnabled) {
+                request.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP_ENCODING);
+            }
+            _asyncHttpClient.execute(request, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    _endpointBalancer.release(endpoint);
+                    try {
+                        int statusCode = response.getStatusLine().getStatusCode();
+                        report(endpoint, statusCode);
+                        future.complete(operation.getResponse(statusCode, decompress(response.getEntity())));
+                    } catch (Exception e) {
+                        future.completeExceptionally(getException(e));
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    _endpointBalancer.release(endpoint);
+                    if (failover(endpoint, excluded, e)) {
+                        executeAsync(operation, future, excluded);
+                    } else {
+                        future.completeExceptionally(getException(e));
+                    }
+                }
+
+                @Override
+                public void cancelled() {
+                    _endpointBalancer.release(endpoint);
+                    future.cancel(false);
+                }
+            });
         } catch (Exception e) {
-            s_logger.error("Unable to execute storage operation", e);
+            _endpointBalancer.release(endpoint);
+            future.completeExceptionally(getException(e));
+        }
+    }
+
+    private KvEndpoint acquire(String storageId, Set<KvEndpoint> excluded) {
+        KvEndpoint endpoint = _endpointBalancer.acquire(storageId, excluded);
+        if (endpoint == null) {
+            s_logger.error("KV storage URL is not configured");
             throw new ServerApiException(ApiErrorCode.INTERNAL_ERROR, "Failed to execute KV storage operation");
-        } finally {
-            if (response != null) {
-                try {
-                    response.close();
-                } catch (IOException e) {
-                    // do nothing
-                    s_logger.error("Unable to close response", e);
+        }
+        return endpoint;
+    }
+
+    private void report(KvEndpoint endpoint, int statusCode) {
+        if (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            _endpointBalancer.reportFailure(endpoint);
+        } else {
+            _endpointBalancer.reportSuccess(endpoint);
+        }
+    }
+
+    /**
+     * Reports the failure of the endpoint and checks whether the operation should be retried on another endpoint.
+     * Only connection failures are retried as the operation has not reached KV storage in this case.
+     */
+    private boolean failover(KvEndpoint endpoint, Set<KvEndpoint> excluded, Exception e) {
+        _endpointBalancer.reportFailure(endpoint);
+        excluded.add(endpoint);
+        if ((e instanceof ConnectException || e instanceof ConnectTimeoutException) && excluded.size() < _endpointBalancer.getEndpoints().size()) {
+            s_logger.warn("Unable to connect to KV storage endpoint " + endpoint.getUrl() + ", retrying the operation on another endpoint");
+            return true;
+        }
+        return false;
+    }
+
+    private HttpUriRequest compress(HttpUriRequest request) throws IOException {
+        if (_compressionEnabled && request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest entityEnclosingRequest = (HttpEntityEnclosingRequest)request;
+            HttpEntity entity = entityEnclosingRequest.getEntity();
+            if (entity != null && entity.getContentLength() >= _compressionThreshold) {
+                // compressed eagerly as the async client does not support streamed entities
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+                    entity.writeTo(gzipOutputStream);
                 }
+                ByteArrayEntity compressedEntity = new ByteArrayEntity(outputStream.toByteArray());
+                compressedEntity.setContentType(entity.getContentType());
+                compressedEntity.setContentEncoding(GZIP_ENCODING);
+                entityEnclosingRequest.setEntity(compressedEntity);
             }
         }
+        return request;
+    }
+
+    // the async client does not decode responses unlike the blocking one
+    private HttpEntity decompress(HttpEntity entity) {
+        if (entity != null && entity.getContentEncoding() != null && GZIP_ENCODING.equalsIgnoreCase(entity.getContentEncoding().getValue())) {
+            return new GzipDecompressingEntity(entity);
+        }
+        return entity;
+    }
+
+    private static List<String> getUrls(String url) {
+        if (url == null) {
+            return Collections.emptyList();
+        }
+        return Stream.of(url.split(",")).map(String::trim).filter(u -> !u.isEmpty()).collect(Collectors.toList());
+    }
+
+    private static KvEndpointBalancer.Strategy getBalancingStrategy() {
+        try {
+            return KvEndpointBalancer.Strategy.valueOf(KvStorageBalancingStrategy.value().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            s_logger.warn("Unknown KV storage balancing strategy " + KvStorageBalancingStrategy.value() + ", round robin is used");
+            return KvEndpointBalancer.Strategy.ROUND_ROBIN;
+        }
+    }
+
+    private RuntimeException getException(Exception e) {
+        if (e instanceof InvalidParameterValueException) {
+            return (InvalidParameterValueException)e;
+        }
+        s_logger.error("Unable to execute storage operation", e);
+        return new ServerApiException(ApiErrorCode.INTERNAL_ERROR, "Failed to execute KV storage operation");
+    }
+
+    private static class KvOperation<T extends KvOperationResponse> {
+
+        private final CheckedFunction<String, HttpUriRequest, Exception> _requestFactory;
+        private final String _storageId;
+        private final Optional<String> _secretKey;
+        private final CheckedBiFunction<Integer, HttpEntity, T, Exception> _responseFactory;
+
+        KvOperation(CheckedFunction<String, HttpUriRequest, Exception> requestFactory, KvStorage storage, CheckedBiFunction<Integer, HttpEntity, T, Exception> responseFactory) {
+            _requestFactory = requestFactory;
+            _storageId = storage == null ? null : storage.getId();
+            _secretKey = Optional.ofNullable(storage).map(KvStorage::getSecretKey);
+            _responseFactory = responseFactory;
+        }
+
+        String getStorageId() {
+            return _storageId;
+        }
+
+        HttpUriRequest getRequest(String url) throws Exception {
+            HttpUriRequest request = _requestFactory.apply(url);
+            _secretKey.ifPresent(s -> request.setHeader(SECRET_KEY_HEADER, s));
+            return request;
+        }
+
+        T getResponse(int statusCode, HttpEntity entity) throws Exception {
+            return _responseFactory.apply(statusCode, entity);
+        }
     }
 }
@@ -0,0 +1,166 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Shares a single execution between concurrent identical reads of the same storage.
+ * <p>
+ * Each storage maps to a write generation which is incremented before and after every write, and the generation
+ * observed at the start of a read is a part of the read key. Thus a read never joins a read that started before
+ * a write to the storage completed. Generations are incremented under stripe locks so that actions depending on
+ * read results, e.g. caching, are run atomically with the check that no write has started since the read.
+ */
+public class KvReadCoalescer {
+
+    private static final int STRIPES = 256;
+
+    private final AtomicLongArray _generations = new AtomicLongArray(STRIPES);
+    private final Object[] _locks = new Object[STRIPES];
+    private final ConcurrentMap<ReadKey, CompletableFuture<Object>> _inFlightReads = new ConcurrentHashMap<>();
+    private final Runnable _joinListener;
+
+    public KvReadCoalescer() {
+        this(() -> {
+        });
+    }
+
+    /**
+     * @param joinListener the listener run before a read joins an identical read in flight
+     */
+    KvReadCoalescer(Runnable joinListener) {
+        _joinListener = joinListener;
+        for (int i = 0; i < STRIPES; i++) {
+            _locks[i] = new Object();
+        }
+    }
+
+    public <T> T read(String storageId, Object key, Supplier<T> reader) {
+        ReadKey readKey = new ReadKey(storageId, _generations.get(getStripe(storageId)), key);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlightRead = _inFlightReads.putIfAbsent(readKey, future);
+        if (inFlightRead != null) {
+            _joinListener.run();
+            return join(inFlightRead);
+        }
+        try {
+            T result = reader.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            _inFlightReads.remove(readKey, future);
+        }
+    }
+
+    public <T> T write(String storageId, Supplier<T> writer) {
+        int stripe = getStripe(storageId);
+        incrementGeneration(stripe);
+        try {
+            return writer.get();
+        } finally {
+            incrementGeneration(stripe);
+        }
+    }
+
+    public long getGeneration(String storageId) {
+        return _generations.get(getStripe(storageId));
+    }
+
+    /**
+     * Runs the action if no write to the storage has started since the generation was retrieved. Writes to the storage
+     * do not start until the action is finished.
+     *
+     * @return true if the action has been run
+     */
+    public boolean runIfGeneration(String storageId, long generation, Runnable action) {
+        int stripe = getStripe(storageId);
+        synchronized (_locks[stripe]) {
+            if (_generations.get(stripe) != generation) {
+                return false;
+            }
+            action.run();
+            return true;
+        }
+    }
+
+    int getInFlightReadCount() {
+        return _inFlightReads.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T join(CompletableFuture<Object> future) {
+        try {
+            return (T)future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void incrementGeneration(int stripe) {
+        synchronized (_locks[stripe]) {
+            _generations.incrementAndGet(stripe);
+        }
+    }
+
+    private int getStripe(String storageId) {
+        return (storageId.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private static class ReadKey {
+
+        private final String _storageId;
+        private final long _generation;
+        private final Object _key;
+
+        ReadKey(String storageId, long generation, Object key) {
+            _storageId = storageId;
+            _generation = generation;
+            _key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ReadKey readKey = (ReadKey)o;
+            return _generation == readKey._generation && Objects.equals(_storageId, readKey._storageId) && Objects.equals(_key, readKey._key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_storageId, _generation, _key);
+        }
+    }
+}
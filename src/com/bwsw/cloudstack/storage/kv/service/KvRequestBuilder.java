@@ -18,30 +18,44 @@
 package com.bwsw.cloudstack.storage.kv.service;
 
 import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
-import com.bwsw.cloudstack.storage.kv.entity.DeleteStorageRequest;
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Request;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 
 public interface KvRequestBuilder {
 
     GetRequest getGetRequest(String storageId);
 
+    MultiGetRequest getMultiGetRequest(Collection<String> storageIds);
+
     CreateStorageRequest getCreateRequest(KvStorage storage) throws JsonProcessingException;
 
+    List<CreateIndexRequest> getCreateSharedIndicesRequests(int count);
+
     UpdateRequest getUpdateTTLRequest(KvStorage storage);
 
     UpdateRequest getUpdateSecretKey(KvStorage storage);
 
     SearchRequest getSearchRequest(String accountUuid, int from, int size);
 
+    /**
+     * Returns the request for the page of account storages following the storage with the specified id in the sort order.
+     *
+     * @param lastStorageId the id of the last storage of the previous page; null for the first page
+     */
+    SearchRequest getSearchRequest(String accountUuid, String lastStorageId, int size);
+
     SearchRequest getDeletedStoragesRequest(int size, int scrollTimeout);
 
     SearchRequest getVmStoragesRequest(int size, int scrollTimeout);
@@ -52,12 +66,23 @@ public interface KvRequestBuilder {
 
     SearchRequest getLastUpdatedStoragesRequest(long lastUpdated, int size, int scrollTimeout);
 
-    SearchScrollRequest getScrollRequest(String scrollId, int scrollTimeout);
+    /**
+     * Returns the scroll request for whole documents of not deleted storages, most recently updated first.
+     */
+    SearchRequest getRecentlyUpdatedStoragesRequest(int size, int scrollTimeout);
 
-    DeleteStorageRequest getDeleteRequest(KvStorage storage) throws JsonProcessingException;
+    SearchRequest getExistingStoragesRequest(int size, int scrollTimeout);
 
     UpdateRequest getMarkDeletedRequest(KvStorage storage);
 
+    BulkRequest getMarkDeletedBulkRequest(List<KvStorage> storages);
+
+    DeleteIndexRequest getDeleteIndicesRequest(List<KvStorage> storages);
+
+    Request getDeleteSharedStoragesDataRequest(List<KvStorage> storages) throws IOException;
+
+    BulkRequest getRegistryDeleteBulkRequest(List<KvStorage> storages);
+
     Request getExpireTempStorageRequest(long timestamp) throws IOException;
 
     Request getMarkDeletedAccountStorageRequest(List<String> accountUuids) throws IOException;
@@ -18,9 +18,9 @@
 package com.bwsw.cloudstack.storage.kv.service;
 
 import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
-import com.bwsw.cloudstack.storage.kv.entity.DeleteStorageRequest;
 import com.bwsw.cloudstack.storage.kv.entity.EntityConstants;
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.entity.KvStorageProjection;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.entity.ContentType;
@@ -28,11 +28,13 @@ import org.apache.http.entity.StringEntity;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.common.unit.TimeValue;
@@ -44,16 +46,20 @@ import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.script.Script;
-import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 
+import javax.inject.Inject;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class KvRequestBuilderImpl implements KvRequestBuilder {
 
@@ -61,19 +67,17 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
     public static final String STORAGE_TYPE = "_doc";
     public static final String STORAGE_INDEX_PREFIX = "storage-data-";
     public static final String HISTORY_INDEX_PREFIX = "storage-history-";
+    public static final String SHARED_STORAGE_INDEX_PREFIX = STORAGE_INDEX_PREFIX + "shared-";
+    public static final String SHARED_HISTORY_INDEX_PREFIX = HISTORY_INDEX_PREFIX + "shared-";
+    private static final String STORAGE_FIELD = "storage";
     private static final String ID_FIELD = "_id";
     private static final String ACCOUNT_FIELD = "account";
     private static final String TYPE_FIELD = "type";
-    private static final String MARK_DELETED_STORAGE_SCRIPT = "ctx._source." + EntityConstants.DELETED + " = true; ctx._source." + EntityConstants.LAST_UPDATED + " = ctx._now";
-    private static final String UPDATE_TTL_SCRIPT =
-            "ctx._source." + EntityConstants.TTL + " = params.ttl; ctx._source." + EntityConstants.EXPIRATION_TIMESTAMP + " = params.expiration_timestamp; ctx._source."
-                    + EntityConstants.LAST_UPDATED + " = ctx._now";
-    private static final String UPDATE_SECRET_KEY_SCRIPT =
-            "ctx._source." + EntityConstants.SECRET_KEY + " = params.secret_key; ctx._source." + EntityConstants.LAST_UPDATED + " = ctx._now";
 
     private static final ObjectMapper s_objectMapper = new ObjectMapper();
-    private static final String SCRIPT_LANG = "painless";
-    private static final String LAST_UPDATED_PIPELINE = "storage-registry-last-updated";
+
+    @Inject
+    private KvScriptManager _kvScriptManager;
 
     @Override
     public GetRequest getGetRequest(String storageId) {
@@ -81,9 +85,22 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         return request;
     }
 
+    @Override
+    public MultiGetRequest getMultiGetRequest(Collection<String> storageIds) {
+        MultiGetRequest request = new MultiGetRequest();
+        for (String storageId : storageIds) {
+            request.add(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storageId);
+        }
+        return request;
+    }
+
     @Override
     public CreateStorageRequest getCreateRequest(KvStorage storage) throws JsonProcessingException {
         IndexRequest registryRequest = getIndexRequest(storage, DocWriteRequest.OpType.CREATE);
+        if (storage.isShared()) {
+            // shared indices are created beforehand
+            return new CreateStorageRequest(registryRequest, null, null);
+        }
         CreateIndexRequest storageIndexRequest = new CreateIndexRequest(getStorageIndex(storage));
         CreateIndexRequest historyIndexRequest = null;
         if (storage.getHistoryEnabled() != null && storage.getHistoryEnabled()) {
@@ -92,13 +109,23 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         return new CreateStorageRequest(registryRequest, storageIndexRequest, historyIndexRequest);
     }
 
+    @Override
+    public List<CreateIndexRequest> getCreateSharedIndicesRequests(int count) {
+        List<CreateIndexRequest> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(new CreateIndexRequest(SHARED_STORAGE_INDEX_PREFIX + i));
+            requests.add(new CreateIndexRequest(SHARED_HISTORY_INDEX_PREFIX + i));
+        }
+        return requests;
+    }
+
     @Override
     public UpdateRequest getUpdateTTLRequest(KvStorage storage) {
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("ttl", storage.getTtl());
         parameters.put(EntityConstants.EXPIRATION_TIMESTAMP, storage.getExpirationTimestamp());
 
-        Script script = new Script(ScriptType.INLINE, SCRIPT_LANG, UPDATE_TTL_SCRIPT, parameters);
+        Script script = _kvScriptManager.getScript(KvScript.UPDATE_TTL, parameters);
 
         return new UpdateRequest(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storage.getId()).script(script);
     }
@@ -108,33 +135,30 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         Map<String, Object> parameters = new HashMap<>();
         parameters.put(EntityConstants.SECRET_KEY, storage.getSecretKey());
 
-        Script script = new Script(ScriptType.INLINE, "painless", UPDATE_SECRET_KEY_SCRIPT, parameters);
+        Script script = _kvScriptManager.getScript(KvScript.UPDATE_SECRET_KEY, parameters);
 
         return new UpdateRequest(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storage.getId()).script(script);
     }
 
     @Override
     public SearchRequest getSearchRequest(String accountUuid, int from, int size) {
-        SearchRequest searchRequest = new SearchRequest(STORAGE_REGISTRY_INDEX);
-
-        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
-        sourceBuilder.from(from);
-        sourceBuilder.size(size);
-
-        BoolQueryBuilder queryBuilder = QueryBuilders.boolQuery();
-        queryBuilder.filter(QueryBuilders.termQuery(ACCOUNT_FIELD, accountUuid));
-        queryBuilder.filter(QueryBuilders.termQuery(TYPE_FIELD, KvStorage.KvStorageType.ACCOUNT.toString()));
-        sourceBuilder.query(queryBuilder);
-
-        sourceBuilder.sort(new FieldSortBuilder(ID_FIELD).order(SortOrder.ASC));
+        SearchRequest searchRequest = getAccountStorageSearchRequest(accountUuid, size);
+        searchRequest.source().from(from);
+        return searchRequest;
+    }
 
-        searchRequest.source(sourceBuilder);
+    @Override
+    public SearchRequest getSearchRequest(String accountUuid, String lastStorageId, int size) {
+        SearchRequest searchRequest = getAccountStorageSearchRequest(accountUuid, size);
+        if (lastStorageId != null) {
+            searchRequest.source().searchAfter(new Object[] {lastStorageId});
+        }
         return searchRequest;
     }
 
     @Override
     public SearchRequest getDeletedStoragesRequest(int size, int scrollTimeout) {
-        return getSearchRequest(size, scrollTimeout, QueryBuilders.termQuery(EntityConstants.DELETED, true));
+        return getSearchRequest(size, scrollTimeout, QueryBuilders.termQuery(EntityConstants.DELETED, true), KvStorageProjection.CLEANUP);
     }
 
     @Override
@@ -143,7 +167,7 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         queryBuilder.filter(QueryBuilders.termQuery(TYPE_FIELD, KvStorage.KvStorageType.VM.toString()));
         queryBuilder.filter(QueryBuilders.termQuery(EntityConstants.DELETED, false));
 
-        return getSearchRequest(size, scrollTimeout, queryBuilder);
+        return getSearchRequest(size, scrollTimeout, queryBuilder, KvStorageProjection.OWNER);
     }
 
     @Override
@@ -152,7 +176,7 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         queryBuilder.filter(QueryBuilders.termQuery(TYPE_FIELD, KvStorage.KvStorageType.ACCOUNT.toString()));
         queryBuilder.filter(QueryBuilders.termQuery(EntityConstants.DELETED, false));
 
-        return getSearchRequest(size, scrollTimeout, queryBuilder);
+        return getSearchRequest(size, scrollTimeout, queryBuilder, KvStorageProjection.OWNER);
     }
 
     @Override
@@ -162,38 +186,87 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         queryBuilder.filter(QueryBuilders.termQuery(ACCOUNT_FIELD, accountUuid));
         queryBuilder.filter(QueryBuilders.termQuery(EntityConstants.DELETED, false));
 
-        return getSearchRequest(size, scrollTimeout, queryBuilder);
+        return getSearchRequest(size, scrollTimeout, queryBuilder, KvStorageProjection.OWNER);
     }
 
     @Override
     public SearchRequest getLastUpdatedStoragesRequest(long lastUpdated, int size, int scrollTimeout) {
-        SearchRequest request = getSearchRequest(size, scrollTimeout, QueryBuilders.rangeQuery(EntityConstants.LAST_UPDATED).gte(lastUpdated));
-        request.source().fetchSource(new String[] {ID_FIELD}, null);
+        return getSearchRequest(size, scrollTimeout, QueryBuilders.rangeQuery(EntityConstants.LAST_UPDATED).gte(lastUpdated), KvStorageProjection.ID);
+    }
+
+    @Override
+    public SearchRequest getRecentlyUpdatedStoragesRequest(int size, int scrollTimeout) {
+        SearchRequest searchRequest = getSearchRequest(size, scrollTimeout, QueryBuilders.termQuery(EntityConstants.DELETED, false), null);
+        searchRequest.source().sort(new FieldSortBuilder(EntityConstants.LAST_UPDATED).order(SortOrder.DESC));
+        return searchRequest;
+    }
+
+    @Override
+    public SearchRequest getExistingStoragesRequest(int size, int scrollTimeout) {
+        return getSearchRequest(size, scrollTimeout, QueryBuilders.termQuery(EntityConstants.DELETED, false), KvStorageProjection.ID);
+    }
+
+    @Override
+    public UpdateRequest getMarkDeletedRequest(KvStorage storage) {
+        return new UpdateRequest(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storage.getId()).script(getMarkDeletedScript());
+    }
+
+    @Override
+    public BulkRequest getMarkDeletedBulkRequest(List<KvStorage> storages) {
+        BulkRequest request = new BulkRequest();
+        storages.forEach(storage -> request.add(getMarkDeletedRequest(storage)));
         return request;
     }
 
     @Override
-    public SearchScrollRequest getScrollRequest(String scrollId, int scrollTimeout) {
-        SearchScrollRequest request = new SearchScrollRequest(scrollId);
-        request.scroll(TimeValue.timeValueMillis(scrollTimeout));
+    public DeleteIndexRequest getDeleteIndicesRequest(List<KvStorage> storages) {
+        List<String> indices = new ArrayList<>();
+        for (KvStorage storage : storages) {
+            checkDedicated(storage);
+            indices.add(getStorageIndex(storage));
+            if (storage.getHistoryEnabled() != null && storage.getHistoryEnabled()) {
+                indices.add(getHistoryIndex(storage));
+            }
+        }
+        DeleteIndexRequest request = new DeleteIndexRequest(indices.toArray(new String[0]));
+        // indices deleted by previous attempts are ignored
+        request.indicesOptions(IndicesOptions.lenientExpandOpen());
         return request;
     }
 
     @Override
-    public DeleteStorageRequest getDeleteRequest(KvStorage storage) {
-        UpdateRequest registryUpdateRequest = getMarkDeletedRequest(storage);
-        DeleteRequest registryDeleteRequest = new DeleteRequest(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storage.getId());
-        DeleteIndexRequest storageIndexRequest = new DeleteIndexRequest(getStorageIndex(storage));
-        DeleteIndexRequest historyIndexRequest = null;
-        if (storage.getHistoryEnabled() != null && storage.getHistoryEnabled()) {
-            historyIndexRequest = new DeleteIndexRequest(getHistoryIndex(storage));
+    public Request getDeleteSharedStoragesDataRequest(List<KvStorage> storages) throws IOException {
+        Set<String> indices = new TreeSet<>();
+        List<String> storageIds = new ArrayList<>();
+        for (KvStorage storage : storages) {
+            indices.add(getStorageIndex(storage));
+            if (storage.getHistoryEnabled() != null && storage.getHistoryEnabled()) {
+                indices.add(getHistoryIndex(storage));
+            }
+            storageIds.add(storage.getId());
         }
-        return new DeleteStorageRequest(registryUpdateRequest, registryDeleteRequest, storageIndexRequest, historyIndexRequest);
+
+        Map<String, String> params = new HashMap<>();
+        params.put("conflicts", "proceed");
+        params.put("routing", String.join(",", storageIds));
+        // history indices may be absent
+        params.put("ignore_unavailable", "true");
+
+        XContentBuilder contentBuilder = XContentFactory.jsonBuilder();
+        contentBuilder.startObject();
+        contentBuilder.field("query");
+        QueryBuilders.termsQuery(STORAGE_FIELD, storageIds).toXContent(contentBuilder, ToXContent.EMPTY_PARAMS);
+        contentBuilder.endObject();
+        StringEntity entity = new StringEntity(contentBuilder.string(), ContentType.APPLICATION_JSON);
+
+        return new Request("POST", String.join(",", indices) + "/_delete_by_query", params, entity);
     }
 
     @Override
-    public UpdateRequest getMarkDeletedRequest(KvStorage storage) {
-        return new UpdateRequest(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storage.getId()).script(getMarkDeletedScript());
+    public BulkRequest getRegistryDeleteBulkRequest(List<KvStorage> storages) {
+        BulkRequest request = new BulkRequest();
+        storages.forEach(storage -> request.add(new DeleteRequest(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storage.getId())));
+        return request;
     }
 
     @Override
@@ -224,13 +297,25 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
     }
 
     private String getStorageIndex(KvStorage storage) {
+        if (storage.isShared()) {
+            return SHARED_STORAGE_INDEX_PREFIX + storage.getSharedIndex();
+        }
         return STORAGE_INDEX_PREFIX + storage.getId();
     }
 
     private String getHistoryIndex(KvStorage storage) {
+        if (storage.isShared()) {
+            return SHARED_HISTORY_INDEX_PREFIX + storage.getSharedIndex();
+        }
         return HISTORY_INDEX_PREFIX + storage.getId();
     }
 
+    private void checkDedicated(KvStorage storage) {
+        if (storage.isShared()) {
+            throw new IllegalArgumentException("Shared indices of the storage " + storage.getId() + " can not be deleted");
+        }
+    }
+
     private IndexRequest getIndexRequest(KvStorage storage, DocWriteRequest.OpType opType) throws JsonProcessingException {
         IndexRequest request = new IndexRequest(STORAGE_REGISTRY_INDEX, STORAGE_TYPE, storage.getId());
         request.source(s_objectMapper.writeValueAsString(storage), XContentType.JSON);
@@ -238,13 +323,42 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         return request;
     }
 
-    private SearchRequest getSearchRequest(int size, int scrollTimeout, QueryBuilder queryBuilder) {
+    private SearchRequest getAccountStorageSearchRequest(String accountUuid, int size) {
+        SearchRequest searchRequest = new SearchRequest(STORAGE_REGISTRY_INDEX);
+
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+        sourceBuilder.size(size);
+
+        BoolQueryBuilder queryBuilder = QueryBuilders.boolQuery();
+        queryBuilder.filter(QueryBuilders.termQuery(ACCOUNT_FIELD, accountUuid));
+        queryBuilder.filter(QueryBuilders.termQuery(TYPE_FIELD, KvStorage.KvStorageType.ACCOUNT.toString()));
+        sourceBuilder.query(queryBuilder);
+
+        // storage ids are unique so that the sort order is total and suitable for search_after. _id has no doc values and
+        // is sorted via fielddata, which is accepted for the registry: it holds a single small document per storage, and
+        // its documents have no other field with the storage id as the registry mapping is provided by cs-kv-storage
+        sourceBuilder.sort(new FieldSortBuilder(ID_FIELD).order(SortOrder.ASC));
+
+        searchRequest.source(sourceBuilder);
+        return searchRequest;
+    }
+
+    private SearchRequest getSearchRequest(int size, int scrollTimeout, QueryBuilder queryBuilder, KvStorageProjection projection) {
         SearchRequest searchRequest = new SearchRequest(STORAGE_REGISTRY_INDEX);
         searchRequest.scroll(TimeValue.timeValueMillis(scrollTimeout));
 
         SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
         sourceBuilder.size(size);
         sourceBuilder.query(queryBuilder);
+        // whole documents are fetched without the projection
+        if (projection != null) {
+            String[] fields = projection.getFields();
+            if (fields.length == 0) {
+                sourceBuilder.fetchSource(false);
+            } else {
+                sourceBuilder.fetchSource(fields, null);
+            }
+        }
 
         searchRequest.source(sourceBuilder);
         return searchRequest;
@@ -266,10 +380,10 @@ public class KvRequestBuilderImpl implements KvRequestBuilder {
         contentBuilder.endObject();
         StringEntity entity = new StringEntity(contentBuilder.string(), ContentType.APPLICATION_JSON);
 
-        return new Request("POST", STORAGE_REGISTRY_INDEX + "/_update_by_query?pipeline=" + LAST_UPDATED_PIPELINE, params, entity);
+        return new Request("POST", STORAGE_REGISTRY_INDEX + "/_update_by_query?pipeline=" + KvScriptManager.LAST_UPDATED_PIPELINE, params, entity);
     }
 
     private Script getMarkDeletedScript() {
-        return new Script(ScriptType.INLINE, "painless", MARK_DELETED_STORAGE_SCRIPT, Collections.emptyMap());
+        return _kvScriptManager.getScript(KvScript.MARK_DELETED_STORAGE, Collections.emptyMap());
     }
 }
@@ -0,0 +1,56 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.entity.EntityConstants;
+
+/**
+ * Painless scripts executed against the storage registry and the job lock index.
+ * <p>
+ * The id contains the script version and should be changed whenever the source is changed so that
+ * management servers of different versions do not override stored scripts of each other.
+ */
+public enum KvScript {
+
+    MARK_DELETED_STORAGE("storage-registry-mark-deleted-v1",
+            "ctx._source." + EntityConstants.DELETED + " = true; ctx._source." + EntityConstants.LAST_UPDATED + " = ctx._now"),
+    UPDATE_TTL("storage-registry-update-ttl-v1",
+            "ctx._source." + EntityConstants.TTL + " = params.ttl; ctx._source." + EntityConstants.EXPIRATION_TIMESTAMP + " = params.expiration_timestamp; ctx._source."
+                    + EntityConstants.LAST_UPDATED + " = ctx._now"),
+    UPDATE_SECRET_KEY("storage-registry-update-secret-key-v1",
+            "ctx._source." + EntityConstants.SECRET_KEY + " = params.secret_key; ctx._source." + EntityConstants.LAST_UPDATED + " = ctx._now"),
+    ACQUIRE_LOCK("storage-registry-lock-acquire-v1", "if (ctx._source.locked == false || params.timestamp - ctx._source.timestamp > params.interval ) "
+            + "{ ctx._source.locked = true; ctx._source.timestamp = params.timestamp } else { ctx.op='noop'}"),
+    RELEASE_LOCK("storage-registry-lock-release-v1", "ctx._source.locked = false; ctx._source.timestamp = params.timestamp");
+
+    private final String _id;
+    private final String _source;
+
+    KvScript(String id, String source) {
+        _id = id;
+        _source = source;
+    }
+
+    public String getId() {
+        return _id;
+    }
+
+    public String getSource() {
+        return _source;
+    }
+}
@@ -0,0 +1,125 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.client.KvStorageClientManager;
+import com.bwsw.cloudstack.storage.kv.entity.EntityConstants;
+import com.cloud.utils.component.ComponentLifecycleBase;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.log4j.Logger;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Installs {@link KvScript} scripts as stored scripts and the pipeline updating the registry last updated timestamp.
+ * <p>
+ * Scripts are executed inline if the installation fails. The pipeline is installed only if it does not exist so that
+ * the pipeline managed outside the plugin is not overridden.
+ */
+public class KvScriptManagerImpl extends ComponentLifecycleBase implements KvScriptManager {
+
+    private static final Logger s_logger = Logger.getLogger(KvScriptManagerImpl.class);
+
+    private static final String SCRIPT_LANG = "painless";
+    private static final String SCRIPTS_ENDPOINT = "_scripts/";
+    private static final String PIPELINE_ENDPOINT = "_ingest/pipeline/" + LAST_UPDATED_PIPELINE;
+    private static final int PIPELINE_VERSION = 1;
+    private static final String LAST_UPDATED_PIPELINE_SCRIPT = "ctx." + EntityConstants.LAST_UPDATED + " = new Date().getTime()";
+
+    @Inject
+    private KvStorageClientManager _kvStorageClientManager;
+
+    private volatile boolean _storedScripts;
+
+    @Override
+    public boolean configure(String name, Map<String, Object> params) {
+        RestHighLevelClient client = _kvStorageClientManager.getEsClient();
+        if (client == null) {
+            s_logger.warn("Elasticsearch client is not available, inline scripts are used");
+            return true;
+        }
+        installPipeline(client.getLowLevelClient());
+        _storedScripts = installScripts(client.getLowLevelClient());
+        return true;
+    }
+
+    @Override
+    public Script getScript(KvScript script, Map<String, Object> params) {
+        if (_storedScripts) {
+            return new Script(ScriptType.STORED, null, script.getId(), params);
+        }
+        return new Script(ScriptType.INLINE, SCRIPT_LANG, script.getSource(), params);
+    }
+
+    private boolean installScripts(RestClient client) {
+        for (KvScript script : KvScript.values()) {
+            try {
+                XContentBuilder contentBuilder = XContentFactory.jsonBuilder();
+                contentBuilder.startObject();
+                contentBuilder.startObject("script");
+                contentBuilder.field("lang", SCRIPT_LANG);
+                contentBuilder.field("source", script.getSource());
+                contentBuilder.endObject();
+                contentBuilder.endObject();
+                client.performRequest("PUT", SCRIPTS_ENDPOINT + script.getId(), Collections.emptyMap(),
+                        new StringEntity(contentBuilder.string(), ContentType.APPLICATION_JSON));
+            } catch (Exception e) {
+                s_logger.error("Unable to install the stored script " + script.getId() + ", inline scripts are used", e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void installPipeline(RestClient client) {
+        try {
+            Response response = client.performRequest("GET", PIPELINE_ENDPOINT, Collections.singletonMap("ignore", "404"));
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+                return;
+            }
+            XContentBuilder contentBuilder = XContentFactory.jsonBuilder();
+            contentBuilder.startObject();
+            contentBuilder.field("description", "Updates the storage last updated timestamp");
+            contentBuilder.field("version", PIPELINE_VERSION);
+            contentBuilder.startArray("processors");
+            contentBuilder.startObject();
+            contentBuilder.startObject("script");
+            contentBuilder.field("lang", SCRIPT_LANG);
+            contentBuilder.field("source", LAST_UPDATED_PIPELINE_SCRIPT);
+            contentBuilder.endObject();
+            contentBuilder.endObject();
+            contentBuilder.endArray();
+            contentBuilder.endObject();
+            client.performRequest("PUT", PIPELINE_ENDPOINT, Collections.emptyMap(), new StringEntity(contentBuilder.string(), ContentType.APPLICATION_JSON));
+            s_logger.info("The pipeline " + LAST_UPDATED_PIPELINE + " is installed");
+        } catch (Exception e) {
+            s_logger.error("Unable to install the pipeline " + LAST_UPDATED_PIPELINE, e);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
 import com.bwsw.cloudstack.storage.kv.response.KvPair;
 import com.bwsw.cloudstack.storage.kv.response.KvResult;
 import com.bwsw.cloudstack.storage.kv.response.KvStorageResponse;
+import com.bwsw.cloudstack.storage.kv.response.KvStorages;
 import com.cloud.utils.component.PluggableService;
 import org.apache.cloudstack.api.response.ListResponse;
 import org.apache.cloudstack.framework.config.ConfigKey;
@@ -35,6 +36,8 @@ import java.util.Map;
 
 public interface KvStorageManager extends PluggableService {
 
+    String FIRST_PAGE_CURSOR = "*";
+
     ConfigKey<String> KvStorageElasticsearchList = new ConfigKey<>("Advanced", String.class, "storage.kv.elasticsearch.list", null,
             "Comma separated list of Elasticsearch HTTP hosts; e.g. http://localhost,http://localhost:9201", false);
 
@@ -49,15 +52,107 @@ public interface KvStorageManager extends PluggableService {
 
     ConfigKey<Integer> KvStorageCacheMaxSize = new ConfigKey<>("Advanced", Integer.class, "storage.kv.cache.size.max", "10000", "Maximum size of storage cache", false);
 
-    ConfigKey<String> KvStorageUrl = new ConfigKey<>("Advanced", String.class, "storage.kv.url", null, "KV storage URL", false);
+    ConfigKey<String> KvStorageUrl = new ConfigKey<>("Advanced", String.class, "storage.kv.url", null, "Comma separated list of KV storage URLs", false);
 
     ConfigKey<String> KvStoragePublicUrl = new ConfigKey<>("Advanced", String.class, "storage.kv.url.public", null, "public KV storage URL", false);
 
+    ConfigKey<Integer> KvStorageMaxConnections = new ConfigKey<>("Advanced", Integer.class, "storage.kv.connections.max", "200",
+            "Maximum number of HTTP connections to KV storage", false);
+
+    ConfigKey<Integer> KvStorageMaxConnectionsPerRoute = new ConfigKey<>("Advanced", Integer.class, "storage.kv.connections.route.max", "100",
+            "Maximum number of HTTP connections to KV storage per route", false);
+
+    ConfigKey<Integer> KvStorageConnectionIdleTimeout = new ConfigKey<>("Advanced", Integer.class, "storage.kv.connections.idle.timeout", "60000",
+            "Time in ms after which idle HTTP connections to KV storage are evicted", false);
+
+    ConfigKey<Integer> KvStorageConnectionValidationInterval = new ConfigKey<>("Advanced", Integer.class, "storage.kv.connections.validation.interval", "2000",
+            "Time of inactivity in ms after which HTTP connections to KV storage are validated before reuse", false);
+
+    ConfigKey<Integer> KvStorageKeysPageSizeMax = new ConfigKey<>("Advanced", Integer.class, "storage.kv.keys.page.size.max", "1000",
+            "Maximum number of keys returned in the page by paginated key listing; used as the default page size", false);
+
+    ConfigKey<Integer> KvStorageValueCacheMaxSize = new ConfigKey<>("Advanced", Integer.class, "storage.kv.value.cache.size.max", "10000",
+            "Maximum size of storage value cache", false);
+
+    ConfigKey<Integer> KvStorageValueCacheAccountTtl = new ConfigKey<>("Advanced", Integer.class, "storage.kv.value.cache.account.ttl", "0",
+            "Time in ms to cache values of account storages; 0 disables caching", false);
+
+    ConfigKey<Integer> KvStorageValueCacheTempTtl = new ConfigKey<>("Advanced", Integer.class, "storage.kv.value.cache.temp.ttl", "0",
+            "Time in ms to cache values of temp storages; 0 disables caching", false);
+
+    ConfigKey<Integer> KvStorageValueCacheVmTtl = new ConfigKey<>("Advanced", Integer.class, "storage.kv.value.cache.vm.ttl", "0",
+            "Time in ms to cache values of VM storages; 0 disables caching", false);
+
+    ConfigKey<Integer> KvStorageValueCacheStatsPeriod = new ConfigKey<>("Advanced", Integer.class, "storage.kv.value.cache.stats.period", "0",
+            "Period in ms of logging hits and misses of storage value cache; 0 disables logging", false);
+
+    ConfigKey<Integer> KvStorageSetBatchWindow = new ConfigKey<>("Advanced", Integer.class, "storage.kv.set.batch.window", "0",
+            "Time in ms to accumulate single key set operations on the storage to execute them as a single request; 0 disables batching", false);
+
+    ConfigKey<Integer> KvStorageSetBatchMaxSize = new ConfigKey<>("Advanced", Integer.class, "storage.kv.set.batch.size.max", "100",
+            "Maximum number of keys in the batch of single key set operations", false);
+
+    ConfigKey<Boolean> KvStorageCompressionEnabled = new ConfigKey<>("Advanced", Boolean.class, "storage.kv.compression.enabled", "false",
+            "true if request bodies to KV storage should be compressed with gzip and gzip responses should be requested, false otherwise", false);
+
+    ConfigKey<Integer> KvStorageCompressionThreshold = new ConfigKey<>("Advanced", Integer.class, "storage.kv.compression.threshold", "1024",
+            "Minimum size in bytes of request bodies to KV storage to be compressed", false);
+
+    ConfigKey<String> KvStorageBalancingStrategy = new ConfigKey<>("Advanced", String.class, "storage.kv.balancing.strategy", "round_robin",
+            "Strategy to balance operations between KV storage URLs: round_robin, least_outstanding or consistent_hash (by storage)", false);
+
+    ConfigKey<Integer> KvStorageEndpointFailuresMax = new ConfigKey<>("Advanced", Integer.class, "storage.kv.endpoint.failures.max", "3",
+            "Number of consecutive failures after which a KV storage URL is ejected from balancing", false);
+
+    ConfigKey<Integer> KvStorageEndpointEjectionTime = new ConfigKey<>("Advanced", Integer.class, "storage.kv.endpoint.ejection.time", "30000",
+            "Time in ms after which an ejected KV storage URL is probed", false);
+
+    ConfigKey<Integer> KvStorageCleanupParallelism = new ConfigKey<>("Advanced", Integer.class, "storage.kv.cleanup.parallelism", "4",
+            "Maximum number of batches of deleted storages cleaned up concurrently", false);
+
+    ConfigKey<Integer> KvStorageScrollSlices = new ConfigKey<>("Advanced", Integer.class, "storage.kv.scroll.slices", "2",
+            "Number of slices scrolled in parallel by passes over the whole storage registry", false);
+
+    ConfigKey<Integer> KvStorageCacheUpdatePeriod = new ConfigKey<>("Advanced", Integer.class, "storage.kv.cache.update.period", "60000",
+            "Period in milliseconds of storage cache update scans for storages changed in the registry; "
+                    + "other management servers may serve changed storages for this time", false);
+
+    ConfigKey<String> KvStorageLayout = new ConfigKey<>("Advanced", String.class, "storage.kv.layout", "dedicated",
+            "Index layout of new storages: dedicated (data and history indices per storage) or shared (data and history indices shared by storages)", false);
+
+    ConfigKey<Integer> KvStorageSharedIndices = new ConfigKey<>("Advanced", Integer.class, "storage.kv.layout.shared.indices", "16",
+            "Number of data and history indices shared by storages with the shared layout", false);
+
+    ConfigKey<Integer> KvStorageAccessCacheTtl = new ConfigKey<>("Advanced", Integer.class, "storage.kv.access.cache.ttl", "10000",
+            "Time in ms to cache results of storage access checks for the calling account; 0 disables caching", false);
+
+    ConfigKey<Integer> KvStorageAccessCacheMaxSize = new ConfigKey<>("Advanced", Integer.class, "storage.kv.access.cache.size.max", "10000",
+            "Maximum number of storages with cached access checks", false);
+
+    ConfigKey<Integer> KvStorageCacheWarmUpRate = new ConfigKey<>("Advanced", Integer.class, "storage.kv.cache.warmup.rate", "0",
+            "Maximum number of storages per second loaded into storage cache from the registry at startup; 0 disables warm-up", false);
+
+    ConfigKey<Integer> KvStorageCacheAbsentTtl = new ConfigKey<>("Advanced", Integer.class, "storage.kv.cache.absent.ttl", "10000",
+            "Time in ms to cache ids of nonexistent and deleted storages; 0 disables caching", false);
+
+    ConfigKey<Integer> KvStorageCacheAbsentMaxSize = new ConfigKey<>("Advanced", Integer.class, "storage.kv.cache.absent.size.max", "1000",
+            "Maximum size of the cache of nonexistent and deleted storage ids", false);
+
+    ConfigKey<Integer> KvStorageCacheFilterPeriod = new ConfigKey<>("Advanced", Integer.class, "storage.kv.cache.filter.period", "0",
+            "Period in ms of rebuilding the filter of existing storage ids to reject unknown storage ids without registry lookups; 0 disables the filter", false);
+
     // account storages
     KvStorage createAccountStorage(Long accountId, String name, String description, Boolean historyEnabled);
 
     ListResponse<KvStorageResponse> listAccountStorages(Long accountId, Long startIndex, Long pageSize);
 
+    /**
+     * Lists account storages page by page with a continuation cursor.
+     *
+     * @param cursor the cursor returned with the previous page or {@link #FIRST_PAGE_CURSOR} for the first page
+     */
+    KvStorages listAccountStorages(Long accountId, String cursor, Long pageSize);
+
     boolean deleteAccountStorage(Long accountId, String storageId);
 
     void deleteAccountStorages(String accountUuid);
@@ -112,6 +207,8 @@ public interface KvStorageManager extends PluggableService {
 
     KvKeys listKeys(String storageId);
 
+    KvKeys listKeys(String storageId, String prefix, String cursor, Integer size);
+
     KvOperationResponse clear(String storageId);
 
     // storage history operations
@@ -36,10 +36,12 @@ import com.bwsw.cloudstack.storage.kv.api.SetKvStorageValueCmd;
 import com.bwsw.cloudstack.storage.kv.api.SetKvStorageValuesCmd;
 import com.bwsw.cloudstack.storage.kv.api.UpdateTempKvStorageCmd;
 import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCacheInvalidator;
+import com.bwsw.cloudstack.storage.kv.cache.KvValueCache;
 import com.bwsw.cloudstack.storage.kv.client.KvStorageClientManager;
+import com.bwsw.cloudstack.storage.kv.entity.ByQueryResponse;
 import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
-import com.bwsw.cloudstack.storage.kv.entity.ScrollableListResponse;
 import com.bwsw.cloudstack.storage.kv.exception.ExceptionFactory;
 import com.bwsw.cloudstack.storage.kv.exception.InvalidEntityException;
 import com.bwsw.cloudstack.storage.kv.exception.InvalidParameterValueCode;
@@ -50,6 +52,7 @@ import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
 import com.bwsw.cloudstack.storage.kv.response.KvPair;
 import com.bwsw.cloudstack.storage.kv.response.KvResult;
 import com.bwsw.cloudstack.storage.kv.response.KvStorageResponse;
+import com.bwsw.cloudstack.storage.kv.response.KvStorages;
 import com.bwsw.cloudstack.storage.kv.security.AccessChecker;
 import com.bwsw.cloudstack.storage.kv.security.KeyGenerator;
 import com.bwsw.cloudstack.storage.kv.util.TimeManager;
@@ -63,6 +66,8 @@ import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.dao.VMInstanceDao;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.cloudstack.api.ApiErrorCode;
 import org.apache.cloudstack.api.Identity;
@@ -71,26 +76,31 @@ import org.apache.cloudstack.api.response.ListResponse;
 import org.apache.cloudstack.framework.config.ConfigKey;
 import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.commons.lang.time.DateUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Request;
-import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.Strings;
-import org.elasticsearch.rest.RestStatus;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -103,6 +113,7 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
 
     private static final int DELETE_BATCH_SIZE = 100;
     private static final int DELETE_BATCH_TIMEOUT = 300000; // 5 minutes
+    private static final int CLEANUP_BATCH_SIZE = 20; // limits the length of multiple index delete request URLs
     private static final String UUID_IN_CONDITION = "uuid_in";
     private static final String REMOVED_GTE_CONDITION = "removed_gte";
 
@@ -140,6 +151,12 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
     @Inject
     private KvStorageCache _kvStorageCache;
 
+    @Inject
+    private KvValueCache _kvValueCache;
+
+    @Inject
+    private KvStorageCacheInvalidator _kvStorageCacheInvalidator;
+
     @Inject
     private KvStorageClientManager _kvStorageClientManager;
 
@@ -148,6 +165,12 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
 
     private KvOperationManager _kvOperationManager;
 
+    private KvWriteBatcher _kvWriteBatcher;
+
+    private final KvReadCoalescer _readCoalescer = new KvReadCoalescer();
+
+    private volatile boolean _sharedIndicesCreated;
+
     private SearchBuilder<VMInstanceVO> _vmInstanceVOByUuidSearchBuilder;
 
     private SearchBuilder<VMInstanceVO> _vmInstanceVOByRemovedSearchBuilder;
@@ -198,6 +221,31 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
         }
     }
 
+    @Override
+    public KvStorages listAccountStorages(Long accountId, String cursor, Long pageSize) {
+        if (pageSize == null || pageSize < 1) {
+            throw new InvalidParameterValueException("Invalid page size");
+        }
+        String lastStorageId = FIRST_PAGE_CURSOR.equals(cursor) ? null : decodeCursor(cursor);
+        AccountVO accountVO = _accountDao.findById(accountId);
+        if (accountVO == null) {
+            throw new InvalidParameterValueException("Unable to find an account with the specified id");
+        }
+        SearchRequest searchRequest = _kvRequestBuilder.getSearchRequest(accountVO.getUuid(), lastStorageId, pageSize.intValue());
+        try {
+            ListResponse<KvStorageResponse> response = _kvExecutor.search(_kvStorageClientManager.getEsClient(), searchRequest, KvStorageResponse.class);
+            List<KvStorageResponse> storages = response != null && response.getResponses() != null ? response.getResponses() : Collections.emptyList();
+            String url = KvStoragePublicUrl.value();
+            storages.forEach(storage -> storage.setUrl(url));
+            // a short page is the last one
+            String nextCursor = storages.size() < pageSize ? null : encodeCursor(storages.get(storages.size() - 1).getId());
+            return new KvStorages(storages, nextCursor);
+        } catch (IOException e) {
+            s_logger.error("Unable to retrieve storage", e);
+            throw new ServerApiException(ApiErrorCode.INTERNAL_ERROR, "Failed to retrieve storages", e);
+        }
+    }
+
     @Override
     public boolean deleteAccountStorage(Long accountId, String storageId) {
         AccountVO accountVO = _accountDao.findById(accountId);
@@ -222,16 +270,13 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
         }
         SearchRequest searchRequest = _kvRequestBuilder.getAccountStoragesRequest(accountVO.getUuid(), DELETE_BATCH_SIZE, DELETE_BATCH_TIMEOUT);
         try {
-            ScrollableListResponse<KvStorage> response = _kvExecutor.scroll(_kvStorageClientManager.getEsClient(), searchRequest, KvStorage.class);
-            while (response != null && response.getResults() != null && !response.getResults().isEmpty()) {
-                for (KvStorage storage : response.getResults()) {
-                    storage.setDeleted(true);
+            // storages of a single account are not numerous enough to be scrolled in slices
+            _kvExecutor.scroll(_kvStorageClientManager.getEsClient(), searchRequest, 1, KvStorage.class, storages -> {
+                for (KvStorage storage : storages) {
                     s_logger.info("Deleting the KV storage " + storage.getId() + " for the account " + storage.getAccount());
-                    _kvExecutor.update(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getMarkDeletedRequest(storage));
                 }
-                response = _kvExecutor
-                        .scroll(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getScrollRequest(response.getScrollId(), DELETE_BATCH_TIMEOUT), KvStorage.class);
-            }
+                markDeleted(storages);
+            });
         } catch (Exception e) {
             s_logger.error("Failed to delete storages for an account " + accountVO.getUuid(), e);
         }
@@ -271,6 +316,7 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
             storage.setTtl(ttl);
             UpdateRequest updateRequest = _kvRequestBuilder.getUpdateTTLRequest(storage);
             _kvExecutor.update(_kvStorageClientManager.getEsClient(), updateRequest);
+            _kvStorageCacheInvalidator.invalidate(Collections.singleton(storageId));
             storage = getStorage(storageId);
             storage.setUrl(KvStoragePublicUrl.value());
             return storage;
@@ -293,12 +339,13 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
     public void expireTempStorages() {
         try {
             Request request = _kvRequestBuilder.getExpireTempStorageRequest(_timeManager.getCurrentTimestamp());
-            Response response = _kvStorageClientManager.getEsClient().getLowLevelClient()
-                    .performRequest(request.getMethod(), request.getEndpoint(), request.getParameters(), request.getEntity());
-            if (response.getStatusLine().getStatusCode() == RestStatus.OK.getStatus()) {
-                s_logger.info("Temp storages have been expired");
+            ByQueryResponse response = _kvExecutor.byQuery(_kvStorageClientManager.getEsClient(), request);
+            if (response.isComplete()) {
+                s_logger.info("Temp storages have been expired: " + response.getUpdated());
             } else {
-                s_logger.error("Unexpected status while expiring temp storages " + response.getStatusLine().getStatusCode());
+                // storages left are expired by the next run
+                s_logger.warn("Temp storages have been expired partially: " + response.getUpdated() + " of " + response.getTotal() + ", version conflicts "
+                        + response.getVersionConflicts() + ", failures " + response.getFailures());
             }
         } catch (Exception e) {
             s_logger.error("Unable to expire temp storages", e);
@@ -376,21 +423,25 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
 
     @Override
     public void cleanupStorages() {
+        int parallelism = Math.max(1, KvStorageCleanupParallelism.value());
+        // limits batches cleaned up concurrently, batch requests are executed asynchronously
+        Semaphore semaphore = new Semaphore(parallelism);
         SearchRequest searchRequest = _kvRequestBuilder.getDeletedStoragesRequest(DELETE_BATCH_SIZE, DELETE_BATCH_TIMEOUT);
         try {
-            ScrollableListResponse<KvStorage> response = _kvExecutor.scroll(_kvStorageClientManager.getEsClient(), searchRequest, KvStorage.class);
-            while (response != null && response.getResults() != null && !response.getResults().isEmpty()) {
-                for (KvStorage storage : response.getResults()) {
-                    s_logger.info("Clean up the storage " + storage.getId());
-                    _kvExecutor.delete(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getDeleteRequest(storage));
+            _kvExecutor.scroll(_kvStorageClientManager.getEsClient(), searchRequest, KvStorageScrollSlices.value(), KvStorage.class, results -> {
+                for (List<KvStorage> storages : Lists.partition(results, CLEANUP_BATCH_SIZE)) {
+                    semaphore.acquire();
+                    cleanupStorages(storages).whenComplete((result, throwable) -> semaphore.release());
                 }
-                response = _kvExecutor
-                        .scroll(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getScrollRequest(response.getScrollId(), DELETE_BATCH_TIMEOUT), KvStorage.class);
-            }
+            });
+            // wait for the remaining batches
+            semaphore.acquire(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            s_logger.error("Storage cleanup has been interrupted", e);
         } catch (Exception e) {
             s_logger.error("Unable to cleanup storages", e);
         }
-
     }
 
     @Override
@@ -400,6 +451,7 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
             storage.setSecretKey(_keyGenerator.generate());
             UpdateRequest request = _kvRequestBuilder.getUpdateSecretKey(storage);
             _kvExecutor.update(_kvStorageClientManager.getEsClient(), request);
+            _kvStorageCacheInvalidator.invalidate(Collections.singleton(storageId));
             storage = getStorage(storageId);
             storage.setUrl(KvStoragePublicUrl.value());
             return storage;
@@ -411,32 +463,58 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
 
     @Override
     public KvOperationResponse getValue(String storageId, String key) {
-        return execute(storageId, storage -> _kvOperationManager.get(storage, key));
+        return execute(storageId, storage -> {
+            KvOperationResponse response = _kvValueCache.get(storage, key);
+            if (response != null) {
+                return response;
+            }
+            long generation = _readCoalescer.getGeneration(storageId);
+            KvOperationResponse value = _readCoalescer.read(storageId, key, () -> _kvOperationManager.get(storage, key));
+            // the value might be stale if the storage has been modified while retrieving it, values cached before
+            // a write starts are invalidated by the write
+            _readCoalescer.runIfGeneration(storageId, generation, () -> _kvValueCache.put(storage, key, value));
+            return value;
+        });
     }
 
     @Override
     public KvOperationResponse getValues(String storageId, Collection<String> keys) {
-        return execute(storageId, storage -> _kvOperationManager.get(storage, keys));
+        Object readKey = keys == null ? null : new HashSet<>(keys);
+        return execute(storageId, storage -> _readCoalescer.read(storageId, readKey, () -> _kvOperationManager.get(storage, keys)));
     }
 
     @Override
     public KvPair setValue(String storageId, String key, String value) {
-        return execute(storageId, storage -> _kvOperationManager.set(storage, key, value));
+        return execute(storageId, storage -> write(storageId, () -> {
+            // batching is skipped for storages with history so that each operation is recorded as executed
+            if (_kvWriteBatcher != null && value != null && !Boolean.TRUE.equals(storage.getHistoryEnabled())) {
+                return _kvWriteBatcher.set(storage, key, value);
+            }
+            return _kvOperationManager.set(storage, key, value);
+        }, () -> _kvValueCache.invalidate(storageId, Collections.singleton(key))));
     }
 
     @Override
     public KvResult setValues(String storageId, Map<String, String> data) {
-        return execute(storageId, storage -> _kvOperationManager.set(storage, data));
+        return execute(storageId, storage -> write(storageId, () -> _kvOperationManager.set(storage, data), () -> {
+            if (data != null) {
+                _kvValueCache.invalidate(storageId, data.keySet());
+            }
+        }));
     }
 
     @Override
     public KvKey deleteKey(String storageId, String key) {
-        return execute(storageId, storage -> _kvOperationManager.delete(storage, key));
+        return execute(storageId, storage -> write(storageId, () -> _kvOperationManager.delete(storage, key), () -> _kvValueCache.invalidate(storageId, Collections.singleton(key))));
     }
 
     @Override
     public KvResult deleteKeys(String storageId, Collection<String> keys) {
-        return execute(storageId, storage -> _kvOperationManager.delete(storage, keys));
+        return execute(storageId, storage -> write(storageId, () -> _kvOperationManager.delete(storage, keys), () -> {
+            if (keys != null) {
+                _kvValueCache.invalidate(storageId, keys);
+            }
+        }));
     }
 
     @Override
@@ -444,9 +522,21 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
         return execute(storageId, storage -> _kvOperationManager.list(storage));
     }
 
+    @Override
+    public KvKeys listKeys(String storageId, String prefix, String cursor, Integer size) {
+        if (StringUtils.isEmpty(prefix) && StringUtils.isEmpty(cursor) && size == null) {
+            return listKeys(storageId);
+        }
+        int pageSize = size == null ? KvStorageKeysPageSizeMax.value() : size;
+        if (pageSize < 1 || pageSize > KvStorageKeysPageSizeMax.value()) {
+            throw new InvalidParameterValueException("Invalid page size");
+        }
+        return execute(storageId, storage -> _kvOperationManager.list(storage, StringUtils.defaultIfEmpty(prefix, null), StringUtils.defaultIfEmpty(cursor, null), pageSize));
+    }
+
     @Override
     public KvOperationResponse clear(String storageId) {
-        return execute(storageId, storage -> _kvOperationManager.clear(storage));
+        return execute(storageId, storage -> write(storageId, () -> _kvOperationManager.clear(storage), () -> _kvValueCache.invalidateAll(storageId)));
     }
 
     @Override
@@ -498,7 +588,13 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
     @Override
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey[] {KvStorageElasticsearchList, KvStorageElasticsearchUsername, KvStorageElasticsearchPassword, KvStorageVmHistoryEnabled, KvStorageCacheMaxSize,
-                KvStorageUrl, KvStoragePublicUrl};
+                KvStorageUrl, KvStoragePublicUrl, KvStorageMaxConnections, KvStorageMaxConnectionsPerRoute, KvStorageConnectionIdleTimeout,
+                KvStorageConnectionValidationInterval, KvStorageKeysPageSizeMax, KvStorageValueCacheMaxSize, KvStorageValueCacheAccountTtl, KvStorageValueCacheTempTtl,
+                KvStorageValueCacheVmTtl, KvStorageSetBatchWindow, KvStorageSetBatchMaxSize, KvStorageCompressionEnabled,
+                KvStorageCompressionThreshold, KvStorageBalancingStrategy, KvStorageEndpointFailuresMax, KvStorageEndpointEjectionTime,
+                KvStorageCleanupParallelism, KvStorageLayout, KvStorageSharedIndices, KvStorageScrollSlices, KvStorageCacheUpdatePeriod,
+                KvStorageAccessCacheTtl, KvStorageAccessCacheMaxSize, KvStorageCacheWarmUpRate,
+                KvStorageCacheAbsentTtl, KvStorageCacheAbsentMaxSize, KvStorageCacheFilterPeriod, KvStorageValueCacheStatsPeriod};
     }
 
     @Override
@@ -513,15 +609,42 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
         _vmInstanceVOByRemovedSearchBuilder.and(_vmInstanceVOByRemovedSearchBuilder.entity().getRemoved(), SearchCriteria.Op.NNULL);
         _vmInstanceVOByRemovedSearchBuilder.and(REMOVED_GTE_CONDITION, _vmInstanceVOByRemovedSearchBuilder.entity().getRemoved(), SearchCriteria.Op.GTEQ);
 
-        _kvOperationManager = new KvOperationManagerImpl(KvStorageUrl.value(), _exceptionFactory);
+        KvOperationManagerImpl kvOperationManager = new KvOperationManagerImpl(KvStorageUrl.value(), _exceptionFactory);
+        _kvOperationManager = kvOperationManager;
+        if (KvStorageSetBatchWindow.value() > 0) {
+            _kvWriteBatcher = new KvWriteBatcher(kvOperationManager, KvStorageSetBatchWindow.value(), KvStorageSetBatchMaxSize.value());
+        }
 
         return true;
     }
 
+    @Override
+    public boolean stop() {
+        if (_kvOperationManager != null) {
+            try {
+                _kvOperationManager.close();
+            } catch (IOException e) {
+                s_logger.warn("Unable to close KV storage HTTP clients", e);
+            }
+        }
+        return true;
+    }
+
     private KvStorage createStorage(KvStorage storage) {
         try {
+            if (getLayout() == KvStorage.KvStorageLayout.SHARED) {
+                int sharedIndices = Math.max(1, KvStorageSharedIndices.value());
+                if (!_sharedIndicesCreated) {
+                    _kvExecutor.createIndices(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getCreateSharedIndicesRequests(sharedIndices));
+                    _sharedIndicesCreated = true;
+                }
+                storage.setLayout(KvStorage.KvStorageLayout.SHARED);
+                storage.setSharedIndex(Math.floorMod(storage.getId().hashCode(), sharedIndices));
+            }
             CreateStorageRequest request = _kvRequestBuilder.getCreateRequest(storage);
             _kvExecutor.create(_kvStorageClientManager.getEsClient(), request);
+            // management servers may have cached the storage as absent
+            _kvStorageCacheInvalidator.invalidate(Collections.singleton(storage.getId()));
             storage.setUrl(KvStoragePublicUrl.value());
         } catch (IOException e) {
             s_logger.error("Unable to create a storage", e);
@@ -530,6 +653,30 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
         return storage;
     }
 
+    private static String encodeCursor(String storageId) {
+        return BaseEncoding.base64Url().omitPadding().encode(storageId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            throw _exceptionFactory.getException(InvalidParameterValueCode.INVALID_CURSOR);
+        }
+        try {
+            return new String(BaseEncoding.base64Url().omitPadding().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw _exceptionFactory.getException(InvalidParameterValueCode.INVALID_CURSOR);
+        }
+    }
+
+    private static KvStorage.KvStorageLayout getLayout() {
+        try {
+            return KvStorage.KvStorageLayout.valueOf(KvStorageLayout.value().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            s_logger.warn("Unknown KV storage layout " + KvStorageLayout.value() + ", dedicated layout is used");
+            return KvStorage.KvStorageLayout.DEDICATED;
+        }
+    }
+
     private void checkTtl(Integer ttl) {
         if (ttl == null) {
             throw new InvalidParameterValueException("Unspecified TTL");
@@ -552,6 +699,7 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
             validator.accept(storage);
             storage.setDeleted(true);
             _kvExecutor.update(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getMarkDeletedRequest(storage));
+            _kvStorageCacheInvalidator.invalidate(Collections.singleton(storageId));
             return true;
         } catch (IOException e) {
             s_logger.error("Unable to delete the KV storage " + storageId, e);
@@ -563,10 +711,9 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
             Function<KvStorage, String> entityUuidRetriever, Predicate<T> removedChecker) {
         SearchRequest searchRequest = requestBuilder.get();
         try {
-            ScrollableListResponse<KvStorage> response = _kvExecutor.scroll(_kvStorageClientManager.getEsClient(), searchRequest, KvStorage.class);
-            while (response != null && response.getResults() != null && !response.getResults().isEmpty()) {
+            _kvExecutor.scroll(_kvStorageClientManager.getEsClient(), searchRequest, KvStorageScrollSlices.value(), KvStorage.class, results -> {
                 SearchCriteria<T> searchCriteria = searchBuilder.create();
-                searchCriteria.setParameters(UUID_IN_CONDITION, response.getResults().stream().map(entityUuidRetriever).toArray());
+                searchCriteria.setParameters(UUID_IN_CONDITION, results.stream().map(entityUuidRetriever).toArray());
                 List<T> entityList = dao.searchIncludingRemoved(searchCriteria, null, null, false);
                 Map<String, T> entityByUuid;
                 if (entityList != null) {
@@ -574,36 +721,122 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
                 } else {
                     entityByUuid = new HashMap<>();
                 }
-                for (KvStorage storage : response.getResults()) {
+                List<KvStorage> storages = new ArrayList<>();
+                for (KvStorage storage : results) {
                     T entity = entityByUuid.get(entityUuidRetriever.apply(storage));
                     if (entity == null || removedChecker.test(entity)) {
                         s_logger.info("Deleting " + storage.getType().name() + " storage " + storage.getId() + " for the removed entity " + entityUuidRetriever.apply(storage));
-                        storage.setDeleted(true);
-                        _kvExecutor.update(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getMarkDeletedRequest(storage));
-                        s_logger.info("Deleted " + storage.getType().name() + " storage " + storage.getId() + " for the removed entity " + entityUuidRetriever.apply(storage));
+                        storages.add(storage);
                     }
                 }
-                response = _kvExecutor
-                        .scroll(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getScrollRequest(response.getScrollId(), DELETE_BATCH_TIMEOUT), KvStorage.class);
-            }
+                for (KvStorage storage : markDeleted(storages)) {
+                    s_logger.info("Deleted " + storage.getType().name() + " storage " + storage.getId() + " for the removed entity " + entityUuidRetriever.apply(storage));
+                }
+            });
         } catch (Exception e) {
             s_logger.error("Error while deleting storages for removed entities", e);
         }
     }
 
+    /**
+     * Deletes indices of dedicated storages with a single request and data of shared storages with a single delete by
+     * query request concurrently and then storages themselves. Storages are removed from the registry only if their data
+     * has been deleted so that failed storages are cleaned up by the next run.
+     *
+     * @return the future completed when the cleanup is finished; failures are logged
+     */
+    private CompletableFuture<Void> cleanupStorages(List<KvStorage> storages) {
+        try {
+            for (KvStorage storage : storages) {
+                s_logger.info("Clean up the storage " + storage.getId());
+            }
+            RestHighLevelClient client = _kvStorageClientManager.getEsClient();
+            Map<Boolean, List<KvStorage>> storagesByLayout = storages.stream().collect(Collectors.partitioningBy(KvStorage::isShared));
+            List<KvStorage> dedicatedStorages = storagesByLayout.get(false);
+            CompletableFuture<List<KvStorage>> dedicatedDeleted = CompletableFuture.completedFuture(Collections.emptyList());
+            if (!dedicatedStorages.isEmpty()) {
+                dedicatedDeleted = _kvExecutor.deleteIndicesAsync(client, _kvRequestBuilder.getDeleteIndicesRequest(dedicatedStorages)).handle((deleted, throwable) -> {
+                    if (throwable == null && deleted) {
+                        return dedicatedStorages;
+                    }
+                    s_logger.error("Unable to delete indices of storages " + getIds(dedicatedStorages), throwable);
+                    return Collections.emptyList();
+                });
+            }
+            List<KvStorage> sharedStorages = storagesByLayout.get(true);
+            CompletableFuture<List<KvStorage>> sharedDeleted = CompletableFuture.completedFuture(Collections.emptyList());
+            if (!sharedStorages.isEmpty()) {
+                sharedDeleted = _kvExecutor.byQueryAsync(client, _kvRequestBuilder.getDeleteSharedStoragesDataRequest(sharedStorages)).handle((response, throwable) -> {
+                    if (throwable != null) {
+                        s_logger.error("Unable to delete data of storages " + getIds(sharedStorages), throwable);
+                        return Collections.emptyList();
+                    }
+                    if (!response.isComplete()) {
+                        // registry documents are kept so that the remaining data is deleted by the next run
+                        s_logger.error("Data of storages " + getIds(sharedStorages) + " has been deleted partially: " + response.getDeleted() + " of " + response.getTotal()
+                                + ", version conflicts " + response.getVersionConflicts() + ", failures " + response.getFailures());
+                        return Collections.emptyList();
+                    }
+                    return sharedStorages;
+                });
+            }
+            return dedicatedDeleted.thenCombine(sharedDeleted, (dedicated, shared) -> {
+                List<KvStorage> deleted = new ArrayList<>(dedicated);
+                deleted.addAll(shared);
+                return deleted;
+            }).thenCompose(deleted -> {
+                if (deleted.isEmpty()) {
+                    return CompletableFuture.completedFuture(Collections.<String, String>emptyMap());
+                }
+                return _kvExecutor.bulkAsync(client, _kvRequestBuilder.getRegistryDeleteBulkRequest(deleted));
+            }).handle((failures, throwable) -> {
+                if (throwable != null) {
+                    s_logger.error("Unable to cleanup storages", throwable);
+                } else {
+                    failures.forEach((id, message) -> s_logger.error("Unable to delete the storage " + id + " from the registry: " + message));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            s_logger.error("Unable to cleanup storages", e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static List<String> getIds(List<KvStorage> storages) {
+        return storages.stream().map(KvStorage::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Marks storages deleted with a single bulk request.
+     *
+     * @return storages marked deleted successfully
+     */
+    private List<KvStorage> markDeleted(List<KvStorage> storages) throws IOException {
+        if (storages.isEmpty()) {
+            return storages;
+        }
+        storages.forEach(storage -> storage.setDeleted(true));
+        Map<String, String> failures = _kvExecutor.bulk(_kvStorageClientManager.getEsClient(), _kvRequestBuilder.getMarkDeletedBulkRequest(storages));
+        failures.forEach((id, message) -> s_logger.error("Unable to mark the KV storage " + id + " deleted: " + message));
+        List<KvStorage> deleted = storages.stream().filter(storage -> !failures.containsKey(storage.getId())).collect(Collectors.toList());
+        _kvStorageCacheInvalidator.invalidate(getIds(deleted));
+        return deleted;
+    }
+
     private <T extends Identity> void markDeletedStorageForDeletedEntities(ExceptionalSupplier<List<T>> entitySupplier, RequestBuilder<String> requestBuilder,
             Class<T> entityClass) {
         try {
             List<T> entities = entitySupplier.get();
             if (entities != null && !entities.isEmpty()) {
                 Request request = requestBuilder.get(entities.stream().map(T::getUuid).collect(Collectors.toList()));
-                Response response = _kvStorageClientManager.getEsClient().getLowLevelClient()
-                        .performRequest(request.getMethod(), request.getEndpoint(), request.getParameters(), request.getEntity());
-                if (response.getStatusLine().getStatusCode() == RestStatus.OK.getStatus()) {
+                ByQueryResponse response = _kvExecutor.byQuery(_kvStorageClientManager.getEsClient(), request);
+                if (response.isComplete()) {
                     s_logger.info("KV storages for recently removed " + entityClass.getSimpleName() + " have been cleaned");
                 } else {
-                    s_logger.error(
-                            "Unexpected status while cleaning KV storages for recently removed " + entityClass.getSimpleName() + " " + response.getStatusLine().getStatusCode());
+                    // storages left are marked deleted by the next run
+                    s_logger.warn("KV storages for recently removed " + entityClass.getSimpleName() + " have been cleaned partially: version conflicts "
+                            + response.getVersionConflicts() + ", failures " + response.getFailures());
                 }
             }
         } catch (Exception e) {
@@ -625,6 +858,16 @@ public class KvStorageManagerImpl extends ComponentLifecycleBase implements KvSt
         return retriever.apply(storage.get());
     }
 
+    private <T extends KvOperationResponse> T write(String storageId, Supplier<T> writer, Runnable invalidator) {
+        return _readCoalescer.write(storageId, () -> {
+            try {
+                return writer.get();
+            } finally {
+                invalidator.run();
+            }
+        });
+    }
+
     private KvStorage getStorage(String storageId) throws IOException, PermissionDeniedException {
         GetRequest getRequest = _kvRequestBuilder.getGetRequest(storageId);
         KvStorage storage = _kvExecutor.get(_kvStorageClientManager.getEsClient(), getRequest, KvStorage.class);
@@ -0,0 +1,224 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.response.KvPair;
+import com.bwsw.cloudstack.storage.kv.response.KvResult;
+import com.cloud.exception.InvalidParameterValueException;
+import org.apache.cloudstack.api.ApiErrorCode;
+import org.apache.cloudstack.api.ServerApiException;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates single key set operations per storage and executes them as a single multiple key set operation
+ * when the batch window elapses or the batch reaches the maximum size. Callers are blocked until their batch is executed.
+ * A key set again within the window is not merged: the batch with the earlier value is executed and a new batch is started.
+ */
+public class KvWriteBatcher {
+
+    private static final Logger s_logger = Logger.getLogger(KvWriteBatcher.class);
+
+    private final KvAsyncOperationManager _kvAsyncOperationManager;
+    private final int _window;
+    private final int _maxSize;
+    private final Map<String, Batch> _batches = new HashMap<>();
+    private final ScheduledExecutorService _executor;
+
+    public KvWriteBatcher(KvAsyncOperationManager kvAsyncOperationManager, int window, int maxSize) {
+        this(kvAsyncOperationManager, window, maxSize, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "KvWriteBatcher");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param executor the executor to flush batches when their windows elapse
+     */
+    KvWriteBatcher(KvAsyncOperationManager kvAsyncOperationManager, int window, int maxSize, ScheduledExecutorService executor) {
+        _kvAsyncOperationManager = kvAsyncOperationManager;
+        _window = window;
+        _maxSize = maxSize;
+        _executor = executor;
+    }
+
+    public KvPair set(KvStorage storage, String key, String value) {
+        if (key == null || key.isEmpty()) {
+            throw new InvalidParameterValueException("Null or empty key");
+        }
+        CompletableFuture<KvPair> future = new CompletableFuture<>();
+        Batch previousBatch = null;
+        Batch fullBatch = null;
+        synchronized (_batches) {
+            Batch batch = _batches.get(storage.getId());
+            if (batch != null && batch.contains(key)) {
+                _batches.remove(storage.getId());
+                previousBatch = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                Batch newBatch = new Batch(storage);
+                _batches.put(storage.getId(), newBatch);
+                _executor.schedule(() -> flush(newBatch), _window, TimeUnit.MILLISECONDS);
+                batch = newBatch;
+            }
+            batch.add(key, value, future);
+            if (batch.size() >= _maxSize) {
+                _batches.remove(storage.getId());
+                fullBatch = batch;
+            }
+        }
+        if (previousBatch != null) {
+            execute(previousBatch);
+        }
+        if (fullBatch != null) {
+            execute(fullBatch);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw (RuntimeException)e.getCause();
+        }
+    }
+
+    private void flush(Batch batch) {
+        boolean removed;
+        synchronized (_batches) {
+            removed = _batches.remove(batch.getStorage().getId(), batch);
+        }
+        if (removed) {
+            execute(batch);
+        }
+    }
+
+    private void execute(Batch batch) {
+        _kvAsyncOperationManager.setAsync(batch.getStorage(), batch.getData()).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                RuntimeException exception = getException(throwable);
+                if (exception instanceof InvalidParameterValueException && batch.size() > 1) {
+                    // the rejected request does not tell which pairs are invalid so that pairs are set one by one
+                    batch.getWaiters().forEach(waiter -> execute(batch.getStorage(), waiter));
+                } else {
+                    batch.getWaiters().forEach(waiter -> waiter.getFuture().completeExceptionally(exception));
+                }
+            } else {
+                batch.getWaiters().forEach(waiter -> complete(waiter, result));
+            }
+        });
+    }
+
+    private void execute(KvStorage storage, Waiter waiter) {
+        _kvAsyncOperationManager.setAsync(storage, waiter.getKey(), waiter.getValue()).whenComplete((pair, throwable) -> {
+            if (throwable != null) {
+                waiter.getFuture().completeExceptionally(getException(throwable));
+            } else {
+                waiter.getFuture().complete(pair);
+            }
+        });
+    }
+
+    private RuntimeException getException(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        return cause instanceof RuntimeException ? (RuntimeException)cause : new ServerApiException(ApiErrorCode.INTERNAL_ERROR, "Failed to execute KV storage operation");
+    }
+
+    private void complete(Waiter waiter, KvResult result) {
+        Boolean success = result.getItems() == null ? null : result.getItems().get(waiter.getKey());
+        if (success == null) {
+            s_logger.error("No result for the key in the batch set operation");
+            waiter.getFuture().completeExceptionally(new ServerApiException(ApiErrorCode.INTERNAL_ERROR, "Failed to execute KV storage operation"));
+        } else if (success) {
+            waiter.getFuture().complete(new KvPair(waiter.getKey(), waiter.getValue()));
+        } else {
+            waiter.getFuture().completeExceptionally(new InvalidParameterValueException("Key/value pair is invalid"));
+        }
+    }
+
+    private static class Batch {
+
+        private final KvStorage _storage;
+        private final Map<String, String> _data = new LinkedHashMap<>();
+        private final List<Waiter> _waiters = new ArrayList<>();
+
+        Batch(KvStorage storage) {
+            _storage = storage;
+        }
+
+        void add(String key, String value, CompletableFuture<KvPair> future) {
+            _data.put(key, value);
+            _waiters.add(new Waiter(key, value, future));
+        }
+
+        boolean contains(String key) {
+            return _data.containsKey(key);
+        }
+
+        int size() {
+            return _data.size();
+        }
+
+        KvStorage getStorage() {
+            return _storage;
+        }
+
+        Map<String, String> getData() {
+            return _data;
+        }
+
+        List<Waiter> getWaiters() {
+            return _waiters;
+        }
+    }
+
+    private static class Waiter {
+
+        private final String _key;
+        private final String _value;
+        private final CompletableFuture<KvPair> _future;
+
+        Waiter(String key, String value, CompletableFuture<KvPair> future) {
+            _key = key;
+            _value = value;
+            _future = future;
+        }
+
+        String getKey() {
+            return _key;
+        }
+
+        String getValue() {
+            return _value;
+        }
+
+        CompletableFuture<KvPair> getFuture() {
+            return _future;
+        }
+    }
+}
@@ -23,9 +23,14 @@ import com.bwsw.cloudstack.storage.kv.exception.InvalidEntityException;
 import com.bwsw.cloudstack.storage.kv.security.AccessChecker;
 import com.bwsw.cloudstack.storage.kv.service.KvExecutor;
 import com.bwsw.cloudstack.storage.kv.service.KvRequestBuilder;
+import com.bwsw.cloudstack.storage.kv.util.TimeManager;
+import com.google.common.cache.Cache;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.junit.Rule;
 import org.junit.Test;
@@ -37,19 +42,28 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class KvStorageCacheFactoryImplTest {
 
     private static final String ID = "e0123777-921b-4e62-a7cc-8135015ca571";
+    private static final String DELETED_ID = "35e7200d-0fda-4ca9-ad3e-3b3b37a77e32";
+    private static final String NONEXISTENT_ID = "5b3a5a0f-6d2c-4b2e-9a44-0d9c1f2b7e10";
 
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
@@ -69,9 +83,15 @@ public class KvStorageCacheFactoryImplTest {
     @Mock
     private RestHighLevelClient _restHighLevelClient;
 
+    @Mock
+    private TimeManager _timeManager;
+
     @Mock
     private GetRequest getRequest;
 
+    @Mock
+    private MultiGetRequest multiGetRequest;
+
     @InjectMocks
     private KvStorageCacheFactoryImpl _kvStorageCacheFactory;
 
@@ -84,6 +104,17 @@ public class KvStorageCacheFactoryImplTest {
         Object innerCacheObject = ReflectionTestUtils.getField(cache, "_cache");
         assertTrue(innerCacheObject instanceof LoadingCache);
         assertSame(_accessChecker, ReflectionTestUtils.getField(cache, "_accessChecker"));
+        assertTrue(ReflectionTestUtils.getField(cache, "_accessCache") instanceof Cache);
+        assertTrue(ReflectionTestUtils.getField(cache, "_absentCache") instanceof Cache);
+    }
+
+    @Test
+    public void testGetValueCache() {
+        KvValueCache cache = _kvStorageCacheFactory.getValueCache();
+
+        assertNotNull(cache);
+        assertTrue(ReflectionTestUtils.getField(cache, "_cache") instanceof Cache);
+        assertSame(_timeManager, ReflectionTestUtils.getField(cache, "_timeManager"));
     }
 
     @Test
@@ -125,6 +156,60 @@ public class KvStorageCacheFactoryImplTest {
         assertEquals(Optional.empty(), result);
     }
 
+    @Test
+    public void testGetCacheLoadAll() throws IOException, ExecutionException {
+        LoadingCache<String, Optional<KvStorage>> innerCache = getInnerCache();
+
+        KvStorage storage = getStorage(KvStorage.KvStorageType.VM, false);
+        KvStorage deletedStorage = getStorage(DELETED_ID, KvStorage.KvStorageType.VM, true);
+        List<String> ids = ImmutableList.of(ID, DELETED_ID, NONEXISTENT_ID);
+        when(_kvRequestBuilder.getMultiGetRequest(ids)).thenReturn(multiGetRequest);
+        when(_kvStorageClientManager.getEsClient()).thenReturn(_restHighLevelClient);
+        when(_kvExecutor.multiGet(_restHighLevelClient, multiGetRequest, KvStorage.class)).thenReturn(ImmutableMap.of(ID, storage, DELETED_ID, deletedStorage));
+
+        Map<String, Optional<KvStorage>> result = innerCache.getAll(ids);
+        assertEquals(ImmutableMap.of(ID, Optional.of(storage), DELETED_ID, Optional.empty(), NONEXISTENT_ID, Optional.empty()), result);
+        verify(_kvExecutor, never()).get(any(RestHighLevelClient.class), any(GetRequest.class), eq(KvStorage.class));
+    }
+
+    @Test
+    public void testGetCacheRefresh() throws IOException, ExecutionException {
+        LoadingCache<String, Optional<KvStorage>> innerCache = getInnerCache();
+
+        KvStorage storage = getStorage(KvStorage.KvStorageType.VM, false);
+        KvStorage deletedStorage = getStorage(KvStorage.KvStorageType.VM, true);
+        CompletableFuture<KvStorage> future = new CompletableFuture<>();
+        when(_kvRequestBuilder.getGetRequest(ID)).thenReturn(getRequest);
+        when(_kvStorageClientManager.getEsClient()).thenReturn(_restHighLevelClient);
+        when(_kvExecutor.get(_restHighLevelClient, getRequest, KvStorage.class)).thenReturn(storage);
+        when(_kvExecutor.getAsync(_restHighLevelClient, getRequest, KvStorage.class)).thenReturn(future);
+
+        assertEquals(Optional.of(storage), innerCache.get(ID));
+        innerCache.refresh(ID);
+        assertEquals(Optional.of(storage), innerCache.get(ID));
+
+        future.complete(deletedStorage);
+        assertEquals(Optional.empty(), innerCache.get(ID));
+        verify(_kvExecutor).get(_restHighLevelClient, getRequest, KvStorage.class);
+    }
+
+    @Test
+    public void testGetCacheRefreshException() throws IOException, ExecutionException {
+        LoadingCache<String, Optional<KvStorage>> innerCache = getInnerCache();
+
+        KvStorage storage = getStorage(KvStorage.KvStorageType.VM, false);
+        CompletableFuture<KvStorage> future = new CompletableFuture<>();
+        future.completeExceptionally(new IOException());
+        when(_kvRequestBuilder.getGetRequest(ID)).thenReturn(getRequest);
+        when(_kvStorageClientManager.getEsClient()).thenReturn(_restHighLevelClient);
+        when(_kvExecutor.get(_restHighLevelClient, getRequest, KvStorage.class)).thenReturn(storage);
+        when(_kvExecutor.getAsync(_restHighLevelClient, getRequest, KvStorage.class)).thenReturn(future);
+
+        assertEquals(Optional.of(storage), innerCache.get(ID));
+        innerCache.refresh(ID);
+        assertEquals(Optional.of(storage), innerCache.get(ID));
+    }
+
     @Test
     public void testGetCacheLoadValueNullStorageType() throws IOException, ExecutionException {
         testGetCacheLoadInvalidResult(getStorage(null, false));
@@ -172,8 +257,12 @@ public class KvStorageCacheFactoryImplTest {
     }
 
     private KvStorage getStorage(KvStorage.KvStorageType type, Boolean deleted) {
+        return getStorage(ID, type, deleted);
+    }
+
+    private KvStorage getStorage(String id, KvStorage.KvStorageType type, Boolean deleted) {
         KvStorage storage = new KvStorage();
-        storage.setId(ID);
+        storage.setId(id);
         storage.setType(type);
         storage.setDeleted(deleted);
         return storage;
@@ -21,21 +21,41 @@ import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 import com.bwsw.cloudstack.storage.kv.exception.InvalidEntityException;
 import com.bwsw.cloudstack.storage.kv.security.AccessChecker;
 import com.cloud.exception.PermissionDeniedException;
+import com.cloud.user.Account;
+import com.cloud.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.cloudstack.context.CallContext;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -44,6 +64,8 @@ public class KvStorageCacheImplTest {
     private static final String ID = "e0123777-921b-4e62-a7cc-8135015ca571";
     private static final String UUID = "35e7200d-0fda-4ca9-ad3e-3b3b37a77e32";
     private static final String SECRET_KEY = "secret";
+    private static final long ACCOUNT_ID = 2;
+    private static final String NONEXISTENT_ID = "5b3a5a0f-6d2c-4b2e-9a44-0d9c1f2b7e10";
     private static final KvStorage ACCOUNT_STORAGE = new KvStorage(ID, SECRET_KEY, UUID, "test", null, false);
     private static final KvStorage VM_STORAGE = new KvStorage(ID, SECRET_KEY, false);
 
@@ -56,11 +78,36 @@ public class KvStorageCacheImplTest {
     @Mock
     private AccessChecker _accessChecker;
 
-    @InjectMocks
+    @Mock
+    private Account _callerAccount;
+
+    @Mock
+    private User _callerUser;
+
     private KvStorageCacheImpl _kvStorageCache;
 
+    private Cache<String, Set<Long>> _accessCache = CacheBuilder.newBuilder().build();
+
+    private Cache<String, Boolean> _absentCache = CacheBuilder.newBuilder().build();
+
+    @BeforeClass
+    public static void beforeClass() {
+        CallContext.unregisterAll();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        CallContext.unregisterAll();
+    }
+
+    @Before
+    public void before() {
+        _kvStorageCache = new KvStorageCacheImpl(_cache, _accessChecker, null, null);
+    }
+
     @Test
     public void testGetNonexistentStorage() throws ExecutionException {
+        when(_cache.asMap()).thenReturn(new ConcurrentHashMap<>());
         when(_cache.get(ID)).thenReturn(Optional.empty());
 
         Optional<KvStorage> result = _kvStorageCache.get(ID);
@@ -110,6 +157,197 @@ public class KvStorageCacheImplTest {
         testGetPermissionDenied(ACCOUNT_STORAGE);
     }
 
+    @Test
+    public void testGetAll() throws ExecutionException {
+        KvStorage deniedStorage = new KvStorage(UUID, SECRET_KEY, false);
+        List<String> ids = ImmutableList.of(ID, UUID, NONEXISTENT_ID);
+        when(_cache.asMap()).thenReturn(new ConcurrentHashMap<>());
+        when(_cache.getAll(ids)).thenReturn(ImmutableMap.of(ID, Optional.of(VM_STORAGE), UUID, Optional.of(deniedStorage), NONEXISTENT_ID, Optional.empty()));
+        doNothing().when(_accessChecker).check(VM_STORAGE);
+        doThrow(new InvalidEntityException()).when(_accessChecker).check(deniedStorage);
+
+        Map<String, Optional<KvStorage>> result = _kvStorageCache.getAll(ids);
+        assertEquals(ImmutableMap.of(ID, Optional.of(VM_STORAGE), UUID, Optional.empty(), NONEXISTENT_ID, Optional.empty()), result);
+    }
+
+    @Test
+    public void testPutAll() {
+        KvStorage cachedStorage = new KvStorage(UUID, SECRET_KEY, false);
+        KvStorage deletedStorage = new KvStorage(NONEXISTENT_ID, SECRET_KEY, false);
+        deletedStorage.setDeleted(true);
+        ConcurrentMap<String, Optional<KvStorage>> map = new ConcurrentHashMap<>();
+        map.put(UUID, Optional.empty());
+        when(_cache.asMap()).thenReturn(map);
+
+        _kvStorageCache.startWarmUp();
+        assertEquals(1, _kvStorageCache.putAll(ImmutableList.of(VM_STORAGE, cachedStorage, deletedStorage)));
+        assertEquals(ImmutableMap.of(ID, Optional.of(VM_STORAGE), UUID, Optional.empty()), map);
+    }
+
+    @Test
+    public void testPutAllChangedSinceWarmUpStart() {
+        KvStorage refreshedStorage = new KvStorage(UUID, SECRET_KEY, false);
+        KvStorage otherStorage = new KvStorage(NONEXISTENT_ID, SECRET_KEY, false);
+        ConcurrentMap<String, Optional<KvStorage>> map = new ConcurrentHashMap<>();
+        when(_cache.asMap()).thenReturn(map);
+
+        _kvStorageCache.startWarmUp();
+        _kvStorageCache.invalidateAll(ImmutableList.of(ID));
+        _kvStorageCache.refreshAll(ImmutableList.of(UUID));
+        assertEquals(1, _kvStorageCache.putAll(ImmutableList.of(VM_STORAGE, refreshedStorage, otherStorage)));
+        assertEquals(ImmutableMap.of(NONEXISTENT_ID, Optional.of(otherStorage)), map);
+
+        _kvStorageCache.invalidateAll();
+        assertEquals(0, _kvStorageCache.putAll(ImmutableList.of(new KvStorage(ID + "1", SECRET_KEY, false))));
+        _kvStorageCache.finishWarmUp();
+    }
+
+    @Test
+    public void testRefreshAll() {
+        ConcurrentMap<String, Optional<KvStorage>> map = new ConcurrentHashMap<>();
+        map.put(ID, Optional.of(VM_STORAGE));
+        when(_cache.asMap()).thenReturn(map);
+
+        assertEquals(1, _kvStorageCache.refreshAll(ImmutableList.of(ID, NONEXISTENT_ID)));
+        verify(_cache).refresh(ID);
+        verify(_cache, never()).refresh(NONEXISTENT_ID);
+    }
+
+    @Test
+    public void testGetAccessCached() throws ExecutionException {
+        KvStorageCacheImpl kvStorageCache = getAccessCachingStorageCache();
+        when(_cache.get(ID)).thenReturn(Optional.of(VM_STORAGE));
+        doNothing().when(_accessChecker).check(VM_STORAGE);
+
+        assertEquals(Optional.of(VM_STORAGE), kvStorageCache.get(ID));
+        assertEquals(Optional.of(VM_STORAGE), kvStorageCache.get(ID));
+        verify(_accessChecker, times(1)).check(VM_STORAGE);
+
+        when(_callerAccount.getId()).thenReturn(ACCOUNT_ID + 1);
+        assertEquals(Optional.of(VM_STORAGE), kvStorageCache.get(ID));
+        verify(_accessChecker, times(2)).check(VM_STORAGE);
+    }
+
+    @Test
+    public void testGetAccessNotCachedInvalidEntity() throws ExecutionException {
+        KvStorageCacheImpl kvStorageCache = getAccessCachingStorageCache();
+        when(_cache.get(ID)).thenReturn(Optional.of(ACCOUNT_STORAGE));
+        doThrow(new InvalidEntityException()).when(_accessChecker).check(ACCOUNT_STORAGE);
+
+        assertEquals(Optional.empty(), kvStorageCache.get(ID));
+        assertEquals(Optional.empty(), kvStorageCache.get(ID));
+        verify(_accessChecker, times(2)).check(ACCOUNT_STORAGE);
+        assertEquals(0, _accessCache.size());
+    }
+
+    @Test
+    public void testGetAccessNotCachedPermissionDenied() throws ExecutionException {
+        KvStorageCacheImpl kvStorageCache = getAccessCachingStorageCache();
+        when(_cache.get(ID)).thenReturn(Optional.of(VM_STORAGE));
+        doThrow(new PermissionDeniedException(VM_STORAGE.getType().name())).when(_accessChecker).check(VM_STORAGE);
+
+        try {
+            kvStorageCache.get(ID);
+            fail("Permission denied expected");
+        } catch (PermissionDeniedException e) {
+            assertEquals(0, _accessCache.size());
+        }
+    }
+
+    @Test
+    public void testInvalidateAccess() throws ExecutionException {
+        KvStorageCacheImpl kvStorageCache = getAccessCachingStorageCache();
+        when(_cache.get(ID)).thenReturn(Optional.of(VM_STORAGE));
+        when(_cache.get(UUID)).thenReturn(Optional.of(new KvStorage(UUID, SECRET_KEY, false)));
+        kvStorageCache.get(ID);
+        kvStorageCache.get(UUID);
+        when(_callerAccount.getId()).thenReturn(ACCOUNT_ID + 1);
+        kvStorageCache.get(ID);
+        assertEquals(ImmutableMap.of(ID, ImmutableSet.of(ACCOUNT_ID, ACCOUNT_ID + 1), UUID, ImmutableSet.of(ACCOUNT_ID)), _accessCache.asMap());
+
+        kvStorageCache.invalidateAccess(ImmutableList.of(ID));
+        assertEquals(ImmutableSet.of(UUID), _accessCache.asMap().keySet());
+
+        kvStorageCache.invalidateAll(ImmutableList.of(UUID));
+        assertEquals(0, _accessCache.size());
+        verify(_cache).invalidateAll(ImmutableList.of(UUID));
+    }
+
+    @Test
+    public void testGetAbsentCached() throws ExecutionException {
+        KvStorageCacheImpl kvStorageCache = new KvStorageCacheImpl(_cache, _accessChecker, null, _absentCache);
+        ConcurrentMap<String, Optional<KvStorage>> map = new ConcurrentHashMap<>();
+        map.put(NONEXISTENT_ID, Optional.empty());
+        when(_cache.asMap()).thenReturn(map);
+        when(_cache.get(NONEXISTENT_ID)).thenReturn(Optional.empty());
+
+        assertEquals(Optional.empty(), kvStorageCache.get(NONEXISTENT_ID));
+        assertEquals(Optional.empty(), kvStorageCache.get(NONEXISTENT_ID));
+        verify(_cache, times(1)).get(NONEXISTENT_ID);
+        assertTrue(map.isEmpty());
+
+        kvStorageCache.refreshAll(ImmutableList.of(NONEXISTENT_ID));
+        assertEquals(0, _absentCache.size());
+    }
+
+    @Test
+    public void testGetIdFilter() throws ExecutionException {
+        KvStorageIdFilter idFilter = new KvStorageIdFilter(1);
+        idFilter.put(ID);
+        _kvStorageCache.startIdFilterUpdate();
+        _kvStorageCache.finishIdFilterUpdate(idFilter);
+        when(_cache.get(ID)).thenReturn(Optional.of(VM_STORAGE));
+        when(_cache.getAll(ImmutableList.of(ID))).thenReturn(ImmutableMap.of(ID, Optional.of(VM_STORAGE)));
+
+        assertEquals(Optional.empty(), _kvStorageCache.get(NONEXISTENT_ID));
+        assertEquals(Optional.of(VM_STORAGE), _kvStorageCache.get(ID));
+        assertEquals(ImmutableMap.of(ID, Optional.of(VM_STORAGE), NONEXISTENT_ID, Optional.empty()), _kvStorageCache.getAll(ImmutableList.of(ID, NONEXISTENT_ID)));
+        verify(_cache, never()).get(NONEXISTENT_ID);
+
+        _kvStorageCache.invalidateAll(ImmutableList.of(NONEXISTENT_ID));
+        assertTrue(idFilter.mightContain(NONEXISTENT_ID));
+    }
+
+    @Test
+    public void testFinishIdFilterUpdateIdsAddedDuringUpdate() throws ExecutionException {
+        KvStorageIdFilter currentIdFilter = new KvStorageIdFilter(1);
+        currentIdFilter.put(ID);
+        _kvStorageCache.startIdFilterUpdate();
+        _kvStorageCache.finishIdFilterUpdate(currentIdFilter);
+
+        _kvStorageCache.startIdFilterUpdate();
+        // the storage is created after the registry snapshot for the new filter is taken
+        _kvStorageCache.invalidateAll(ImmutableList.of(NONEXISTENT_ID));
+        assertTrue(currentIdFilter.mightContain(NONEXISTENT_ID));
+        KvStorageIdFilter idFilter = new KvStorageIdFilter(1);
+        idFilter.put(ID);
+        _kvStorageCache.finishIdFilterUpdate(idFilter);
+
+        assertTrue(idFilter.mightContain(NONEXISTENT_ID));
+        when(_cache.get(NONEXISTENT_ID)).thenReturn(Optional.of(VM_STORAGE));
+        assertEquals(Optional.of(VM_STORAGE), _kvStorageCache.get(NONEXISTENT_ID));
+    }
+
+    @Test
+    public void testFinishIdFilterUpdateFailed() throws ExecutionException {
+        KvStorageIdFilter idFilter = new KvStorageIdFilter(1);
+        idFilter.put(ID);
+        _kvStorageCache.startIdFilterUpdate();
+        _kvStorageCache.finishIdFilterUpdate(idFilter);
+
+        _kvStorageCache.startIdFilterUpdate();
+        _kvStorageCache.finishIdFilterUpdate(null);
+
+        assertEquals(Optional.empty(), _kvStorageCache.get(NONEXISTENT_ID));
+        verify(_cache, never()).get(NONEXISTENT_ID);
+    }
+
+    private KvStorageCacheImpl getAccessCachingStorageCache() {
+        when(_callerAccount.getId()).thenReturn(ACCOUNT_ID);
+        CallContext.register(_callerUser, _callerAccount);
+        return new KvStorageCacheImpl(_cache, _accessChecker, _accessCache, null);
+    }
+
     private void testGet(KvStorage storage) throws ExecutionException {
         Optional<KvStorage> cachedStorage = Optional.of(storage);
         when(_cache.get(ID)).thenReturn(cachedStorage);
@@ -0,0 +1,86 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.cache;
+
+import com.bwsw.cloudstack.storage.kv.event.EventTypes;
+import com.bwsw.cloudstack.storage.kv.event.KvStorageCacheEventSubscriber;
+import com.cloud.event.EventCategory;
+import com.google.common.collect.ImmutableList;
+import org.apache.cloudstack.framework.events.Event;
+import org.apache.cloudstack.framework.events.EventBus;
+import org.apache.cloudstack.framework.events.EventBusException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KvStorageCacheInvalidatorImplTest {
+
+    private static final List<String> IDS = ImmutableList.of("e0123777-921b-4e62-a7cc-8135015ca571", "35e7200d-0fda-4ca9-ad3e-3b3b37a77e32");
+
+    @Mock
+    private EventBus _eventBus;
+
+    @Mock
+    private KvStorageCache _kvStorageCache;
+
+    @InjectMocks
+    private KvStorageCacheInvalidatorImpl _kvStorageCacheInvalidator;
+
+    @Test
+    public void testInvalidate() throws EventBusException {
+        _kvStorageCacheInvalidator.invalidate(IDS);
+
+        verify(_kvStorageCache).invalidateAll(IDS);
+        ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+        verify(_eventBus).publish(eventCaptor.capture());
+        Event event = eventCaptor.getValue();
+        assertEquals(EventCategory.ACTION_EVENT.getName(), event.getEventCategory());
+        assertEquals(EventTypes.EVENT_KV_STORAGE_CACHE_INVALIDATE, event.getEventType());
+        assertEquals(KvStorageCacheEventSubscriber.RESOURCE_TYPE, event.getResourceType());
+        assertEquals("{\"storages\":\"" + String.join(",", IDS) + "\"}", event.getDescription());
+    }
+
+    @Test
+    public void testInvalidatePublishFailure() throws EventBusException {
+        doThrow(new EventBusException("failure")).when(_eventBus).publish(any(Event.class));
+
+        _kvStorageCacheInvalidator.invalidate(IDS);
+
+        verify(_kvStorageCache).invalidateAll(IDS);
+    }
+
+    @Test
+    public void testInvalidateEmpty() {
+        _kvStorageCacheInvalidator.invalidate(Collections.emptyList());
+
+        verifyZeroInteractions(_kvStorageCache, _eventBus);
+    }
+}
@@ -0,0 +1,233 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.cache;
+
+import com.bwsw.cloudstack.storage.kv.client.KvStorageClientManager;
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.service.KvExecutor;
+import com.bwsw.cloudstack.storage.kv.service.KvRequestBuilder;
+import com.bwsw.cloudstack.storage.kv.util.TimeManager;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.CheckedConsumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.naming.ConfigurationException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KvStorageCacheUpdaterTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    @Mock
+    private KvRequestBuilder _kvRequestBuilder;
+
+    @Mock
+    private KvExecutor _kvExecutor;
+
+    @Mock
+    private KvStorageCache _kvStorageCache;
+
+    @Mock
+    private KvValueCache _kvValueCache;
+
+    @Mock
+    private KvStorageClientManager _kvStorageClientManager;
+
+    @Mock
+    private TimeManager _timeManager;
+
+    @Mock
+    private RestHighLevelClient _restHighLevelClient;
+
+    private SearchRequest _searchRequest = new SearchRequest();
+
+    @Mock
+    private RateLimiter _rateLimiter;
+
+    @InjectMocks
+    private KvStorageCacheUpdater _kvStorageCacheUpdater = new KvStorageCacheUpdater();
+
+    private final List<List<KvStorage>> _consumedPages = new ArrayList<>();
+
+    @Before
+    public void before() throws ConfigurationException {
+        _kvStorageCacheUpdater.configure(KvStorageCacheUpdater.class.getSimpleName(), Collections.emptyMap());
+        when(_kvStorageClientManager.getEsClient()).thenReturn(_restHighLevelClient);
+        when(_kvRequestBuilder.getRecentlyUpdatedStoragesRequest(eq(BATCH_SIZE), anyInt())).thenReturn(_searchRequest);
+        when(_kvStorageCache.putAll(anyListOf(KvStorage.class))).thenAnswer(invocation -> ((List<?>)invocation.getArguments()[0]).size());
+    }
+
+    @After
+    public void after() {
+        _kvStorageCacheUpdater.stop();
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        List<List<KvStorage>> pages = getPages(3, BATCH_SIZE);
+        setScrollExpectations(pages, null);
+
+        _kvStorageCacheUpdater.warmUp(_rateLimiter, BATCH_SIZE, 100);
+
+        assertEquals(pages, _consumedPages);
+        InOrder inOrder = inOrder(_kvStorageCache, _rateLimiter, _kvExecutor);
+        inOrder.verify(_kvStorageCache).startWarmUp();
+        inOrder.verify(_kvExecutor).scroll(eq(_restHighLevelClient), eq(_searchRequest), eq(1), eq(KvStorage.class), any(CheckedConsumer.class));
+        for (List<KvStorage> page : pages) {
+            // every page is paced before it is cached
+            inOrder.verify(_rateLimiter).acquire(page.size());
+            inOrder.verify(_kvStorageCache).putAll(page);
+        }
+        inOrder.verify(_kvStorageCache).finishWarmUp();
+    }
+
+    @Test
+    public void testWarmUpLimit() throws Exception {
+        List<List<KvStorage>> pages = getPages(3, BATCH_SIZE);
+        setScrollExpectations(pages, null);
+
+        _kvStorageCacheUpdater.warmUp(_rateLimiter, BATCH_SIZE, 5);
+
+        // the scroll is cancelled once the limit is reached
+        assertEquals(pages.subList(0, 2), _consumedPages);
+        verify(_kvStorageCache).putAll(pages.get(0));
+        verify(_kvStorageCache).putAll(pages.get(1).subList(0, 2));
+        verify(_kvStorageCache, times(2)).putAll(anyListOf(KvStorage.class));
+        verify(_kvStorageCache).finishWarmUp();
+    }
+
+    @Test
+    public void testWarmUpStopped() throws Exception {
+        List<List<KvStorage>> pages = getPages(3, BATCH_SIZE);
+        setScrollExpectations(pages, page -> _kvStorageCacheUpdater.stop());
+
+        _kvStorageCacheUpdater.warmUp(_rateLimiter, BATCH_SIZE, 100);
+
+        // the page retrieved after the updater is stopped is not cached
+        assertEquals(pages.subList(0, 2), _consumedPages);
+        verify(_kvStorageCache).putAll(pages.get(0));
+        verify(_kvStorageCache, never()).putAll(pages.get(1));
+        verify(_rateLimiter, times(1)).acquire(anyInt());
+        verify(_kvStorageCache).finishWarmUp();
+    }
+
+    @Test
+    public void testWarmUpScrollFailure() throws Exception {
+        doThrow(new IOException()).when(_kvExecutor).scroll(eq(_restHighLevelClient), eq(_searchRequest), eq(1), eq(KvStorage.class), any(CheckedConsumer.class));
+
+        _kvStorageCacheUpdater.warmUp(_rateLimiter, BATCH_SIZE, 100);
+
+        verify(_kvStorageCache).startWarmUp();
+        verify(_kvStorageCache, never()).putAll(anyListOf(KvStorage.class));
+        verify(_kvStorageCache).finishWarmUp();
+    }
+
+    @Test
+    public void testWarmUpStoragesChanged() throws Exception {
+        LoadingCache<String, Optional<KvStorage>> cache = CacheBuilder.newBuilder().build(new CacheLoader<String, Optional<KvStorage>>() {
+            @Override
+            public Optional<KvStorage> load(String key) {
+                return Optional.empty();
+            }
+        });
+        KvStorageCacheImpl kvStorageCache = new KvStorageCacheImpl(cache, null, null, null);
+        ReflectionTestUtils.setField(_kvStorageCacheUpdater, "_kvStorageCache", kvStorageCache);
+        List<List<KvStorage>> pages = getPages(2, BATCH_SIZE);
+        // storages of the second page are changed after the registry snapshot is taken and before they are cached
+        setScrollExpectations(pages, page -> {
+            if (page == pages.get(0)) {
+                kvStorageCache.invalidateAll(ImmutableList.of(pages.get(1).get(0).getId()));
+                kvStorageCache.refreshAll(ImmutableList.of(pages.get(1).get(1).getId()));
+            }
+        });
+
+        _kvStorageCacheUpdater.warmUp(_rateLimiter, BATCH_SIZE, 100);
+
+        assertEquals(ImmutableSet.of("storage0", "storage1", "storage2", "storage5"), cache.asMap().keySet());
+        // changes after the warm-up are not recorded
+        kvStorageCache.startWarmUp();
+        assertEquals(1, kvStorageCache.putAll(Collections.singletonList(pages.get(1).get(0))));
+        kvStorageCache.finishWarmUp();
+    }
+
+    private List<List<KvStorage>> getPages(int count, int size) {
+        List<List<KvStorage>> pages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<KvStorage> page = new ArrayList<>();
+            for (int j = 0; j < size; j++) {
+                page.add(new KvStorage("storage" + (i * size + j), "secret", false));
+            }
+            pages.add(page);
+        }
+        return pages;
+    }
+
+    /**
+     * Scrolls pages until the consumer fails the same way as the executor does.
+     *
+     * @param afterPage the action run after each page is consumed
+     */
+    @SuppressWarnings("unchecked")
+    private void setScrollExpectations(List<List<KvStorage>> pages, Consumer<List<KvStorage>> afterPage) throws Exception {
+        doAnswer(invocation -> {
+            CheckedConsumer<List<KvStorage>, Exception> consumer = (CheckedConsumer<List<KvStorage>, Exception>)invocation.getArguments()[4];
+            for (List<KvStorage> page : pages) {
+                _consumedPages.add(page);
+                consumer.accept(page);
+                if (afterPage != null) {
+                    afterPage.accept(page);
+                }
+            }
+            return null;
+        }).when(_kvExecutor).scroll(eq(_restHighLevelClient), eq(_searchRequest), eq(1), eq(KvStorage.class), any(CheckedConsumer.class));
+    }
+}
@@ -0,0 +1,145 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.cache;
+
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.response.KvError;
+import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
+import com.bwsw.cloudstack.storage.kv.response.KvValue;
+import com.bwsw.cloudstack.storage.kv.util.TimeManager;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KvValueCacheImplTest {
+
+    private static final int TTL = 1000;
+    private static final long TIMESTAMP = 1539748473600L;
+    private static final String KEY = "key";
+    private static final KvOperationResponse VALUE = new KvValue("value");
+    private static final KvStorage ACCOUNT_STORAGE = getStorage("e0123777-921b-4e62-a7cc-8135015ca571", KvStorage.KvStorageType.ACCOUNT);
+    private static final KvStorage OTHER_ACCOUNT_STORAGE = getStorage("c0123777-921b-4e62-a7cc-8135015ca571", KvStorage.KvStorageType.ACCOUNT);
+    private static final KvStorage VM_STORAGE = getStorage("d0123777-921b-4e62-a7cc-8135015ca571", KvStorage.KvStorageType.VM);
+
+    @Mock
+    private TimeManager _timeManager;
+
+    private KvValueCache _kvValueCache;
+
+    @Before
+    public void before() {
+        _kvValueCache = new KvValueCacheImpl(CacheBuilder.newBuilder().maximumSize(10).build(),
+                ImmutableMap.of(KvStorage.KvStorageType.ACCOUNT, TTL, KvStorage.KvStorageType.VM, 0), _timeManager);
+        when(_timeManager.getCurrentTimestamp()).thenReturn(TIMESTAMP);
+    }
+
+    @Test
+    public void testGetMissing() {
+        assertNull(_kvValueCache.get(ACCOUNT_STORAGE, KEY));
+        assertEquals(0, _kvValueCache.getHitCount());
+        assertEquals(1, _kvValueCache.getMissCount());
+    }
+
+    @Test
+    public void testGet() {
+        _kvValueCache.put(ACCOUNT_STORAGE, KEY, VALUE);
+
+        assertSame(VALUE, _kvValueCache.get(ACCOUNT_STORAGE, KEY));
+        assertEquals(1, _kvValueCache.getHitCount());
+        assertEquals(0, _kvValueCache.getMissCount());
+    }
+
+    @Test
+    public void testGetMissingValue() {
+        KvOperationResponse missingValue = new KvError(404);
+        _kvValueCache.put(ACCOUNT_STORAGE, KEY, missingValue);
+
+        assertSame(missingValue, _kvValueCache.get(ACCOUNT_STORAGE, KEY));
+    }
+
+    @Test
+    public void testGetExpired() {
+        _kvValueCache.put(ACCOUNT_STORAGE, KEY, VALUE);
+        when(_timeManager.getCurrentTimestamp()).thenReturn(TIMESTAMP + TTL);
+
+        assertNull(_kvValueCache.get(ACCOUNT_STORAGE, KEY));
+        assertEquals(1, _kvValueCache.getMissCount());
+    }
+
+    @Test
+    public void testGetDisabledStorageType() {
+        _kvValueCache.put(VM_STORAGE, KEY, VALUE);
+
+        assertNull(_kvValueCache.get(VM_STORAGE, KEY));
+        assertEquals(0, _kvValueCache.getHitCount());
+        assertEquals(0, _kvValueCache.getMissCount());
+    }
+
+    @Test
+    public void testGetUnconfiguredStorageType() {
+        KvStorage storage = getStorage(ACCOUNT_STORAGE.getId(), KvStorage.KvStorageType.TEMP);
+        _kvValueCache.put(storage, KEY, VALUE);
+
+        assertNull(_kvValueCache.get(storage, KEY));
+    }
+
+    @Test
+    public void testInvalidate() {
+        _kvValueCache.put(ACCOUNT_STORAGE, KEY, VALUE);
+        _kvValueCache.put(ACCOUNT_STORAGE, "other key", VALUE);
+
+        _kvValueCache.invalidate(ACCOUNT_STORAGE.getId(), Collections.singleton(KEY));
+
+        assertNull(_kvValueCache.get(ACCOUNT_STORAGE, KEY));
+        assertSame(VALUE, _kvValueCache.get(ACCOUNT_STORAGE, "other key"));
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        _kvValueCache.put(ACCOUNT_STORAGE, KEY, VALUE);
+        _kvValueCache.put(ACCOUNT_STORAGE, "other key", VALUE);
+        _kvValueCache.put(OTHER_ACCOUNT_STORAGE, KEY, VALUE);
+
+        _kvValueCache.invalidateAll(ACCOUNT_STORAGE.getId());
+
+        for (String key : ImmutableList.of(KEY, "other key")) {
+            assertNull(_kvValueCache.get(ACCOUNT_STORAGE, key));
+        }
+        assertSame(VALUE, _kvValueCache.get(OTHER_ACCOUNT_STORAGE, KEY));
+    }
+
+    private static KvStorage getStorage(String id, KvStorage.KvStorageType type) {
+        KvStorage storage = new KvStorage();
+        storage.setId(id);
+        storage.setType(type);
+        return storage;
+    }
+}
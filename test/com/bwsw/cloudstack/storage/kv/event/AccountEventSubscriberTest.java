@@ -17,6 +17,7 @@
 
 package com.bwsw.cloudstack.storage.kv.event;
 
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
 import com.bwsw.cloudstack.storage.kv.service.KvStorageManager;
 import com.cloud.event.Event;
 import com.cloud.event.EventTypes;
@@ -37,6 +38,9 @@ public class AccountEventSubscriberTest extends BaseEventSubscriberTest {
     @Mock
     private KvStorageManager _kvStorageManager;
 
+    @Mock
+    private KvStorageCache _kvStorageCache;
+
     @InjectMocks
     private AccountEventSubscriber _accountEventSubscriber;
 
@@ -52,12 +56,12 @@ public class AccountEventSubscriberTest extends BaseEventSubscriberTest {
 
     @Test
     public void testOnEventAccountDeleteNotCompleted() throws JsonProcessingException {
-        testOnEventIgnoredState(com.cloud.event.EventTypes.EVENT_ACCOUNT_DELETE, _kvStorageManager);
+        testOnEventIgnoredState(com.cloud.event.EventTypes.EVENT_ACCOUNT_DELETE, _kvStorageManager, _kvStorageCache);
     }
 
     @Test
     public void testOnEventAccountDeleteEventFailure() throws JsonProcessingException {
-        testOnEventFailure(EventTypes.EVENT_ACCOUNT_DELETE, _kvStorageManager);
+        testOnEventFailure(EventTypes.EVENT_ACCOUNT_DELETE, _kvStorageManager, _kvStorageCache);
     }
 
     @Override
@@ -77,5 +81,6 @@ public class AccountEventSubscriberTest extends BaseEventSubscriberTest {
         _accountEventSubscriber.onEvent(_event);
 
         verify(_kvStorageManager, only()).deleteAccountStorages(UUID);
+        verify(_kvStorageCache, only()).invalidateAccess();
     }
 }
@@ -17,6 +17,7 @@
 
 package com.bwsw.cloudstack.storage.kv.event;
 
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
 import com.bwsw.cloudstack.storage.kv.service.KvStorageManager;
 import org.apache.cloudstack.framework.events.EventBus;
 import org.apache.cloudstack.framework.events.EventBusException;
@@ -51,6 +52,9 @@ public class EventSubscriberFactoryImplTest {
     @Mock
     private KvStorageManager _kvStorageManager;
 
+    @Mock
+    private KvStorageCache _kvStorageCache;
+
     @InjectMocks
     private EventSubscriberFactoryImpl _eventSubscriberFactory = new EventSubscriberFactoryImpl();
 
@@ -66,6 +70,12 @@ public class EventSubscriberFactoryImplTest {
                 accountEventSubscriber -> assertSame(_kvStorageManager, ReflectionTestUtils.getField(accountEventSubscriber, "_kvStorageManager")));
     }
 
+    @Test
+    public void testGetKvStorageCacheEventSubscriber() throws EventBusException {
+        test(_eventSubscriberFactory::getKvStorageCacheEventSubscriber,
+                subscriber -> assertSame(_kvStorageCache, ReflectionTestUtils.getField(subscriber, "_kvStorageCache")));
+    }
+
     private <T extends BaseEventSubscriber> void test(SubscriberProducer<T> producer, Consumer<T> validator) throws EventBusException {
         when(_eventBus.subscribe(any(EventTopic.class), any(BaseEventSubscriber.class))).thenAnswer(invocation -> {
             EventTopic eventTopic = invocation.getArgumentAt(0, EventTopic.class);
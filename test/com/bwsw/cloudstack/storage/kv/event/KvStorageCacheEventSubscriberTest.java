@@ -0,0 +1,88 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.event;
+
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
+import com.cloud.event.Event;
+import com.cloud.event.EventCategory;
+import com.google.common.collect.ImmutableList;
+import org.apache.cloudstack.framework.events.EventSubscriber;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class KvStorageCacheEventSubscriberTest extends BaseEventSubscriberTest {
+
+    private static final String OTHER_UUID = "e0123777-921b-4e62-a7cc-8135015ca571";
+
+    @Mock
+    private KvStorageCache _kvStorageCache;
+
+    @InjectMocks
+    private KvStorageCacheEventSubscriber _kvStorageCacheEventSubscriber;
+
+    @Test
+    public void testOnEventInvalidate() {
+        expectInvalidationEvent(EventCategory.ACTION_EVENT, KvStorageCacheEventSubscriber.RESOURCE_TYPE, "{\"storages\":\"" + UUID + "," + OTHER_UUID + "\"}");
+
+        _kvStorageCacheEventSubscriber.onEvent(_event);
+
+        verify(_kvStorageCache).invalidateAll(ImmutableList.of(UUID, OTHER_UUID));
+    }
+
+    @Test
+    public void testOnEventOtherResourceType() {
+        expectInvalidationEvent(EventCategory.ACTION_EVENT, "VirtualMachine", "{\"storages\":\"" + UUID + "\"}");
+
+        _kvStorageCacheEventSubscriber.onEvent(_event);
+
+        verifyZeroInteractions(_kvStorageCache);
+    }
+
+    @Test
+    public void testOnEventInvalidDescription() {
+        expectInvalidationEvent(EventCategory.ACTION_EVENT, KvStorageCacheEventSubscriber.RESOURCE_TYPE, "[" + UUID + "]");
+
+        _kvStorageCacheEventSubscriber.onEvent(_event);
+
+        verify(_kvStorageCache, never()).invalidateAll(anyCollectionOf(String.class));
+    }
+
+    @Override
+    protected void expectEvent(String eventType, Event.State state, String description) {
+        // invalidation events have no state
+    }
+
+    @Override
+    protected EventSubscriber getEventSubscriber() {
+        return _kvStorageCacheEventSubscriber;
+    }
+
+    private void expectInvalidationEvent(EventCategory eventCategory, String resourceType, String description) {
+        when(_event.getEventCategory()).thenReturn(eventCategory.getName());
+        when(_event.getResourceType()).thenReturn(resourceType);
+        when(_event.getEventType()).thenReturn(EventTypes.EVENT_KV_STORAGE_CACHE_INVALIDATE);
+        when(_event.getDescription()).thenReturn(description);
+    }
+}
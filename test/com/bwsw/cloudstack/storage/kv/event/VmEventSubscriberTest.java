@@ -17,6 +17,7 @@
 
 package com.bwsw.cloudstack.storage.kv.event;
 
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 import com.bwsw.cloudstack.storage.kv.service.KvStorageManager;
 import com.cloud.domain.Domain;
@@ -30,6 +31,8 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 
+import java.util.Collections;
+
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -40,6 +43,9 @@ public class VmEventSubscriberTest extends BaseEventSubscriberTest {
     @Mock
     private KvStorageManager _kvStorageManager;
 
+    @Mock
+    private KvStorageCache _kvStorageCache;
+
     @InjectMocks
     private VmEventSubscriber _vmEventSubscriber;
 
@@ -80,12 +86,27 @@ public class VmEventSubscriberTest extends BaseEventSubscriberTest {
 
     @Test
     public void testOnEventVmExpungeNotCompleted() throws JsonProcessingException {
-        testOnEventIgnoredState(EventTypes.EVENT_VM_EXPUNGE, _kvStorageManager);
+        testOnEventIgnoredState(EventTypes.EVENT_VM_EXPUNGE, _kvStorageManager, _kvStorageCache);
     }
 
     @Test
     public void testOnEventVmExpungeEventFailure() throws JsonProcessingException {
-        testOnEventFailure(EventTypes.EVENT_VM_EXPUNGE, _kvStorageManager);
+        testOnEventFailure(EventTypes.EVENT_VM_EXPUNGE, _kvStorageManager, _kvStorageCache);
+    }
+
+    @Test
+    public void testOnEventVmMove() throws JsonProcessingException {
+        expectEvent(EventTypes.EVENT_VM_MOVE, com.cloud.event.Event.State.Completed, SUCCESS_DESCRIPTION);
+
+        _vmEventSubscriber.onEvent(_event);
+
+        verify(_kvStorageCache, only()).invalidateAccess(Collections.singleton(UUID));
+        verifyZeroInteractions(_kvStorageManager);
+    }
+
+    @Test
+    public void testOnEventVmMoveNotCompleted() throws JsonProcessingException {
+        testOnEventIgnoredState(EventTypes.EVENT_VM_MOVE, _kvStorageManager, _kvStorageCache);
     }
 
     @Test
@@ -146,5 +167,6 @@ public class VmEventSubscriberTest extends BaseEventSubscriberTest {
         _vmEventSubscriber.onEvent(_event);
 
         verify(_kvStorageManager, only()).deleteVmStorage(_event.getResourceUUID());
+        verify(_kvStorageCache, only()).invalidateAccess(Collections.singleton(UUID));
     }
 }
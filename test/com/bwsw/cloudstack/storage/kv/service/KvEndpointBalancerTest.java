@@ -0,0 +1,253 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.service.KvEndpointBalancer.KvEndpoint;
+import com.bwsw.cloudstack.storage.kv.util.TimeManager;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KvEndpointBalancerTest {
+
+    private static final String STORAGE_ID = "e0123777-921b-4e62-a7cc-8135015ca571";
+    private static final List<String> URLS = ImmutableList.of("http://localhost:8080", "http://localhost:8081/", "http://localhost:8082");
+    private static final int FAILURES = 2;
+    private static final long EJECTION_TIME = 1000;
+    private static final long TIMESTAMP = 1539748473600L;
+
+    @Mock
+    private TimeManager _timeManager;
+
+    @Before
+    public void before() {
+        when(_timeManager.getCurrentTimestamp()).thenReturn(TIMESTAMP);
+    }
+
+    @Test
+    public void testEndpoints() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+
+        assertEquals(ImmutableList.of("http://localhost:8080/", "http://localhost:8081/", "http://localhost:8082/"), getUrls(balancer.getEndpoints()));
+    }
+
+    @Test
+    public void testAcquireRoundRobin() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+
+        Set<KvEndpoint> endpoints = new HashSet<>();
+        for (int i = 0; i < URLS.size(); i++) {
+            KvEndpoint endpoint = balancer.acquire(STORAGE_ID, Collections.emptySet());
+            endpoints.add(endpoint);
+            balancer.release(endpoint);
+        }
+        assertEquals(new HashSet<>(balancer.getEndpoints()), endpoints);
+    }
+
+    @Test
+    public void testAcquireLeastOutstanding() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.LEAST_OUTSTANDING);
+        KvEndpoint first = balancer.acquire(STORAGE_ID, Collections.emptySet());
+        KvEndpoint second = balancer.acquire(STORAGE_ID, Collections.emptySet());
+        KvEndpoint third = balancer.acquire(STORAGE_ID, Collections.emptySet());
+        balancer.release(second);
+
+        assertEquals(ImmutableSet.of(first, second, third), new HashSet<>(balancer.getEndpoints()));
+        assertEquals(second, balancer.acquire(STORAGE_ID, Collections.emptySet()));
+        assertEquals(1, second.getOutstanding());
+    }
+
+    @Test
+    public void testAcquireExcluded() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+        KvEndpoint endpoint = balancer.getEndpoints().get(0);
+        Set<KvEndpoint> excluded = ImmutableSet.of(balancer.getEndpoints().get(1), balancer.getEndpoints().get(2));
+
+        for (int i = 0; i < URLS.size(); i++) {
+            assertEquals(endpoint, balancer.acquire(STORAGE_ID, excluded));
+        }
+        assertNull(balancer.acquire(STORAGE_ID, new HashSet<>(balancer.getEndpoints())));
+    }
+
+    @Test
+    public void testAcquireEjected() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+        KvEndpoint ejected = balancer.getEndpoints().get(0);
+        for (int i = 0; i < FAILURES; i++) {
+            balancer.reportFailure(ejected);
+        }
+
+        for (int i = 0; i < URLS.size() * 2; i++) {
+            assertNotEquals(ejected, balancer.acquire(STORAGE_ID, Collections.emptySet()));
+        }
+    }
+
+    @Test
+    public void testAcquireBelowFailureThreshold() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+        KvEndpoint endpoint = balancer.getEndpoints().get(0);
+        balancer.reportFailure(endpoint);
+        balancer.reportSuccess(endpoint);
+        balancer.reportFailure(endpoint);
+
+        Set<KvEndpoint> endpoints = new HashSet<>();
+        for (int i = 0; i < URLS.size(); i++) {
+            endpoints.add(balancer.acquire(STORAGE_ID, Collections.emptySet()));
+        }
+        assertEquals(new HashSet<>(balancer.getEndpoints()), endpoints);
+    }
+
+    @Test
+    public void testAcquireProbe() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+        KvEndpoint ejected = balancer.getEndpoints().get(0);
+        Set<KvEndpoint> excluded = ImmutableSet.of(balancer.getEndpoints().get(1));
+        for (int i = 0; i < FAILURES; i++) {
+            balancer.reportFailure(ejected);
+        }
+        when(_timeManager.getCurrentTimestamp()).thenReturn(TIMESTAMP + EJECTION_TIME);
+
+        // the single probe
+        assertEquals(ejected, balancer.acquire(STORAGE_ID, excluded));
+        assertNotEquals(ejected, balancer.acquire(STORAGE_ID, excluded));
+        assertNotEquals(ejected, balancer.acquire(STORAGE_ID, excluded));
+
+        balancer.reportSuccess(ejected);
+        Set<KvEndpoint> endpoints = new HashSet<>();
+        for (int i = 0; i < URLS.size(); i++) {
+            endpoints.add(balancer.acquire(STORAGE_ID, excluded));
+        }
+        assertEquals(ImmutableSet.of(ejected, balancer.getEndpoints().get(2)), endpoints);
+    }
+
+    @Test
+    public void testAcquireProbeFailure() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+        KvEndpoint ejected = balancer.getEndpoints().get(0);
+        for (int i = 0; i < FAILURES; i++) {
+            balancer.reportFailure(ejected);
+        }
+        when(_timeManager.getCurrentTimestamp()).thenReturn(TIMESTAMP + EJECTION_TIME);
+        Set<KvEndpoint> others = ImmutableSet.of(balancer.getEndpoints().get(1), balancer.getEndpoints().get(2));
+        assertEquals(ejected, balancer.acquire(STORAGE_ID, others));
+
+        balancer.reportFailure(ejected);
+        for (int i = 0; i < URLS.size() * 2; i++) {
+            assertNotEquals(ejected, balancer.acquire(STORAGE_ID, Collections.emptySet()));
+        }
+    }
+
+    @Test
+    public void testAcquireAllEjected() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.ROUND_ROBIN);
+        for (KvEndpoint endpoint : balancer.getEndpoints()) {
+            for (int i = 0; i < FAILURES; i++) {
+                balancer.reportFailure(endpoint);
+            }
+            when(_timeManager.getCurrentTimestamp()).thenReturn(TIMESTAMP + 1);
+        }
+
+        assertEquals(balancer.getEndpoints().get(0), balancer.acquire(STORAGE_ID, Collections.emptySet()));
+    }
+
+    @Test
+    public void testAcquireConsistentHash() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.CONSISTENT_HASH);
+        KvEndpoint preferred = balancer.getRingEndpoints(STORAGE_ID).get(0);
+
+        for (int i = 0; i < URLS.size() * 2; i++) {
+            assertEquals(preferred, balancer.acquire(STORAGE_ID, Collections.emptySet()));
+        }
+    }
+
+    @Test
+    public void testAcquireConsistentHashDistribution() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.CONSISTENT_HASH);
+
+        Set<KvEndpoint> endpoints = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            endpoints.add(balancer.acquire(UUID.randomUUID().toString(), Collections.emptySet()));
+        }
+        assertEquals(new HashSet<>(balancer.getEndpoints()), endpoints);
+    }
+
+    @Test
+    public void testAcquireConsistentHashRemovedUrl() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.CONSISTENT_HASH);
+        KvEndpointBalancer reducedBalancer = new KvEndpointBalancer(URLS.subList(0, URLS.size() - 1), KvEndpointBalancer.Strategy.CONSISTENT_HASH, FAILURES,
+                EJECTION_TIME, _timeManager);
+        String removedUrl = balancer.getEndpoints().get(URLS.size() - 1).getUrl();
+
+        for (int i = 0; i < 100; i++) {
+            String storageId = UUID.randomUUID().toString();
+            String url = balancer.acquire(storageId, Collections.emptySet()).getUrl();
+            if (!url.equals(removedUrl)) {
+                assertEquals(url, reducedBalancer.acquire(storageId, Collections.emptySet()).getUrl());
+            }
+        }
+    }
+
+    @Test
+    public void testAcquireConsistentHashFailover() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.CONSISTENT_HASH);
+        List<KvEndpoint> ringEndpoints = balancer.getRingEndpoints(STORAGE_ID);
+        assertEquals(new HashSet<>(balancer.getEndpoints()), new HashSet<>(ringEndpoints));
+
+        assertEquals(ringEndpoints.get(1), balancer.acquire(STORAGE_ID, Collections.singleton(ringEndpoints.get(0))));
+        for (int i = 0; i < FAILURES; i++) {
+            balancer.reportFailure(ringEndpoints.get(0));
+        }
+        assertEquals(ringEndpoints.get(1), balancer.acquire(STORAGE_ID, Collections.emptySet()));
+        assertEquals(ringEndpoints.get(2), balancer.acquire(STORAGE_ID, Collections.singleton(ringEndpoints.get(1))));
+    }
+
+    @Test
+    public void testAcquireConsistentHashWithoutStorage() {
+        KvEndpointBalancer balancer = getBalancer(KvEndpointBalancer.Strategy.CONSISTENT_HASH);
+
+        Set<KvEndpoint> endpoints = new HashSet<>();
+        for (int i = 0; i < URLS.size(); i++) {
+            endpoints.add(balancer.acquire(null, Collections.emptySet()));
+        }
+        assertEquals(new HashSet<>(balancer.getEndpoints()), endpoints);
+    }
+
+    private KvEndpointBalancer getBalancer(KvEndpointBalancer.Strategy strategy) {
+        return new KvEndpointBalancer(URLS, strategy, FAILURES, EJECTION_TIME, _timeManager);
+    }
+
+    private List<String> getUrls(List<KvEndpoint> endpoints) {
+        return ImmutableList.copyOf(endpoints.stream().map(KvEndpoint::getUrl).iterator());
+    }
+}
@@ -0,0 +1,111 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.search.SearchHit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing of registry search hits from source bytes with parsing from source strings.
+ * <p>
+ * Run {@link #main(String[])} from the test classpath to report throughput and allocation rates per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KvExecutorImplBenchmark {
+
+    private static final String SOURCE = "{\"type\":\"ACCOUNT\",\"account\":\"61d12f36-0201-4035-b6fc-c7f768f583f1\",\"name\":\"storage\","
+            + "\"description\":\"storage description\",\"deleted\":false,\"secret_key\":\"2qdNbdWGxCXRlbwzqSTb2LGkuz8A6GAlZUxXvzzjnMOvgNGZPxUGVcHLPgVsUsBn\","
+            + "\"history_enabled\":true,\"last_updated\":1539767171000}";
+
+    @Param({"1000"})
+    private int hits;
+
+    private final KvExecutorImpl _kvExecutor = new KvExecutorImpl();
+    private final ObjectMapper _objectMapper = new ObjectMapper();
+    private SearchResponse _response;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder page = new StringBuilder("{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},\"hits\":{\"total\":")
+                .append(hits).append(",\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            if (i > 0) {
+                page.append(",");
+            }
+            page.append("{\"_index\":\"storage-registry\",\"_type\":\"_doc\",\"_id\":\"storage-").append(i).append("\",\"_score\":1.0,\"_source\":").append(SOURCE)
+                    .append("}");
+        }
+        page.append("]}}");
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, page.toString())) {
+            _response = SearchResponse.fromXContent(parser);
+        }
+    }
+
+    @Benchmark
+    public List<KvStorage> parseSourceBytes() throws IOException {
+        return _kvExecutor.parseResults(_response, KvStorage.class);
+    }
+
+    /**
+     * Parses hits the way they were parsed before reading source bytes directly.
+     */
+    @Benchmark
+    public List<KvStorage> parseSourceStrings() throws IOException {
+        List<KvStorage> results = new ArrayList<>();
+        for (SearchHit searchHit : _response.getHits()) {
+            KvStorage result = _objectMapper.readValue(searchHit.getSourceAsString(), KvStorage.class);
+            result.setId(searchHit.getId());
+            results.add(result);
+        }
+        return results;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KvExecutorImplBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,667 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.entity.ByQueryResponse;
+import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.response.KvStorageResponse;
+import com.cloud.utils.exception.CloudRuntimeException;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.delete;
+import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KvExecutorImplTest {
+
+    private static final String REGISTRY_INDEX = "storage-registry";
+    private static final String STORAGE_INDEX = "storage-e0123777-921b-4e62-a7cc-8135015ca571";
+    private static final String HISTORY_INDEX = "history-storage-e0123777-921b-4e62-a7cc-8135015ca571";
+    private static final String TYPE = "_doc";
+    private static final String ID = "e0123777-921b-4e62-a7cc-8135015ca571";
+    private static final String SOURCE = "{\"type\":\"VM\",\"deleted\":false,\"secret_key\":\"vm secret\",\"history_enabled\":true}";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String REGISTRY_DOCUMENT_PATH = "/" + REGISTRY_INDEX + "/" + TYPE + "/" + ID;
+    private static final String INDEX_RESPONSE =
+            "{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE + "\",\"_id\":\"" + ID + "\",\"_version\":1,\"result\":\"created\","
+                    + "\"_shards\":{\"total\":2,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1}";
+    private static final String GET_RESPONSE =
+            "{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE + "\",\"_id\":\"" + ID + "\",\"_version\":1,\"found\":true,\"_source\":" + SOURCE + "}";
+    private static final String GET_NOT_FOUND_RESPONSE = "{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE + "\",\"_id\":\"" + ID + "\",\"found\":false}";
+    private static final String DELETE_BY_QUERY_PATH = "/storage-data-shared-0/_delete_by_query";
+    private static final String DELETE_BY_QUERY_BODY = "{\"query\":{\"terms\":{\"storage_id\":[\"" + ID + "\"]}}}";
+    private static final String SEARCH_PATH = "/" + REGISTRY_INDEX + "/_search";
+    private static final String SCROLL_PATH = "/_search/scroll";
+    private static final String SCROLL_KEEP_ALIVE = "1m";
+    private static final String SERVER_ERROR_RESPONSE = "{\"error\":{\"type\":\"exception\",\"reason\":\"server error\"},\"status\":500}";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort(), true);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private KvExecutorImpl _kvExecutor = new KvExecutorImpl();
+
+    private RestHighLevelClient _client;
+
+    @Before
+    public void before() {
+        _client = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", wireMockRule.port())));
+    }
+
+    @After
+    public void after() throws IOException {
+        _client.close();
+    }
+
+    @Test
+    public void testCreate() throws IOException {
+        stubFor(put(urlPathEqualTo(REGISTRY_DOCUMENT_PATH))
+                .willReturn(aResponse().withStatus(HttpStatus.SC_CREATED).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(INDEX_RESPONSE)));
+        stubCreateIndex(STORAGE_INDEX);
+        stubCreateIndex(HISTORY_INDEX);
+
+        _kvExecutor.create(_client, getCreateRequest());
+
+        verify(putRequestedFor(urlPathEqualTo(REGISTRY_DOCUMENT_PATH)));
+        verify(putRequestedFor(urlPathEqualTo("/" + STORAGE_INDEX)));
+        verify(putRequestedFor(urlPathEqualTo("/" + HISTORY_INDEX)));
+    }
+
+    @Test
+    public void testCreateIndexIOException() throws IOException {
+        stubFor(put(urlPathEqualTo(REGISTRY_DOCUMENT_PATH))
+                .willReturn(aResponse().withStatus(HttpStatus.SC_CREATED).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(INDEX_RESPONSE)));
+        stubFor(put(urlPathEqualTo("/" + STORAGE_INDEX)).willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+        stubCreateIndex(HISTORY_INDEX);
+
+        // indices are created on demand if creation fails because of I/O errors
+        _kvExecutor.create(_client, getCreateRequest());
+
+        verify(putRequestedFor(urlPathEqualTo("/" + HISTORY_INDEX)));
+    }
+
+    @Test
+    public void testCreateIndexServerError() throws IOException {
+        stubFor(put(urlPathEqualTo(REGISTRY_DOCUMENT_PATH))
+                .willReturn(aResponse().withStatus(HttpStatus.SC_CREATED).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(INDEX_RESPONSE)));
+        stubFor(put(urlPathEqualTo("/" + STORAGE_INDEX)).willReturn(
+                aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(SERVER_ERROR_RESPONSE)));
+        stubCreateIndex(HISTORY_INDEX);
+
+        expectedException.expect(ElasticsearchStatusException.class);
+        _kvExecutor.create(_client, getCreateRequest());
+    }
+
+    @Test
+    public void testCreateRegistryServerError() throws IOException {
+        stubFor(put(urlPathEqualTo(REGISTRY_DOCUMENT_PATH)).willReturn(
+                aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(SERVER_ERROR_RESPONSE)));
+
+        try {
+            _kvExecutor.create(_client, getCreateRequest());
+        } catch (ElasticsearchStatusException e) {
+            verify(0, putRequestedFor(urlPathEqualTo("/" + STORAGE_INDEX)));
+            verify(0, putRequestedFor(urlPathEqualTo("/" + HISTORY_INDEX)));
+            return;
+        }
+        throw new AssertionError("Registry failure is not reported");
+    }
+
+    @Test
+    public void testGetAsync() {
+        stubFor(get(urlPathEqualTo(REGISTRY_DOCUMENT_PATH)).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(GET_RESPONSE)));
+
+        KvStorage storage = _kvExecutor.getAsync(_client, new GetRequest(REGISTRY_INDEX, TYPE, ID), KvStorage.class).join();
+
+        assertNotNull(storage);
+        assertEquals(ID, storage.getId());
+        assertEquals(KvStorage.KvStorageType.VM, storage.getType());
+        assertEquals("vm secret", storage.getSecretKey());
+        assertEquals(Boolean.FALSE, storage.getDeleted());
+        assertEquals(Boolean.TRUE, storage.getHistoryEnabled());
+    }
+
+    @Test
+    public void testGetAsyncNotFound() {
+        stubFor(get(urlPathEqualTo(REGISTRY_DOCUMENT_PATH))
+                .willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(GET_NOT_FOUND_RESPONSE)));
+
+        assertNull(_kvExecutor.getAsync(_client, new GetRequest(REGISTRY_INDEX, TYPE, ID), KvStorage.class).join());
+    }
+
+    @Test
+    public void testGetAsyncIOException() {
+        stubFor(get(urlPathEqualTo(REGISTRY_DOCUMENT_PATH)).willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+
+        expectedException.expect(CompletionException.class);
+        expectedException.expectCause(instanceOf(IOException.class));
+        _kvExecutor.getAsync(_client, new GetRequest(REGISTRY_INDEX, TYPE, ID), KvStorage.class).join();
+    }
+
+    @Test
+    public void testByQuery() throws IOException {
+        stubByQuery("{\"took\":5,\"timed_out\":false,\"total\":10,\"deleted\":10,\"batches\":1,\"version_conflicts\":0,\"noops\":0,"
+                + "\"retries\":{\"bulk\":0,\"search\":0},\"failures\":[]}");
+
+        ByQueryResponse response = _kvExecutor.byQuery(_client, getByQueryRequest());
+
+        assertEquals(10, response.getTotal());
+        assertEquals(10, response.getDeleted());
+        assertEquals(0, response.getVersionConflicts());
+        assertTrue(response.getFailures().isEmpty());
+        assertTrue(response.isComplete());
+        verify(postRequestedFor(urlPathEqualTo(DELETE_BY_QUERY_PATH)).withQueryParam("conflicts", equalTo("proceed")).withRequestBody(equalTo(DELETE_BY_QUERY_BODY)));
+    }
+
+    @Test
+    public void testByQueryVersionConflicts() throws IOException {
+        stubByQuery("{\"total\":10,\"deleted\":8,\"version_conflicts\":2,\"failures\":[]}");
+
+        ByQueryResponse response = _kvExecutor.byQuery(_client, getByQueryRequest());
+
+        assertEquals(8, response.getDeleted());
+        assertEquals(2, response.getVersionConflicts());
+        assertFalse(response.isComplete());
+    }
+
+    @Test
+    public void testByQueryFailures() throws IOException {
+        stubByQuery("{\"total\":10,\"deleted\":8,\"version_conflicts\":0,\"failures\":[{\"shard\":0,\"reason\":{\"type\":\"exception\"}}]}");
+
+        ByQueryResponse response = _kvExecutor.byQuery(_client, getByQueryRequest());
+
+        assertEquals(1, response.getFailures().size());
+        assertFalse(response.isComplete());
+    }
+
+    @Test
+    public void testByQueryServerError() throws IOException {
+        stubFor(post(urlPathEqualTo(DELETE_BY_QUERY_PATH)).willReturn(
+                aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(SERVER_ERROR_RESPONSE)));
+
+        expectedException.expect(ResponseException.class);
+        _kvExecutor.byQuery(_client, getByQueryRequest());
+    }
+
+    @Test
+    public void testByQueryAsync() {
+        stubByQuery("{\"total\":10,\"deleted\":8,\"version_conflicts\":2,\"failures\":[]}");
+
+        ByQueryResponse response = _kvExecutor.byQueryAsync(_client, getByQueryRequest()).join();
+
+        assertEquals(10, response.getTotal());
+        assertEquals(8, response.getDeleted());
+        assertFalse(response.isComplete());
+        verify(postRequestedFor(urlPathEqualTo(DELETE_BY_QUERY_PATH)).withQueryParam("conflicts", equalTo("proceed")).withRequestBody(equalTo(DELETE_BY_QUERY_BODY)));
+    }
+
+    @Test
+    public void testByQueryAsyncServerError() {
+        stubFor(post(urlPathEqualTo(DELETE_BY_QUERY_PATH)).willReturn(
+                aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(SERVER_ERROR_RESPONSE)));
+
+        expectedException.expect(CompletionException.class);
+        expectedException.expectCause(instanceOf(ResponseException.class));
+        _kvExecutor.byQueryAsync(_client, getByQueryRequest()).join();
+    }
+
+    @Test
+    public void testBulkAsync() {
+        stubFor(post(urlPathEqualTo("/_bulk")).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(
+                "{\"took\":3,\"errors\":true,\"items\":[" + "{\"delete\":{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE + "\",\"_id\":\"" + ID
+                        + "\",\"_version\":2,\"result\":\"deleted\",\"status\":200}}," + "{\"delete\":{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE
+                        + "\",\"_id\":\"failed\",\"status\":500,\"error\":{\"type\":\"exception\",\"reason\":\"server error\"}}}]}")));
+        BulkRequest request = new BulkRequest().add(new DeleteRequest(REGISTRY_INDEX, TYPE, ID)).add(new DeleteRequest(REGISTRY_INDEX, TYPE, "failed"));
+
+        Map<String, String> failures = _kvExecutor.bulkAsync(_client, request).join();
+
+        assertEquals(Collections.singleton("failed"), failures.keySet());
+        verify(postRequestedFor(urlPathEqualTo("/_bulk")).withRequestBody(containing(ID)));
+    }
+
+    @Test
+    public void testBulkAsyncIOException() {
+        stubFor(post(urlPathEqualTo("/_bulk")).willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+
+        expectedException.expect(CompletionException.class);
+        expectedException.expectCause(instanceOf(IOException.class));
+        _kvExecutor.bulkAsync(_client, new BulkRequest().add(new DeleteRequest(REGISTRY_INDEX, TYPE, ID))).join();
+    }
+
+    @Test
+    public void testDeleteIndicesAsync() {
+        stubFor(delete(urlPathEqualTo("/" + STORAGE_INDEX + "," + HISTORY_INDEX))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody("{\"acknowledged\":true}")));
+
+        assertTrue(_kvExecutor.deleteIndicesAsync(_client, new DeleteIndexRequest(STORAGE_INDEX, HISTORY_INDEX)).join());
+        verify(deleteRequestedFor(urlPathEqualTo("/" + STORAGE_INDEX + "," + HISTORY_INDEX)));
+    }
+
+    @Test
+    public void testDeleteIndicesAsyncNotFound() {
+        stubFor(delete(urlPathEqualTo("/" + STORAGE_INDEX)).willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE)
+                .withBody("{\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"},\"status\":404}")));
+
+        // missing indices are deleted already
+        assertTrue(_kvExecutor.deleteIndicesAsync(_client, new DeleteIndexRequest(STORAGE_INDEX)).join());
+    }
+
+    @Test
+    public void testDeleteIndicesAsyncServerError() {
+        stubFor(delete(urlPathEqualTo("/" + STORAGE_INDEX)).willReturn(
+                aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(SERVER_ERROR_RESPONSE)));
+
+        assertFalse(_kvExecutor.deleteIndicesAsync(_client, new DeleteIndexRequest(STORAGE_INDEX)).join());
+    }
+
+    @Test
+    public void testScroll() throws Exception {
+        stubSearch(null, "scroll0", "first");
+        stubScroll("scroll0", "scroll1", "second");
+        stubScroll("scroll1", "scroll2");
+        stubClearScroll();
+        List<String> ids = new ArrayList<>();
+
+        _kvExecutor.scroll(_client, getScrollRequest(), 1, KvStorage.class, storages -> storages.forEach(storage -> ids.add(storage.getId())));
+
+        assertEquals(ImmutableList.of("first", "second"), ids);
+        verify(postRequestedFor(urlPathEqualTo(SEARCH_PATH)).withQueryParam("scroll", equalTo(SCROLL_KEEP_ALIVE)));
+        verify(postRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id", equalTo("scroll0")))
+                .withRequestBody(matchingJsonPath("$.scroll", equalTo(SCROLL_KEEP_ALIVE))));
+        verify(postRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id", equalTo("scroll1"))));
+        verify(1, deleteRequestedFor(urlPathEqualTo(SCROLL_PATH)));
+        verify(deleteRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id[0]", equalTo("scroll2"))));
+    }
+
+    @Test
+    public void testScrollIdsSlices() throws Exception {
+        stubSearch(0, "slice0scroll0", "first");
+        stubSearch(1, "slice1scroll0", "second");
+        stubScroll("slice0scroll0", "slice0scroll1");
+        stubScroll("slice1scroll0", "slice1scroll1");
+        stubClearScroll();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        _kvExecutor.scrollIds(_client, getScrollRequest(), 2, ids::addAll);
+
+        assertEquals(ImmutableSet.of("first", "second"), ids);
+        for (int i = 0; i < 2; i++) {
+            verify(postRequestedFor(urlPathEqualTo(SEARCH_PATH)).withQueryParam("scroll", equalTo(SCROLL_KEEP_ALIVE))
+                    .withRequestBody(matchingJsonPath("$.slice[?(@.id == " + i + " && @.max == 2)]")));
+            verify(deleteRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id[0]", equalTo("slice" + i + "scroll1"))));
+        }
+    }
+
+    @Test
+    public void testScrollConsumerFailure() throws Exception {
+        stubSearch(null, "scroll0", "first");
+        stubClearScroll();
+        IllegalStateException exception = new IllegalStateException();
+
+        try {
+            _kvExecutor.scroll(_client, getScrollRequest(), 1, KvStorage.class, storages -> {
+                throw exception;
+            });
+            fail("Consumer failure is not reported");
+        } catch (IllegalStateException e) {
+            assertSame(exception, e);
+        }
+        verify(0, postRequestedFor(urlPathEqualTo(SCROLL_PATH)));
+        verify(deleteRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id[0]", equalTo("scroll0"))));
+    }
+
+    @Test
+    public void testScrollSearchScrollFailure() throws Exception {
+        stubSearch(null, "scroll0", "first");
+        stubFor(post(urlPathEqualTo(SCROLL_PATH)).willReturn(
+                aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR).withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(SERVER_ERROR_RESPONSE)));
+        stubClearScroll();
+
+        try {
+            _kvExecutor.scrollIds(_client, getScrollRequest(), 1, ids -> {
+            });
+            fail("Scroll failure is not reported");
+        } catch (ElasticsearchStatusException e) {
+            assertEquals(RestStatus.INTERNAL_SERVER_ERROR, e.status());
+        }
+        verify(deleteRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id[0]", equalTo("scroll0"))));
+    }
+
+    @Test
+    public void testScrollSlicesFailures() throws Exception {
+        stubSearch(0, "slice0scroll0", "first");
+        stubSearch(1, "slice1scroll0", "second");
+        stubClearScroll();
+
+        try {
+            _kvExecutor.scrollIds(_client, getScrollRequest(), 2, ids -> {
+                throw new IllegalStateException(ids.get(0));
+            });
+            fail("Slice failures are not reported");
+        } catch (IllegalStateException e) {
+            // failures of all slices are reported
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals(ImmutableSet.of("first", "second"), ImmutableSet.of(e.getMessage(), e.getSuppressed()[0].getMessage()));
+        }
+        verify(deleteRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id[0]", equalTo("slice0scroll0"))));
+        verify(deleteRequestedFor(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id[0]", equalTo("slice1scroll0"))));
+    }
+
+    @Test
+    public void testScrollCleanupProjection() throws Exception {
+        KvRequestBuilderImpl kvRequestBuilder = new KvRequestBuilderImpl();
+        stubProjectedSearch("scroll0", ImmutableMap.of("dedicated", "{\"history_enabled\":true}", "shared",
+                "{\"history_enabled\":false,\"layout\":\"SHARED\",\"shared_index\":1}"));
+        stubScroll("scroll0", "scroll1");
+        stubClearScroll();
+        List<KvStorage> storages = new ArrayList<>();
+
+        _kvExecutor.scroll(_client, kvRequestBuilder.getDeletedStoragesRequest(10, 60000), 1, KvStorage.class, storages::addAll);
+
+        verify(postRequestedFor(urlPathEqualTo(SEARCH_PATH))
+                .withRequestBody(matchingJsonPath("$._source.includes", equalToJson("[\"history_enabled\",\"layout\",\"shared_index\"]"))));
+        assertEquals(2, storages.size());
+        KvStorage dedicated = storages.get(0);
+        KvStorage shared = storages.get(1);
+        assertEquals("dedicated", dedicated.getId());
+        assertFalse(dedicated.isShared());
+        assertArrayEquals(new String[] {"storage-data-dedicated", "storage-history-dedicated"},
+                kvRequestBuilder.getDeleteIndicesRequest(ImmutableList.of(dedicated)).indices());
+        assertEquals("shared", shared.getId());
+        assertTrue(shared.isShared());
+        assertEquals("storage-data-shared-1/_delete_by_query", kvRequestBuilder.getDeleteSharedStoragesDataRequest(ImmutableList.of(shared)).getEndpoint());
+        assertEquals(ImmutableList.of("dedicated", "shared"), kvRequestBuilder.getRegistryDeleteBulkRequest(storages).requests().stream().map(DocWriteRequest::id)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testScrollOwnerProjection() throws Exception {
+        KvRequestBuilderImpl kvRequestBuilder = new KvRequestBuilderImpl();
+        stubProjectedSearch("scroll0", ImmutableMap.of(ID, "{\"type\":\"ACCOUNT\",\"account\":\"account uuid\"}", "vm uuid", "{\"type\":\"VM\"}"));
+        stubScroll("scroll0", "scroll1");
+        stubClearScroll();
+        List<KvStorage> storages = new ArrayList<>();
+
+        _kvExecutor.scroll(_client, kvRequestBuilder.getAccountStoragesRequest(10, 60000), 1, KvStorage.class, storages::addAll);
+
+        verify(postRequestedFor(urlPathEqualTo(SEARCH_PATH)).withRequestBody(matchingJsonPath("$._source.includes", equalToJson("[\"type\",\"account\"]"))));
+        assertEquals(2, storages.size());
+        // owners are retrieved by the account uuid for account storages and by the storage id for VM storages
+        assertEquals(KvStorage.KvStorageType.ACCOUNT, storages.get(0).getType());
+        assertEquals(ID, storages.get(0).getId());
+        assertEquals("account uuid", storages.get(0).getAccount());
+        assertEquals(KvStorage.KvStorageType.VM, storages.get(1).getType());
+        assertEquals("vm uuid", storages.get(1).getId());
+    }
+
+    @Test
+    public void testScrollIdsIdProjection() throws Exception {
+        KvRequestBuilderImpl kvRequestBuilder = new KvRequestBuilderImpl();
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("first", null);
+        sources.put("second", null);
+        stubProjectedSearch("scroll0", sources);
+        stubScroll("scroll0", "scroll1");
+        stubClearScroll();
+        List<String> ids = new ArrayList<>();
+
+        _kvExecutor.scrollIds(_client, kvRequestBuilder.getExistingStoragesRequest(10, 60000), 1, ids::addAll);
+
+        verify(postRequestedFor(urlPathEqualTo(SEARCH_PATH)).withRequestBody(matchingJsonPath("$._source", equalTo("false"))));
+        assertEquals(ImmutableList.of("first", "second"), ids);
+    }
+
+    @Test
+    public void testGetSliceRequests() {
+        SearchRequest request = getScrollRequest();
+
+        List<SearchRequest> sliceRequests = _kvExecutor.getSliceRequests(request, 3);
+
+        assertEquals(3, sliceRequests.size());
+        for (int i = 0; i < sliceRequests.size(); i++) {
+            SearchRequest sliceRequest = sliceRequests.get(i);
+            assertArrayEquals(request.indices(), sliceRequest.indices());
+            assertEquals(request.scroll(), sliceRequest.scroll());
+            assertEquals(new SliceBuilder(i, 3), sliceRequest.source().slice());
+            assertEquals(request.source().size(), sliceRequest.source().size());
+        }
+        assertNull(request.source().slice());
+    }
+
+    @Test
+    public void testGetEmptySource() throws IOException {
+        stubFor(get(urlPathEqualTo(REGISTRY_DOCUMENT_PATH)).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE)
+                .withBody("{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE + "\",\"_id\":\"" + ID + "\",\"_version\":1,\"found\":true,\"_source\":{}}")));
+
+        KvStorage storage = _kvExecutor.get(_client, new GetRequest(REGISTRY_INDEX, TYPE, ID), KvStorage.class);
+
+        // invalid documents are rejected by callers
+        assertNotNull(storage);
+        assertEquals(ID, storage.getId());
+        assertNull(storage.getType());
+        assertNull(storage.getDeleted());
+    }
+
+    @Test
+    public void testGetMissingSource() throws IOException {
+        stubFor(get(urlPathEqualTo(REGISTRY_DOCUMENT_PATH)).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE)
+                .withBody("{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE + "\",\"_id\":\"" + ID + "\",\"_version\":1,\"found\":true}")));
+
+        expectedException.expect(CloudRuntimeException.class);
+        expectedException.expectMessage("Empty result for get operation");
+        _kvExecutor.get(_client, new GetRequest(REGISTRY_INDEX, TYPE, ID), KvStorage.class);
+    }
+
+    @Test
+    public void testSearchMissingSource() throws IOException {
+        stubFor(post(urlPathEqualTo(SEARCH_PATH)).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(
+                "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},\"hits\":{\"total\":1,\"max_score\":1.0,"
+                        + "\"hits\":[{\"_index\":\"" + REGISTRY_INDEX + "\",\"_type\":\"" + TYPE + "\",\"_id\":\"" + ID + "\",\"_score\":1.0}]}}")));
+
+        expectedException.expect(CloudRuntimeException.class);
+        expectedException.expectMessage("Empty document source");
+        _kvExecutor.search(_client, new SearchRequest(REGISTRY_INDEX).source(new SearchSourceBuilder().size(10)), KvStorage.class);
+    }
+
+    @Test
+    public void testSearchEntityTypes() throws IOException {
+        stubSearch(null, "scroll0", "first", "second");
+        SearchRequest request = new SearchRequest(REGISTRY_INDEX).source(new SearchSourceBuilder().size(10));
+
+        List<KvStorage> storages = _kvExecutor.search(_client, request, KvStorage.class).getResponses();
+        List<KvStorageResponse> responses = _kvExecutor.search(_client, request, KvStorageResponse.class).getResponses();
+        _kvExecutor.search(_client, request, KvStorage.class);
+
+        assertEquals(2, storages.size());
+        assertEquals(2, responses.size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(KvStorage.class, storages.get(i).getClass());
+            assertEquals(KvStorageResponse.class, responses.get(i).getClass());
+            assertEquals(storages.get(i).getId(), responses.get(i).getId());
+            assertEquals("vm secret", storages.get(i).getSecretKey());
+            assertEquals("vm secret", responses.get(i).getSecretKey());
+        }
+        assertEquals(ImmutableList.of("first", "second"), ImmutableList.of(storages.get(0).getId(), storages.get(1).getId()));
+        // readers are created once per entity class
+        Map<?, ?> objectReaders = (Map<?, ?>)ReflectionTestUtils.getField(_kvExecutor, "_objectReaders");
+        assertEquals(ImmutableSet.of(KvStorage.class, KvStorageResponse.class), objectReaders.keySet());
+    }
+
+    @Test
+    public void testParseResultSourceSlice() throws IOException {
+        byte[] source = SOURCE.getBytes(StandardCharsets.UTF_8);
+        byte[] page = new byte[source.length + 20];
+        System.arraycopy(source, 0, page, 10, source.length);
+
+        KvStorage storage = _kvExecutor.parseResult(new BytesArray(page, 10, source.length), KvStorage.class, ID);
+
+        assertEquals(ID, storage.getId());
+        assertEquals(KvStorage.KvStorageType.VM, storage.getType());
+        assertEquals("vm secret", storage.getSecretKey());
+    }
+
+    @Test
+    public void testParseResultEmptySource() throws IOException {
+        expectedException.expect(CloudRuntimeException.class);
+        expectedException.expectMessage("Empty document source");
+        _kvExecutor.parseResult(null, KvStorage.class, ID);
+    }
+
+    private void stubCreateIndex(String index) {
+        stubFor(put(urlPathEqualTo("/" + index)).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE)
+                .withBody("{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"" + index + "\"}")));
+    }
+
+    private void stubByQuery(String response) {
+        stubFor(post(urlPathEqualTo(DELETE_BY_QUERY_PATH)).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(response)));
+    }
+
+    private Request getByQueryRequest() {
+        return new Request("POST", DELETE_BY_QUERY_PATH, Collections.singletonMap("conflicts", "proceed"),
+                new StringEntity(DELETE_BY_QUERY_BODY, ContentType.APPLICATION_JSON));
+    }
+
+    private void stubSearch(Integer slice, String scrollId, String... ids) {
+        stubFor(post(urlPathEqualTo(SEARCH_PATH)).withRequestBody(slice != null ? matchingJsonPath("$.slice[?(@.id == " + slice + ")]") : matchingJsonPath("$.size"))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(getSearchResponse(scrollId, ids))));
+    }
+
+    private void stubScroll(String scrollId, String nextScrollId, String... ids) {
+        stubFor(post(urlPathEqualTo(SCROLL_PATH)).withRequestBody(matchingJsonPath("$.scroll_id", equalTo(scrollId)))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(getSearchResponse(nextScrollId, ids))));
+    }
+
+    private void stubClearScroll() {
+        stubFor(delete(urlPathEqualTo(SCROLL_PATH))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody("{\"succeeded\":true,\"num_freed\":1}")));
+    }
+
+    /**
+     * Stubs the search returning documents with sources limited to projected fields, null sources are omitted.
+     */
+    private void stubProjectedSearch(String scrollId, Map<String, String> sources) {
+        stubFor(post(urlPathEqualTo(SEARCH_PATH)).willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(getSearchResponse(scrollId, sources))));
+    }
+
+    private String getSearchResponse(String scrollId, String... ids) {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (String id : ids) {
+            sources.put(id, SOURCE);
+        }
+        return getSearchResponse(scrollId, sources);
+    }
+
+    private String getSearchResponse(String scrollId, Map<String, String> sources) {
+        StringBuilder hits = new StringBuilder();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            if (hits.length() > 0) {
+                hits.append(",");
+            }
+            hits.append("{\"_index\":\"").append(REGISTRY_INDEX).append("\",\"_type\":\"").append(TYPE).append("\",\"_id\":\"").append(source.getKey())
+                    .append("\",\"_score\":1.0");
+            if (source.getValue() != null) {
+                hits.append(",\"_source\":").append(source.getValue());
+            }
+            hits.append("}");
+        }
+        return "{\"_scroll_id\":\"" + scrollId + "\",\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+                + "\"hits\":{\"total\":" + sources.size() + ",\"max_score\":1.0,\"hits\":[" + hits + "]}}";
+    }
+
+    private SearchRequest getScrollRequest() {
+        SearchRequest request = new SearchRequest(REGISTRY_INDEX).source(new SearchSourceBuilder().size(10));
+        request.scroll(TimeValue.timeValueMinutes(1));
+        return request;
+    }
+
+    private CreateStorageRequest getCreateRequest() {
+        IndexRequest registryRequest = new IndexRequest(REGISTRY_INDEX, TYPE, ID).source(SOURCE, XContentType.JSON);
+        return new CreateStorageRequest(registryRequest, new CreateIndexRequest(STORAGE_INDEX), new CreateIndexRequest(HISTORY_INDEX));
+    }
+}
@@ -0,0 +1,156 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.response.KvKeys;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares streaming decoding of multiple key responses with parsing response strings into untyped trees.
+ * <p>
+ * Run {@link #main(String[])} from the test classpath to report throughput and allocation rates per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KvOperationManagerImplBenchmark {
+
+    @Param({"1000", "100000"})
+    private int keys;
+
+    private final ObjectMapper _objectMapper = new ObjectMapper();
+    private KvOperationManagerImpl _kvOperationManager;
+    private HttpEntity _values;
+    private HttpEntity _results;
+    private HttpEntity _keyList;
+    private HttpEntity _keyPage;
+
+    @Setup
+    public void setup() throws IOException {
+        _kvOperationManager = new KvOperationManagerImpl("http://localhost:8080/", null, false, 0);
+        Map<String, String> values = new LinkedHashMap<>();
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        List<String> keyList = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            String key = "key" + i;
+            values.put(key, "value of the key " + i);
+            results.put(key, i % 10 != 0);
+            keyList.add(key);
+        }
+        Map<String, Object> keyPage = new LinkedHashMap<>();
+        keyPage.put("items", keyList);
+        keyPage.put("cursor", "a2V5OTk5OTk=");
+        _values = getEntity(values);
+        _results = getEntity(results);
+        _keyList = getEntity(keyList);
+        _keyPage = getEntity(keyPage);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        _kvOperationManager.close();
+    }
+
+    @Benchmark
+    public Map<String, String> readValuesStreaming() throws IOException {
+        return _kvOperationManager.readMap(_values, keys, _kvOperationManager::readString);
+    }
+
+    @Benchmark
+    public Map<String, String> readValuesTree() throws IOException {
+        return readTree(_values, Map.class);
+    }
+
+    @Benchmark
+    public Map<String, Boolean> readResultsStreaming() throws IOException {
+        return _kvOperationManager.readMap(_results, keys, _kvOperationManager::readBoolean);
+    }
+
+    @Benchmark
+    public Map<String, Boolean> readResultsTree() throws IOException {
+        return readTree(_results, Map.class);
+    }
+
+    @Benchmark
+    public List<String> readKeysStreaming() throws IOException {
+        return _kvOperationManager.readList(_keyList, _kvOperationManager::readString);
+    }
+
+    @Benchmark
+    public List<String> readKeysTree() throws IOException {
+        return readTree(_keyList, List.class);
+    }
+
+    @Benchmark
+    public KvKeys readKeyPageStreaming() throws IOException {
+        return _kvOperationManager.readKeyPage(_keyPage, keys);
+    }
+
+    @Benchmark
+    public KvKeys readKeyPageTree() throws IOException {
+        Map<String, Object> page = readTree(_keyPage, Map.class);
+        @SuppressWarnings("unchecked") List<String> items = (List<String>)page.get("items");
+        return new KvKeys(items, (String)page.get("cursor"));
+    }
+
+    /**
+     * Parses the response the way multiple key responses were parsed before streaming decoding.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T readTree(HttpEntity entity, Class<?> valueClass) throws IOException {
+        return (T)_objectMapper.readValue(EntityUtils.toString(entity, StandardCharsets.UTF_8), valueClass);
+    }
+
+    private HttpEntity getEntity(Object value) throws IOException {
+        return new ByteArrayEntity(_objectMapper.writeValueAsBytes(value));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KvOperationManagerImplBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -42,6 +42,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.apache.cloudstack.api.ServerApiException;
 import org.apache.http.HttpStatus;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -49,17 +53,28 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
 import static com.github.tomakehurst.wiremock.client.WireMock.delete;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
@@ -68,9 +83,12 @@ import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.put;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.when;
@@ -87,7 +105,13 @@ public class KvOperationManagerImplTest {
     private static final Map<String, String> DATA = ImmutableMap.of("key1", "one", "key2", "two");
     private static final String CONTENT_TYPE_HEADER = "Content-Type";
     private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String GZIP_ENCODING = "gzip";
     private static final String SCROLL_ID = "scroll id";
+    private static final String PREFIX = "key/";
+    private static final String CURSOR = "cursor==";
+    private static final int PAGE_SIZE = 2;
     private static final long TIMEOUT = 120000;
     private static final Map<String, Object> SCROLL_REQUEST = ImmutableMap.of("scrollId", SCROLL_ID, "timeout", TIMEOUT);
     private static final KvHistoryResult KV_HISTORY_RESULT;
@@ -127,6 +151,57 @@ public class KvOperationManagerImplTest {
         kvOperationManager = new KvOperationManagerImpl(String.format(URL_TEMPLATE, wireMockRule.port()), _exceptionFactory);
     }
 
+    @After
+    public void after() throws IOException {
+        kvOperationManager.close();
+    }
+
+    @Test
+    public void testConnectionManager() {
+        Object connectionManagerObject = ReflectionTestUtils.getField(kvOperationManager, "_connectionManager");
+        assertTrue(connectionManagerObject instanceof PoolingHttpClientConnectionManager);
+        PoolingHttpClientConnectionManager connectionManager = (PoolingHttpClientConnectionManager)connectionManagerObject;
+        assertEquals(KvStorageManager.KvStorageMaxConnections.value().intValue(), connectionManager.getMaxTotal());
+        assertEquals(KvStorageManager.KvStorageMaxConnectionsPerRoute.value().intValue(), connectionManager.getDefaultMaxPerRoute());
+        assertEquals(KvStorageManager.KvStorageConnectionValidationInterval.value().intValue(), connectionManager.getValidateAfterInactivity());
+    }
+
+    @Test
+    public void testAsyncConnectionManager() {
+        Object connectionManagerObject = ReflectionTestUtils.getField(kvOperationManager, "_asyncConnectionManager");
+        assertTrue(connectionManagerObject instanceof PoolingNHttpClientConnectionManager);
+        PoolingNHttpClientConnectionManager connectionManager = (PoolingNHttpClientConnectionManager)connectionManagerObject;
+        assertEquals(KvStorageManager.KvStorageMaxConnections.value().intValue(), connectionManager.getMaxTotal());
+        assertEquals(KvStorageManager.KvStorageMaxConnectionsPerRoute.value().intValue(), connectionManager.getDefaultMaxPerRoute());
+    }
+
+    @Test
+    public void testEvictAsyncConnections() {
+        stubFor(getGetByKeyPath().willReturn(aResponse().withHeader("Content-Type", "text/plain").withBody(VALUE)));
+        PoolingNHttpClientConnectionManager connectionManager = (PoolingNHttpClientConnectionManager)ReflectionTestUtils
+                .getField(kvOperationManager, "_asyncConnectionManager");
+
+        join(kvOperationManager.getAsync(STORAGE, KEY));
+        kvOperationManager.evictAsyncConnections();
+        assertEquals(1, connectionManager.getTotalStats().getAvailable());
+
+        ReflectionTestUtils.setField(kvOperationManager, "_idleTimeout", 0);
+        kvOperationManager.evictAsyncConnections();
+        assertEquals(0, connectionManager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        CloseableHttpAsyncClient asyncHttpClient = (CloseableHttpAsyncClient)ReflectionTestUtils.getField(kvOperationManager, "_asyncHttpClient");
+        ScheduledExecutorService asyncConnectionEvictor = (ScheduledExecutorService)ReflectionTestUtils.getField(kvOperationManager, "_asyncConnectionEvictor");
+        assertTrue(asyncHttpClient.isRunning());
+
+        kvOperationManager.close();
+        assertFalse(asyncHttpClient.isRunning());
+        assertTrue(asyncConnectionEvictor.isShutdown());
+        assertTrue(kvOperationManager.getAsync(STORAGE, KEY).isCompletedExceptionally());
+    }
+
     @Test
     public void testGetByKey() {
         stubFor(getGetByKeyPath().willReturn(aResponse().withHeader("Content-Type", "text/plain").withBody(VALUE)));
@@ -203,6 +278,23 @@ public class KvOperationManagerImplTest {
         testException(this::getGetByKeysPath, getByKeysSupplier());
     }
 
+    @Test
+    public void testGetByKeysNullValue() {
+        stubFor(getGetByKeysPath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody("{\"key1\":\"one\",\"key2\":null}")));
+
+        KvOperationResponse response = kvOperationManager.get(STORAGE, DATA.keySet());
+        assertTrue(response instanceof KvData);
+        Map<String, String> expected = new HashMap<>();
+        expected.put("key1", "one");
+        expected.put("key2", null);
+        assertEquals(expected, ((KvData)response).getItems());
+    }
+
+    @Test
+    public void testGetByKeysMalformedResponse() {
+        testMalformedResponse(this::getGetByKeysPath, getByKeysSupplier(), "{\"key1\":{\"key2\":\"two\"}}");
+    }
+
     @Test
     public void testSetValue() {
         stubFor(getSetValuePath().willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
@@ -278,16 +370,76 @@ public class KvOperationManagerImplTest {
         testNotFoundResponse(this::getSetValuesPath, setValuesSupplier());
     }
 
+    @Test
+    public void testSetValuesBadRequestResponse() {
+        expectedException.expect(InvalidParameterValueException.class);
+        expectedException.expectMessage("Key/value pairs are invalid");
+
+        stubFor(getSetValuesPath().willReturn(aResponse().withStatus(HttpStatus.SC_BAD_REQUEST)));
+
+        kvOperationManager.set(STORAGE, DATA);
+    }
+
     @Test
     public void testSetValuesInternalErrorResponse() {
         testInternalErrorResponse(this::getSetValuesPath, setValuesSupplier());
     }
 
+    @Test
+    public void testSetValuesCompressed() throws JsonProcessingException {
+        kvOperationManager = getCompressingOperationManager(0);
+        Map<String, Boolean> result = DATA.keySet().stream().collect(Collectors.toMap(Function.identity(), k -> true));
+        stubFor(getSetValuesPath().withHeader(CONTENT_ENCODING_HEADER, equalTo(GZIP_ENCODING))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(result))));
+
+        KvResult response = kvOperationManager.set(STORAGE, DATA);
+        assertEquals(result, response.getItems());
+    }
+
+    @Test
+    public void testSetValuesAtCompressionThreshold() throws JsonProcessingException {
+        kvOperationManager = getCompressingOperationManager(objectMapper.writeValueAsString(DATA).length());
+        Map<String, Boolean> result = DATA.keySet().stream().collect(Collectors.toMap(Function.identity(), k -> true));
+        stubFor(getSetValuesPath().withHeader(CONTENT_ENCODING_HEADER, equalTo(GZIP_ENCODING))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(result))));
+
+        KvResult response = kvOperationManager.set(STORAGE, DATA);
+        assertEquals(result, response.getItems());
+    }
+
+    @Test
+    public void testSetValuesBelowCompressionThreshold() throws JsonProcessingException {
+        kvOperationManager = getCompressingOperationManager(objectMapper.writeValueAsString(DATA).length() + 1);
+        Map<String, Boolean> result = DATA.keySet().stream().collect(Collectors.toMap(Function.identity(), k -> true));
+        stubFor(getSetValuesPath().withHeader(CONTENT_ENCODING_HEADER, absent())
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(result))));
+
+        KvResult response = kvOperationManager.set(STORAGE, DATA);
+        assertEquals(result, response.getItems());
+    }
+
+    @Test
+    public void testSetValuesAsyncCompressed() throws JsonProcessingException {
+        kvOperationManager = getCompressingOperationManager(0);
+        Map<String, Boolean> result = DATA.keySet().stream().collect(Collectors.toMap(Function.identity(), k -> true));
+        stubFor(getSetValuesPath().withHeader(CONTENT_ENCODING_HEADER, equalTo(GZIP_ENCODING)).withHeader(ACCEPT_ENCODING_HEADER, equalTo(GZIP_ENCODING))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withHeader(CONTENT_ENCODING_HEADER, GZIP_ENCODING)
+                        .withBody(gzip(objectMapper.writeValueAsString(result)))));
+
+        KvResult response = join(kvOperationManager.setAsync(STORAGE, DATA));
+        assertEquals(result, response.getItems());
+    }
+
     @Test
     public void testSetValuesException() {
         testException(this::getSetValuesPath, setValuesSupplier());
     }
 
+    @Test
+    public void testSetValuesMalformedResponse() {
+        testMalformedResponse(this::getSetValuesPath, setValuesSupplier(), "{\"key1\":\"true\"}");
+    }
+
     @Test
     public void testDeleteKey() {
         stubFor(getDeleteKeyPath().willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
@@ -377,6 +529,59 @@ public class KvOperationManagerImplTest {
         testException(this::getListPath, listSupplier());
     }
 
+    @Test
+    public void testListPage() throws JsonProcessingException {
+        String body = objectMapper.writeValueAsString(ImmutableMap.of("items", DATA.keySet(), "cursor", CURSOR, "total", DATA.size()));
+        stubFor(getListPagePath().withQueryParam("prefix", equalTo(PREFIX)).withQueryParam("cursor", equalTo(CURSOR))
+                .willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(body)));
+
+        KvKeys response = kvOperationManager.list(STORAGE, PREFIX, CURSOR, PAGE_SIZE);
+        assertNotNull(response);
+        assertEquals(new ArrayList<>(DATA.keySet()), response.getItems());
+        assertEquals(CURSOR, response.getCursor());
+    }
+
+    @Test
+    public void testListLastPage() throws JsonProcessingException {
+        String body = objectMapper.writeValueAsString(ImmutableMap.of("items", DATA.keySet()));
+        stubFor(getListPagePath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(body)));
+
+        KvKeys response = kvOperationManager.list(STORAGE, null, null, PAGE_SIZE);
+        assertNotNull(response);
+        assertEquals(new ArrayList<>(DATA.keySet()), response.getItems());
+        assertNull(response.getCursor());
+    }
+
+    @Test
+    public void testListPageBadRequestResponse() {
+        InvalidParameterValueException exception = new InvalidParameterValueException("Invalid cursor");
+        expectedException.expect(exception.getClass());
+        when(_exceptionFactory.getException(InvalidParameterValueCode.INVALID_CURSOR)).thenReturn(exception);
+        stubFor(getListPagePath().willReturn(aResponse().withStatus(HttpStatus.SC_BAD_REQUEST)));
+
+        kvOperationManager.list(STORAGE, null, CURSOR, PAGE_SIZE);
+    }
+
+    @Test
+    public void testListPageNotFoundResponse() {
+        testNotFoundResponse(this::getListPagePath, listPageSupplier());
+    }
+
+    @Test
+    public void testListPageInternalErrorResponse() {
+        testInternalErrorResponse(this::getListPagePath, listPageSupplier());
+    }
+
+    @Test
+    public void testListPageMalformedResponse() {
+        testMalformedResponse(this::getListPagePath, listPageSupplier(), "{\"items\":\"key1\"}");
+    }
+
+    @Test
+    public void testListMalformedResponse() {
+        testMalformedResponse(this::getListPath, listSupplier(), "[\"key1\",\"key2\"");
+    }
+
     @Test
     public void testClear() {
         stubFor(getClearPath().willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
@@ -503,6 +708,201 @@ public class KvOperationManagerImplTest {
         testException(this::getHistoryScrollPath, historyScrollSupplier());
     }
 
+    @Test
+    public void testGetByKeyAsync() {
+        stubFor(getGetByKeyPath().willReturn(aResponse().withHeader("Content-Type", "text/plain").withBody(VALUE)));
+
+        KvOperationResponse response = join(kvOperationManager.getAsync(STORAGE, KEY));
+        assertNotNull(response);
+        assertTrue(response instanceof KvValue);
+        assertEquals(VALUE, ((KvValue)response).getValue());
+    }
+
+    @Test
+    public void testGetByKeyAsyncInternalErrorResponse() {
+        testInternalErrorResponse(this::getGetByKeyPath, () -> join(kvOperationManager.getAsync(STORAGE, KEY)));
+    }
+
+    @Test
+    public void testGetByKeyAsyncException() {
+        testException(this::getGetByKeyPath, () -> join(kvOperationManager.getAsync(STORAGE, KEY)));
+    }
+
+    @Test
+    public void testGetByKeysAsync() throws JsonProcessingException {
+        stubFor(getGetByKeysPath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(DATA))));
+
+        KvOperationResponse response = join(kvOperationManager.getAsync(STORAGE, DATA.keySet()));
+        assertNotNull(response);
+        assertTrue(response instanceof KvData);
+        assertEquals(DATA, ((KvData)response).getItems());
+    }
+
+    @Test
+    public void testGetByKeysAsyncEmptyKeyCollection() {
+        CompletableFuture<KvOperationResponse> future = kvOperationManager.getAsync(STORAGE, Collections.emptySet());
+
+        assertTrue(future.isDone());
+        assertEquals(Collections.emptyMap(), ((KvData)join(future)).getItems());
+    }
+
+    @Test
+    public void testGetByKeysAsyncNotFoundResponse() {
+        testNotFoundResponse(this::getGetByKeysPath, () -> join(kvOperationManager.getAsync(STORAGE, DATA.keySet())));
+    }
+
+    @Test
+    public void testSetValueAsync() {
+        stubFor(getSetValuePath().willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+
+        KvPair response = join(kvOperationManager.setAsync(STORAGE, KEY, VALUE));
+        assertNotNull(response);
+        assertEquals(KEY, response.getKey());
+        assertEquals(VALUE, response.getValue());
+    }
+
+    @Test
+    public void testSetAsyncEmptyKey() {
+        CompletableFuture<KvPair> future = kvOperationManager.setAsync(STORAGE, "", VALUE);
+        assertTrue(future.isCompletedExceptionally());
+
+        expectedException.expect(InvalidParameterValueException.class);
+        join(future);
+    }
+
+    @Test
+    public void testSetValuesAsync() throws JsonProcessingException {
+        Map<String, Boolean> result = DATA.keySet().stream().collect(Collectors.toMap(Function.identity(), k -> true));
+        stubFor(getSetValuesPath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(result))));
+
+        KvResult response = join(kvOperationManager.setAsync(STORAGE, DATA));
+        assertNotNull(response);
+        assertEquals(result, response.getItems());
+    }
+
+    @Test
+    public void testSetValuesAsyncBadRequestResponse() {
+        expectedException.expect(InvalidParameterValueException.class);
+        expectedException.expectMessage("Key/value pairs are invalid");
+
+        stubFor(getSetValuesPath().willReturn(aResponse().withStatus(HttpStatus.SC_BAD_REQUEST)));
+
+        join(kvOperationManager.setAsync(STORAGE, DATA));
+    }
+
+    @Test
+    public void testDeleteKeyAsync() {
+        stubFor(getDeleteKeyPath().willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+
+        KvKey response = join(kvOperationManager.deleteAsync(STORAGE, KEY));
+        assertNotNull(response);
+        assertEquals(KEY, response.getKey());
+    }
+
+    @Test
+    public void testDeleteKeysAsync() throws JsonProcessingException {
+        Map<String, Boolean> result = DATA.keySet().stream().collect(Collectors.toMap(Function.identity(), k -> true));
+        stubFor(getDeleteKeysPath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(result))));
+
+        KvResult response = join(kvOperationManager.deleteAsync(STORAGE, DATA.keySet()));
+        assertNotNull(response);
+        assertEquals(result, response.getItems());
+    }
+
+    @Test
+    public void testListAsync() throws JsonProcessingException {
+        stubFor(getListPath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(DATA.keySet()))));
+
+        KvKeys response = join(kvOperationManager.listAsync(STORAGE));
+        assertNotNull(response);
+        assertEquals(new ArrayList<>(DATA.keySet()), response.getItems());
+    }
+
+    @Test
+    public void testClearAsync() {
+        stubFor(getClearPath().willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+
+        KvOperationResponse response = join(kvOperationManager.clearAsync(STORAGE));
+        assertNotNull(response);
+        assertTrue(response instanceof KvSuccess);
+    }
+
+    @Test
+    public void testGetHistoryAsync() throws JsonProcessingException {
+        stubFor(getHistoryPath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(KV_HISTORY_RESULT))));
+
+        KvHistoryResult result = join(kvOperationManager.getHistoryAsync(HISTORY_ENABLED_STORAGE, null, null, null, null, null, null, null, null));
+        assertEquals(KV_HISTORY_RESULT, result);
+    }
+
+    @Test
+    public void testGetHistoryAsyncHistoryDisabledStorage() {
+        InvalidParameterValueException exception = new InvalidParameterValueException("history is not supported");
+        expectedException.expect(exception.getClass());
+        when(_exceptionFactory.getException(InvalidParameterValueCode.HISTORY_DISABLED_STORAGE)).thenReturn(exception);
+
+        join(kvOperationManager.getHistoryAsync(STORAGE, null, null, null, null, null, null, null, null));
+    }
+
+    @Test
+    public void testGetHistoryScrollAsync() throws JsonProcessingException {
+        stubFor(getHistoryScrollPath().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(objectMapper.writeValueAsString(KV_HISTORY_RESULT))));
+
+        KvHistoryResult result = join(kvOperationManager.getHistoryAsync(SCROLL_ID, TIMEOUT));
+        assertEquals(KV_HISTORY_RESULT, result);
+    }
+
+    @Test
+    public void testMultipleUrls() throws IOException {
+        kvOperationManager = new KvOperationManagerImpl(String.format(URL_TEMPLATE, getUnusedPort()) + ", " + String.format(URL_TEMPLATE, wireMockRule.port()),
+                _exceptionFactory);
+        KvEndpointBalancer endpointBalancer = (KvEndpointBalancer)ReflectionTestUtils.getField(kvOperationManager, "_endpointBalancer");
+        assertEquals(2, endpointBalancer.getEndpoints().size());
+    }
+
+    @Test
+    public void testGetByKeyFailover() throws IOException {
+        stubFor(getGetByKeyPath().willReturn(aResponse().withHeader("Content-Type", "text/plain").withBody(VALUE)));
+        kvOperationManager = new KvOperationManagerImpl(String.format(URL_TEMPLATE, getUnusedPort()) + "," + String.format(URL_TEMPLATE, wireMockRule.port()),
+                _exceptionFactory);
+
+        for (int i = 0; i < 4; i++) {
+            KvOperationResponse response = kvOperationManager.get(STORAGE, KEY);
+            assertTrue(response instanceof KvValue);
+            assertEquals(VALUE, ((KvValue)response).getValue());
+        }
+    }
+
+    @Test
+    public void testGetByKeyAsyncFailover() throws IOException {
+        stubFor(getGetByKeyPath().willReturn(aResponse().withHeader("Content-Type", "text/plain").withBody(VALUE)));
+        kvOperationManager = new KvOperationManagerImpl(String.format(URL_TEMPLATE, getUnusedPort()) + "," + String.format(URL_TEMPLATE, wireMockRule.port()),
+                _exceptionFactory);
+
+        for (int i = 0; i < 4; i++) {
+            KvOperationResponse response = join(kvOperationManager.getAsync(STORAGE, KEY));
+            assertTrue(response instanceof KvValue);
+            assertEquals(VALUE, ((KvValue)response).getValue());
+        }
+    }
+
+    @Test
+    public void testGetByKeyUnavailableUrls() throws IOException {
+        expectedException.expect(ServerApiException.class);
+        kvOperationManager = new KvOperationManagerImpl(String.format(URL_TEMPLATE, getUnusedPort()) + "," + String.format(URL_TEMPLATE, getUnusedPort()),
+                _exceptionFactory);
+
+        kvOperationManager.get(STORAGE, KEY);
+    }
+
+    @Test
+    public void testGetByKeyUnconfiguredUrl() {
+        expectedException.expect(ServerApiException.class);
+        kvOperationManager = new KvOperationManagerImpl(null, _exceptionFactory);
+
+        kvOperationManager.get(STORAGE, KEY);
+    }
+
     private MappingBuilder getGetByKeyPath() {
         return get(urlEqualTo("/get/" + STORAGE.getId() + "/" + KEY)).withHeader(SECRET_KEY_HEADER, equalTo(STORAGE.getSecretKey()));
     }
@@ -546,6 +946,11 @@ public class KvOperationManagerImplTest {
         return get(urlEqualTo("/list/" + STORAGE.getId())).withHeader(SECRET_KEY_HEADER, equalTo(STORAGE.getSecretKey()));
     }
 
+    private MappingBuilder getListPagePath() {
+        return get(urlPathEqualTo("/list/" + STORAGE.getId())).withHeader(SECRET_KEY_HEADER, equalTo(STORAGE.getSecretKey()))
+                .withQueryParam("size", equalTo(String.valueOf(PAGE_SIZE)));
+    }
+
     private MappingBuilder getClearPath() {
         return post(urlEqualTo("/clear/" + STORAGE.getId())).withHeader(SECRET_KEY_HEADER, equalTo(STORAGE.getSecretKey()));
     }
@@ -590,6 +995,10 @@ public class KvOperationManagerImplTest {
         return () -> kvOperationManager.list(STORAGE);
     }
 
+    private Supplier<KvKeys> listPageSupplier() {
+        return () -> kvOperationManager.list(STORAGE, PREFIX, null, PAGE_SIZE);
+    }
+
     private Supplier<KvOperationResponse> clearSupplier() {
         return () -> kvOperationManager.clear(STORAGE);
     }
@@ -602,6 +1011,34 @@ public class KvOperationManagerImplTest {
         return () -> kvOperationManager.getHistory(SCROLL_ID, TIMEOUT);
     }
 
+    private byte[] gzip(String value) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private KvOperationManagerImpl getCompressingOperationManager(int compressionThreshold) {
+        return new KvOperationManagerImpl(String.format(URL_TEMPLATE, wireMockRule.port()), _exceptionFactory, true, compressionThreshold);
+    }
+
+    private int getUnusedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw (RuntimeException)e.getCause();
+        }
+    }
+
     private <T extends KvOperationResponse> void testNotFoundResponse(Supplier<MappingBuilder> requestBuilder, Supplier<T> responseSupplier) {
         expectedException.expect(InvalidParameterValueException.class);
         when(_exceptionFactory.getException(InvalidParameterValueCode.NONEXISTENT_STORAGE)).thenReturn(new InvalidParameterValueException("not found"));
@@ -624,4 +1061,11 @@ public class KvOperationManagerImplTest {
 
         responseSupplier.get();
     }
+
+    private <T extends KvOperationResponse> void testMalformedResponse(Supplier<MappingBuilder> requestBuilder, Supplier<T> responseSupplier, String body) {
+        expectedException.expect(ServerApiException.class);
+        stubFor(requestBuilder.get().willReturn(aResponse().withHeader(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE).withBody(body)));
+
+        responseSupplier.get();
+    }
 }
@@ -0,0 +1,221 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
+import com.bwsw.cloudstack.storage.kv.response.KvValue;
+import org.apache.cloudstack.api.ServerApiException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KvReadCoalescerTest {
+
+    private static final String STORAGE_ID = "e0123777-921b-4e62-a7cc-8135015ca571";
+    private static final String OTHER_STORAGE_ID = "c0123777-921b-4e62-a7cc-8135015ca571";
+    private static final String KEY = "key";
+    private static final long TIMEOUT = 5;
+
+    private final KvReadCoalescer _readCoalescer = new KvReadCoalescer();
+    private final ExecutorService _executorService = Executors.newSingleThreadExecutor();
+
+    @After
+    public void after() {
+        _executorService.shutdownNow();
+    }
+
+    @Test
+    public void testReadSequential() {
+        KvOperationResponse first = _readCoalescer.read(STORAGE_ID, KEY, () -> new KvValue("one"));
+        KvOperationResponse second = _readCoalescer.read(STORAGE_ID, KEY, () -> new KvValue("two"));
+
+        assertEquals("one", ((KvValue)first).getValue());
+        assertEquals("two", ((KvValue)second).getValue());
+        assertEquals(0, _readCoalescer.getInFlightReadCount());
+    }
+
+    @Test
+    public void testReadConcurrentIdenticalReads() throws Exception {
+        KvValue value = new KvValue("one");
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch joining = new CountDownLatch(1);
+        KvReadCoalescer readCoalescer = new KvReadCoalescer(joining::countDown);
+        Future<KvOperationResponse> leader = _executorService.submit(() -> readCoalescer.read(STORAGE_ID, KEY, () -> {
+            reads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return value;
+        }));
+        started.await(TIMEOUT, TimeUnit.SECONDS);
+
+        AtomicReference<KvOperationResponse> followerResponse = new AtomicReference<>();
+        Thread follower = new Thread(() -> followerResponse.set(readCoalescer.read(STORAGE_ID, KEY, () -> {
+            reads.incrementAndGet();
+            return new KvValue("two");
+        })));
+        follower.start();
+        assertTrue(joining.await(TIMEOUT, TimeUnit.SECONDS));
+        release.countDown();
+        follower.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+
+        assertSame(value, leader.get(TIMEOUT, TimeUnit.SECONDS));
+        assertSame(value, followerResponse.get());
+        assertEquals(1, reads.get());
+        assertEquals(0, readCoalescer.getInFlightReadCount());
+    }
+
+    @Test
+    public void testReadDifferentKeysOrStorages() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<KvOperationResponse> leader = _executorService.submit(() -> _readCoalescer.read(STORAGE_ID, KEY, () -> {
+            started.countDown();
+            await(release);
+            return new KvValue("one");
+        }));
+        started.await(TIMEOUT, TimeUnit.SECONDS);
+
+        KvOperationResponse otherKey = _readCoalescer.read(STORAGE_ID, "other key", () -> new KvValue("two"));
+        KvOperationResponse otherStorage = _readCoalescer.read(OTHER_STORAGE_ID, KEY, () -> new KvValue("three"));
+        release.countDown();
+
+        assertEquals("one", ((KvValue)leader.get(TIMEOUT, TimeUnit.SECONDS)).getValue());
+        assertEquals("two", ((KvValue)otherKey).getValue());
+        assertEquals("three", ((KvValue)otherStorage).getValue());
+    }
+
+    @Test
+    public void testReadAfterWrite() throws Exception {
+        KvValue staleValue = new KvValue("stale");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<KvOperationResponse> leader = _executorService.submit(() -> _readCoalescer.read(STORAGE_ID, KEY, () -> {
+            started.countDown();
+            await(release);
+            return staleValue;
+        }));
+        started.await(TIMEOUT, TimeUnit.SECONDS);
+
+        _readCoalescer.write(STORAGE_ID, () -> null);
+        KvOperationResponse response = _readCoalescer.read(STORAGE_ID, KEY, () -> new KvValue("fresh"));
+        release.countDown();
+
+        assertNotSame(staleValue, response);
+        assertEquals("fresh", ((KvValue)response).getValue());
+        assertSame(staleValue, leader.get(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReadException() {
+        ServerApiException exception = new ServerApiException();
+        try {
+            _readCoalescer.read(STORAGE_ID, KEY, () -> {
+                throw exception;
+            });
+            fail("Exception expected");
+        } catch (ServerApiException e) {
+            assertSame(exception, e);
+        }
+        assertEquals(0, _readCoalescer.getInFlightReadCount());
+    }
+
+    @Test
+    public void testWriteException() {
+        ServerApiException exception = new ServerApiException();
+        try {
+            _readCoalescer.write(STORAGE_ID, () -> {
+                throw exception;
+            });
+            fail("Exception expected");
+        } catch (ServerApiException e) {
+            assertSame(exception, e);
+        }
+    }
+
+    @Test
+    public void testRunIfGeneration() {
+        long generation = _readCoalescer.getGeneration(STORAGE_ID);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(_readCoalescer.runIfGeneration(STORAGE_ID, generation, runs::incrementAndGet));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testRunIfGenerationAfterWrite() {
+        long generation = _readCoalescer.getGeneration(STORAGE_ID);
+        _readCoalescer.write(STORAGE_ID, () -> null);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertFalse(_readCoalescer.runIfGeneration(STORAGE_ID, generation, runs::incrementAndGet));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void testRunIfGenerationDelaysWrite() throws Exception {
+        long generation = _readCoalescer.getGeneration(STORAGE_ID);
+        AtomicInteger writes = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> action = _executorService.submit(() -> _readCoalescer.runIfGeneration(STORAGE_ID, generation, () -> {
+            started.countDown();
+            await(release);
+        }));
+        started.await(TIMEOUT, TimeUnit.SECONDS);
+
+        Thread writer = new Thread(() -> _readCoalescer.write(STORAGE_ID, writes::incrementAndGet));
+        writer.start();
+        while (writer.getState() != Thread.State.BLOCKED && writer.isAlive()) {
+            Thread.yield();
+        }
+        // the write waits for the action checked against the generation
+        assertEquals(0, writes.get());
+        assertEquals(generation, _readCoalescer.getGeneration(STORAGE_ID));
+        release.countDown();
+        writer.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+
+        assertTrue(action.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(1, writes.get());
+        assertNotEquals(generation, _readCoalescer.getGeneration(STORAGE_ID));
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -18,7 +18,6 @@
 package com.bwsw.cloudstack.storage.kv.service;
 
 import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
-import com.bwsw.cloudstack.storage.kv.entity.DeleteStorageRequest;
 import com.bwsw.cloudstack.storage.kv.entity.EntityConstants;
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -30,22 +29,28 @@ import org.apache.http.HttpEntity;
 import org.apache.http.entity.ContentType;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -56,6 +61,8 @@ import java.util.Map;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(MockitoJUnitRunner.class)
 public class KvRequestBuilderImplTest {
@@ -67,12 +74,14 @@ public class KvRequestBuilderImplTest {
     private static final int SIZE = 5;
     private static final int TTL = 300000;
     private static final long TIMESTAMP = System.currentTimeMillis();
-    private static final String SCROLL_ID = "scrollId";
     private static final KvStorage TEMP_STORAGE = new KvStorage(UUID, SECRET_KEY, TTL, TIMESTAMP);
 
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
+    @Spy
+    private KvScriptManagerImpl _kvScriptManager = new KvScriptManagerImpl();
+
     @InjectMocks
     private KvRequestBuilderImpl _kvRequestBuilder;
 
@@ -88,6 +97,21 @@ public class KvRequestBuilderImplTest {
         assertEquals(UUID, request.id());
     }
 
+    @Test
+    public void testGetMultiGetRequest() {
+        List<String> ids = ImmutableList.of(UUID, "e0123777-921b-4e62-a7cc-8135015ca571");
+        MultiGetRequest request = _kvRequestBuilder.getMultiGetRequest(ids);
+
+        assertNotNull(request);
+        assertEquals(ids.size(), request.getItems().size());
+        for (int i = 0; i < ids.size(); i++) {
+            MultiGetRequest.Item item = request.getItems().get(i);
+            assertEquals(KvRequestBuilderImpl.STORAGE_REGISTRY_INDEX, item.index());
+            assertEquals(KvRequestBuilderImpl.STORAGE_TYPE, item.type());
+            assertEquals(ids.get(i), item.id());
+        }
+    }
+
     @Test
     public void testGetCreateRequestAccountStorage() throws IOException {
         testGetCreateRequest(get("id val", KvStorage.KvStorageType.ACCOUNT, "account secret", "account val", "name val", "description val", null, null, true, false),
@@ -107,19 +131,31 @@ public class KvRequestBuilderImplTest {
     }
 
     @Test
-    public void testGetDeleteRequestHistoryEnabledStorage() throws IOException {
-        KvStorage storage = new KvStorage(UUID, SECRET_KEY, true);
-        storage.setDeleted(true);
+    public void testGetCreateRequestSharedStorage() throws IOException {
+        KvStorage storage = get("id val", KvStorage.KvStorageType.VM, "vm secret", null, null, null, null, null, true, false);
+        storage.setLayout(KvStorage.KvStorageLayout.SHARED);
+        storage.setSharedIndex(3);
+
+        CreateStorageRequest request = _kvRequestBuilder.getCreateRequest(storage);
 
-        testDeleteStorageRequest(storage);
+        assertNotNull(request);
+        assertNotNull(request.getRegistryRequest());
+        assertEquals(storage.getId(), request.getRegistryRequest().id());
+        assertEquals(getQuery("create-shared-storage.json", Collections.emptyMap()), request.getRegistryRequest().source().utf8ToString());
+        assertNull(request.getStorageIndexRequest());
+        assertNull(request.getHistoryIndexRequest());
     }
 
     @Test
-    public void testGetDeleteRequestHistoryDisabledStorage() throws IOException {
-        KvStorage storage = new KvStorage(UUID, SECRET_KEY, false);
-        storage.setDeleted(true);
-
-        testDeleteStorageRequest(storage);
+    public void testGetCreateSharedIndicesRequests() {
+        List<CreateIndexRequest> requests = _kvRequestBuilder.getCreateSharedIndicesRequests(2);
+
+        assertNotNull(requests);
+        assertEquals(4, requests.size());
+        checkCreateIndexRequest(requests.get(0), KvRequestBuilderImpl.SHARED_STORAGE_INDEX_PREFIX + 0);
+        checkCreateIndexRequest(requests.get(1), KvRequestBuilderImpl.SHARED_HISTORY_INDEX_PREFIX + 0);
+        checkCreateIndexRequest(requests.get(2), KvRequestBuilderImpl.SHARED_STORAGE_INDEX_PREFIX + 1);
+        checkCreateIndexRequest(requests.get(3), KvRequestBuilderImpl.SHARED_HISTORY_INDEX_PREFIX + 1);
     }
 
     @Test
@@ -136,6 +172,26 @@ public class KvRequestBuilderImplTest {
         assertEquals(expectedQuery.trim(), sourceBuilder.toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).string());
     }
 
+    @Test
+    public void testGetSearchRequestFirstPage() throws IOException {
+        SearchRequest request = _kvRequestBuilder.getSearchRequest(UUID, null, SIZE);
+
+        assertNotNull(request);
+        assertArrayEquals(new String[] {KvRequestBuilderImpl.STORAGE_REGISTRY_INDEX}, request.indices());
+        assertEquals(getQuery("search-account-storage-query.json", Collections.emptyMap()).replace("\"from\":" + FROM + ",", ""),
+                request.source().toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).string());
+    }
+
+    @Test
+    public void testGetSearchRequestAfterStorage() throws IOException {
+        SearchRequest request = _kvRequestBuilder.getSearchRequest(UUID, UUID_LIST.get(0), SIZE);
+
+        assertNotNull(request);
+        assertArrayEquals(new String[] {KvRequestBuilderImpl.STORAGE_REGISTRY_INDEX}, request.indices());
+        assertEquals(getQuery("search-account-storage-after-query.json", Collections.emptyMap()),
+                request.source().toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).string());
+    }
+
     @Test
     public void testGetUpdateTTLRequest() throws IOException {
         UpdateRequest request = _kvRequestBuilder.getUpdateTTLRequest(TEMP_STORAGE);
@@ -144,6 +200,21 @@ public class KvRequestBuilderImplTest {
                 "update-ttl-script.painless");
     }
 
+    @Test
+    public void testGetUpdateTTLRequestStoredScript() {
+        ReflectionTestUtils.setField(_kvScriptManager, "_storedScripts", true);
+
+        UpdateRequest request = _kvRequestBuilder.getUpdateTTLRequest(TEMP_STORAGE);
+
+        assertNotNull(request);
+        Script script = request.script();
+        assertNotNull(script);
+        assertEquals(ScriptType.STORED, script.getType());
+        assertEquals(KvScript.UPDATE_TTL.getId(), script.getIdOrCode());
+        assertNull(script.getLang());
+        assertEquals(ImmutableMap.of("ttl", TEMP_STORAGE.getTtl(), EntityConstants.EXPIRATION_TIMESTAMP, TEMP_STORAGE.getExpirationTimestamp()), script.getParams());
+    }
+
     @Test
     public void testGetUpdateSecretKeyRequest() throws IOException {
         UpdateRequest request = _kvRequestBuilder.getUpdateSecretKey(TEMP_STORAGE);
@@ -182,14 +253,15 @@ public class KvRequestBuilderImplTest {
     }
 
     @Test
-    public void testGetScrollRequest() {
-        SearchScrollRequest request = _kvRequestBuilder.getScrollRequest(SCROLL_ID, TTL);
+    public void testGetRecentlyUpdatedStoragesRequest() throws IOException {
+        SearchRequest request = _kvRequestBuilder.getRecentlyUpdatedStoragesRequest(SIZE, TTL);
+        checkSearchRequest(request, TTL, "search-recently-updated-storages-query.json", ImmutableMap.of("%SIZE%", SIZE));
+    }
 
-        assertNotNull(request);
-        assertEquals(SCROLL_ID, request.scrollId());
-        assertNotNull(request.scroll());
-        assertNotNull(request.scroll().keepAlive());
-        assertEquals(TTL, request.scroll().keepAlive().getMillis());
+    @Test
+    public void testGetExistingStoragesRequest() throws IOException {
+        SearchRequest request = _kvRequestBuilder.getExistingStoragesRequest(SIZE, TTL);
+        checkSearchRequest(request, TTL, "search-existing-storages-query.json", ImmutableMap.of("%SIZE%", SIZE));
     }
 
     @Test
@@ -207,6 +279,80 @@ public class KvRequestBuilderImplTest {
         checkUpdateRequest(request, storage, Collections.emptyMap(), "mark-deleted-script.painless");
     }
 
+    @Test
+    public void testGetMarkDeletedBulkRequest() throws IOException {
+        List<KvStorage> storages = ImmutableList.of(new KvStorage(UUID, SECRET_KEY, TTL, TIMESTAMP), new KvStorage("c0123777-921b-4e62-a7cc-8135015ca571", SECRET_KEY, TTL, TIMESTAMP));
+
+        BulkRequest request = _kvRequestBuilder.getMarkDeletedBulkRequest(storages);
+
+        assertNotNull(request);
+        assertEquals(storages.size(), request.numberOfActions());
+        for (int i = 0; i < storages.size(); i++) {
+            DocWriteRequest itemRequest = request.requests().get(i);
+            assertTrue(itemRequest instanceof UpdateRequest);
+            checkUpdateRequest((UpdateRequest)itemRequest, storages.get(i), Collections.emptyMap(), "mark-deleted-script.painless");
+        }
+    }
+
+    @Test
+    public void testGetDeleteIndicesRequest() {
+        KvStorage historyEnabledStorage = new KvStorage(UUID, SECRET_KEY, true);
+        KvStorage historyDisabledStorage = new KvStorage("c0123777-921b-4e62-a7cc-8135015ca571", SECRET_KEY, false);
+
+        DeleteIndexRequest request = _kvRequestBuilder.getDeleteIndicesRequest(ImmutableList.of(historyEnabledStorage, historyDisabledStorage));
+
+        assertNotNull(request);
+        assertArrayEquals(new String[] {KvRequestBuilderImpl.STORAGE_INDEX_PREFIX + historyEnabledStorage.getId(), KvRequestBuilderImpl.HISTORY_INDEX_PREFIX + historyEnabledStorage.getId(),
+                KvRequestBuilderImpl.STORAGE_INDEX_PREFIX + historyDisabledStorage.getId()}, request.indices());
+        assertTrue(request.indicesOptions().ignoreUnavailable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetDeleteIndicesRequestSharedStorage() {
+        KvStorage storage = new KvStorage(UUID, SECRET_KEY, true);
+        storage.setLayout(KvStorage.KvStorageLayout.SHARED);
+        storage.setSharedIndex(0);
+
+        _kvRequestBuilder.getDeleteIndicesRequest(ImmutableList.of(storage));
+    }
+
+    @Test
+    public void testGetDeleteSharedStoragesDataRequest() throws IOException {
+        KvStorage historyEnabledStorage = new KvStorage(UUID_LIST.get(0), SECRET_KEY, true);
+        historyEnabledStorage.setLayout(KvStorage.KvStorageLayout.SHARED);
+        historyEnabledStorage.setSharedIndex(1);
+        KvStorage historyDisabledStorage = new KvStorage(UUID_LIST.get(1), SECRET_KEY, false);
+        historyDisabledStorage.setLayout(KvStorage.KvStorageLayout.SHARED);
+        historyDisabledStorage.setSharedIndex(0);
+
+        Request request = _kvRequestBuilder.getDeleteSharedStoragesDataRequest(ImmutableList.of(historyEnabledStorage, historyDisabledStorage));
+
+        assertNotNull(request);
+        assertEquals("POST", request.getMethod());
+        assertEquals(KvRequestBuilderImpl.SHARED_STORAGE_INDEX_PREFIX + 0 + "," + KvRequestBuilderImpl.SHARED_STORAGE_INDEX_PREFIX + 1 + ","
+                + KvRequestBuilderImpl.SHARED_HISTORY_INDEX_PREFIX + 1 + "/_delete_by_query", request.getEndpoint());
+        assertEquals(ImmutableMap.of("conflicts", "proceed", "routing", String.join(",", UUID_LIST), "ignore_unavailable", "true"), request.getParameters());
+        assertEquals(getQuery("delete-shared-storages-data-query.json", ImmutableMap.of("%UUID%", UUID_LIST)),
+                IOUtils.toString(request.getEntity().getContent(), Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testGetRegistryDeleteBulkRequest() {
+        List<KvStorage> storages = ImmutableList.of(new KvStorage(UUID, SECRET_KEY, false), new KvStorage("c0123777-921b-4e62-a7cc-8135015ca571", SECRET_KEY, true));
+
+        BulkRequest request = _kvRequestBuilder.getRegistryDeleteBulkRequest(storages);
+
+        assertNotNull(request);
+        assertEquals(storages.size(), request.numberOfActions());
+        for (int i = 0; i < storages.size(); i++) {
+            DocWriteRequest itemRequest = request.requests().get(i);
+            assertTrue(itemRequest instanceof DeleteRequest);
+            assertEquals(KvRequestBuilderImpl.STORAGE_REGISTRY_INDEX, itemRequest.index());
+            assertEquals(KvRequestBuilderImpl.STORAGE_TYPE, itemRequest.type());
+            assertEquals(storages.get(i).getId(), itemRequest.id());
+        }
+    }
+
     @Test
     public void getMarkDeletedAccountStorageRequest() throws IOException {
         Request request = _kvRequestBuilder.getMarkDeletedAccountStorageRequest(UUID_LIST);
@@ -238,25 +384,6 @@ public class KvRequestBuilderImplTest {
         }
     }
 
-    private void testDeleteStorageRequest(KvStorage storage) throws IOException {
-        DeleteStorageRequest request = _kvRequestBuilder.getDeleteRequest(storage);
-
-        assertNotNull(request);
-
-        checkUpdateRequest(request.getRegistryUpdateRequest(), storage, Collections.emptyMap(), "mark-deleted-script.painless");
-
-        assertNotNull(request.getRegistryDeleteRequest());
-        assertEquals(storage.getId(), request.getRegistryDeleteRequest().id());
-
-        assertNotNull(request.getStorageIndexRequest());
-        assertArrayEquals(new String[] {KvRequestBuilderImpl.STORAGE_INDEX_PREFIX + UUID}, request.getStorageIndexRequest().indices());
-
-        if (storage.getHistoryEnabled()) {
-            assertNotNull(request.getHistoryIndexRequest());
-            assertArrayEquals(new String[] {KvRequestBuilderImpl.HISTORY_INDEX_PREFIX + UUID}, request.getHistoryIndexRequest().indices());
-        }
-    }
-
     private void checkUpdateRequest(UpdateRequest request, KvStorage storage, Map<String, Object> parameters, String scriptResource) throws IOException {
         assertNotNull(request);
         assertEquals(KvRequestBuilderImpl.STORAGE_REGISTRY_INDEX, request.index());
@@ -0,0 +1,148 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.client.KvStorageClientManager;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicStatusLine;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KvScriptManagerImplTest {
+
+    private static final String PIPELINE_ENDPOINT = "_ingest/pipeline/" + KvScriptManager.LAST_UPDATED_PIPELINE;
+    private static final Map<String, Object> PARAMS = Collections.singletonMap("ttl", 1000);
+
+    @Mock
+    private KvStorageClientManager _kvStorageClientManager;
+
+    @Mock
+    private RestHighLevelClient _restHighLevelClient;
+
+    @Mock
+    private RestClient _restClient;
+
+    @Mock
+    private Response _pipelineResponse;
+
+    @Mock
+    private Response _response;
+
+    @InjectMocks
+    private KvScriptManagerImpl _kvScriptManager = new KvScriptManagerImpl();
+
+    @Before
+    public void before() throws IOException {
+        when(_kvStorageClientManager.getEsClient()).thenReturn(_restHighLevelClient);
+        when(_restHighLevelClient.getLowLevelClient()).thenReturn(_restClient);
+        when(_restClient.performRequest("GET", PIPELINE_ENDPOINT, Collections.singletonMap("ignore", "404"))).thenReturn(_pipelineResponse);
+        when(_restClient.performRequest(eq("PUT"), anyString(), anyMapOf(String.class, String.class), any(HttpEntity.class))).thenReturn(_response);
+    }
+
+    @Test
+    public void testGetScriptInline() {
+        checkInlineScript();
+    }
+
+    @Test
+    public void testConfigure() throws IOException {
+        setPipelineStatus(HttpStatus.SC_OK);
+
+        assertTrue(_kvScriptManager.configure(null, Collections.emptyMap()));
+
+        for (KvScript script : KvScript.values()) {
+            verify(_restClient).performRequest(eq("PUT"), eq("_scripts/" + script.getId()), anyMapOf(String.class, String.class), any(HttpEntity.class));
+        }
+        verify(_restClient, never()).performRequest(eq("PUT"), eq(PIPELINE_ENDPOINT), anyMapOf(String.class, String.class), any(HttpEntity.class));
+
+        Script script = _kvScriptManager.getScript(KvScript.UPDATE_TTL, PARAMS);
+        assertEquals(ScriptType.STORED, script.getType());
+        assertEquals(KvScript.UPDATE_TTL.getId(), script.getIdOrCode());
+        assertNull(script.getLang());
+        assertEquals(PARAMS, script.getParams());
+    }
+
+    @Test
+    public void testConfigureMissingPipeline() throws IOException {
+        setPipelineStatus(HttpStatus.SC_NOT_FOUND);
+
+        assertTrue(_kvScriptManager.configure(null, Collections.emptyMap()));
+
+        verify(_restClient, times(1)).performRequest(eq("PUT"), eq(PIPELINE_ENDPOINT), anyMapOf(String.class, String.class), any(HttpEntity.class));
+    }
+
+    @Test
+    public void testConfigureScriptInstallationFailure() throws IOException {
+        setPipelineStatus(HttpStatus.SC_OK);
+        when(_restClient.performRequest(eq("PUT"), eq("_scripts/" + KvScript.RELEASE_LOCK.getId()), anyMapOf(String.class, String.class), any(HttpEntity.class)))
+                .thenThrow(new IOException("failure"));
+
+        assertTrue(_kvScriptManager.configure(null, Collections.emptyMap()));
+
+        checkInlineScript();
+    }
+
+    @Test
+    public void testConfigureWithoutClient() {
+        when(_kvStorageClientManager.getEsClient()).thenReturn(null);
+
+        assertTrue(_kvScriptManager.configure(null, Collections.emptyMap()));
+
+        checkInlineScript();
+    }
+
+    private void setPipelineStatus(int status) {
+        when(_pipelineResponse.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, status, null));
+    }
+
+    private void checkInlineScript() {
+        Script script = _kvScriptManager.getScript(KvScript.UPDATE_TTL, PARAMS);
+        assertEquals(ScriptType.INLINE, script.getType());
+        assertEquals(KvScript.UPDATE_TTL.getSource(), script.getIdOrCode());
+        assertEquals("painless", script.getLang());
+        assertEquals(PARAMS, script.getParams());
+    }
+}
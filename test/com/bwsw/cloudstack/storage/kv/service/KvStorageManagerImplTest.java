@@ -18,9 +18,11 @@
 package com.bwsw.cloudstack.storage.kv.service;
 
 import com.bwsw.cloudstack.storage.kv.cache.KvStorageCache;
+import com.bwsw.cloudstack.storage.kv.cache.KvStorageCacheInvalidator;
+import com.bwsw.cloudstack.storage.kv.cache.KvValueCache;
 import com.bwsw.cloudstack.storage.kv.client.KvStorageClientManager;
+import com.bwsw.cloudstack.storage.kv.entity.ByQueryResponse;
 import com.bwsw.cloudstack.storage.kv.entity.CreateStorageRequest;
-import com.bwsw.cloudstack.storage.kv.entity.DeleteStorageRequest;
 import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
 import com.bwsw.cloudstack.storage.kv.entity.ScrollableListResponse;
 import com.bwsw.cloudstack.storage.kv.exception.ExceptionFactory;
@@ -34,6 +36,7 @@ import com.bwsw.cloudstack.storage.kv.response.KvOperationResponse;
 import com.bwsw.cloudstack.storage.kv.response.KvPair;
 import com.bwsw.cloudstack.storage.kv.response.KvResult;
 import com.bwsw.cloudstack.storage.kv.response.KvStorageResponse;
+import com.bwsw.cloudstack.storage.kv.response.KvStorages;
 import com.bwsw.cloudstack.storage.kv.response.KvSuccess;
 import com.bwsw.cloudstack.storage.kv.response.KvValue;
 import com.bwsw.cloudstack.storage.kv.security.AccessChecker;
@@ -46,6 +49,7 @@ import com.cloud.user.dao.AccountDao;
 import com.cloud.utils.db.Filter;
 import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
+import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.dao.VMInstanceDao;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -55,36 +59,39 @@ import com.google.common.collect.ImmutableMap;
 import org.apache.cloudstack.api.Identity;
 import org.apache.cloudstack.api.ServerApiException;
 import org.apache.cloudstack.api.response.ListResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.HttpVersion;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.message.BasicStatusLine;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Request;
-import org.elasticsearch.client.Response;
-import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.CheckedConsumer;
 import org.hamcrest.CustomMatcher;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -94,20 +101,27 @@ import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.intThat;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -160,15 +174,9 @@ public class KvStorageManagerImplTest {
     @Mock
     private RestHighLevelClient _restHighLevelClient;
 
-    @Mock
-    private RestClient _restClient;
-
     @Mock
     private GetRequest _getRequest;
 
-    @Mock
-    private DeleteStorageRequest _deleteStorageRequest;
-
     @Mock
     private CreateStorageRequest _createStorageRequest;
 
@@ -178,9 +186,6 @@ public class KvStorageManagerImplTest {
     @Mock
     private UpdateRequest _updateRequest;
 
-    @Mock
-    private Response _response;
-
     @Mock
     private VMInstanceVO _vmInstanceVO;
 
@@ -196,6 +201,12 @@ public class KvStorageManagerImplTest {
     @Mock
     private KvStorageCache _kvStorageCache;
 
+    @Mock
+    private KvValueCache _kvValueCache;
+
+    @Mock
+    private KvStorageCacheInvalidator _kvStorageCacheInvalidator;
+
     @Mock
     private KvOperationManager _kvOperationManager;
 
@@ -221,6 +232,19 @@ public class KvStorageManagerImplTest {
         when(_kvStorageClientManager.getEsClient()).thenReturn(_restHighLevelClient);
     }
 
+    @Test
+    public void testStop() throws IOException {
+        assertTrue(_kvStorageManager.stop());
+        verify(_kvOperationManager).close();
+    }
+
+    @Test
+    public void testStopCloseException() throws IOException {
+        doThrow(new IOException()).when(_kvOperationManager).close();
+
+        assertTrue(_kvStorageManager.stop());
+    }
+
     @Test
     public void testCreateAccountStorageInvalidAccount() {
         setExceptionExpectation(InvalidParameterValueException.class, "account");
@@ -262,6 +286,7 @@ public class KvStorageManagerImplTest {
         _kvStorageManager.createAccountStorage(ID, NAME, DESCRIPTION, HISTORY_ENABLED);
 
         verify(_kvExecutor).create(_restHighLevelClient, _createStorageRequest);
+        verify(_kvStorageCacheInvalidator).invalidate(anyCollectionOf(String.class));
     }
 
     @Test
@@ -440,6 +465,53 @@ public class KvStorageManagerImplTest {
         testListAccountStorages(START_INDEX, (int)START_INDEX);
     }
 
+    @Test
+    public void testListAccountStoragesByCursor() throws IOException {
+        List<KvStorageResponse> storages = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            KvStorageResponse storage = new KvStorageResponse();
+            storage.setId("storage" + i);
+            storages.add(storage);
+        }
+        ListResponse<KvStorageResponse> searchResponse = new ListResponse<>();
+        searchResponse.setResponses(storages);
+
+        setAccountExpectations();
+        when(_kvRequestBuilder.getSearchRequest(UUID, (String)null, (int)PAGE_SIZE)).thenReturn(_searchRequest);
+        when(_kvExecutor.search(_restHighLevelClient, _searchRequest, KvStorageResponse.class)).thenReturn(searchResponse);
+
+        KvStorages response = _kvStorageManager.listAccountStorages(ID, KvStorageManager.FIRST_PAGE_CURSOR, PAGE_SIZE);
+        assertNotNull(response);
+        assertEquals(storages, response.getItems());
+        assertNotNull(response.getCursor());
+
+        SearchRequest nextSearchRequest = new SearchRequest();
+        when(_kvRequestBuilder.getSearchRequest(UUID, storages.get(storages.size() - 1).getId(), (int)PAGE_SIZE)).thenReturn(nextSearchRequest);
+        ListResponse<KvStorageResponse> nextSearchResponse = new ListResponse<>();
+        nextSearchResponse.setResponses(storages.subList(0, 1));
+        when(_kvExecutor.search(_restHighLevelClient, nextSearchRequest, KvStorageResponse.class)).thenReturn(nextSearchResponse);
+
+        KvStorages nextResponse = _kvStorageManager.listAccountStorages(ID, response.getCursor(), PAGE_SIZE);
+        assertNotNull(nextResponse);
+        assertEquals(storages.subList(0, 1), nextResponse.getItems());
+        assertNull(nextResponse.getCursor());
+    }
+
+    @Test
+    public void testListAccountStoragesByCursorInvalidCursor() {
+        setExceptionExpectation(InvalidParameterValueException.class, "cursor");
+        when(_exceptionFactory.getException(InvalidParameterValueCode.INVALID_CURSOR)).thenReturn(new InvalidParameterValueException("Invalid cursor"));
+
+        _kvStorageManager.listAccountStorages(ID, "invalid*cursor", PAGE_SIZE);
+    }
+
+    @Test
+    public void testListAccountStoragesByCursorInvalidPageSize() {
+        setExceptionExpectation(InvalidParameterValueException.class, "page size");
+
+        _kvStorageManager.listAccountStorages(ID, KvStorageManager.FIRST_PAGE_CURSOR, 0L);
+    }
+
     @Test
     public void testDeleteAccountStorageInvalidAccount() {
         setExceptionExpectation(InvalidParameterValueException.class, "account");
@@ -520,7 +592,6 @@ public class KvStorageManagerImplTest {
     public void testDeleteAccountStorage() throws IOException {
         setAccountExpectations();
         setDeleteAccountStorageExpectations(false);
-        when(_kvExecutor.delete(_restHighLevelClient, _deleteStorageRequest)).thenReturn(true);
 
         assertTrue(_kvStorageManager.deleteAccountStorage(ID, STORAGE_UUID));
     }
@@ -533,7 +604,7 @@ public class KvStorageManagerImplTest {
     }
 
     @Test
-    public void testDeleteAccountStoragesByAccount() throws IOException {
+    public void testDeleteAccountStoragesByAccount() throws Exception {
         AccountVO accountVO = new AccountVO();
         accountVO.setUuid(UUID);
 
@@ -544,23 +615,20 @@ public class KvStorageManagerImplTest {
 
         when(_accountDao.findByUuidIncludingRemoved(UUID)).thenReturn(accountVO);
         when(_kvRequestBuilder.getAccountStoragesRequest(eq(UUID), intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
-        when(_kvExecutor.scroll(_restHighLevelClient, _searchRequest, KvStorage.class)).thenReturn(response);
-        for (KvStorage storage : response.getResults()) {
-            when(_kvRequestBuilder.getMarkDeletedRequest(storage)).thenReturn(_updateRequest);
-            doNothing().when(_kvExecutor).update(_restHighLevelClient, _updateRequest);
-        }
-        SearchScrollRequest scrollRequest = new SearchScrollRequest();
-        when(_kvRequestBuilder.getScrollRequest(eq(response.getScrollId()), intThat(greaterThan(0)))).thenReturn(scrollRequest);
-        when(_kvExecutor.scroll(_restHighLevelClient, scrollRequest, KvStorage.class)).thenReturn(new ScrollableListResponse<>("id", null));
+        setScrollExpectations(response.getResults());
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getMarkDeletedBulkRequest(response.getResults())).thenReturn(bulkRequest);
+        when(_kvExecutor.bulk(_restHighLevelClient, bulkRequest)).thenReturn(Collections.emptyMap());
 
         _kvStorageManager.deleteAccountStorages(UUID);
 
-        verify(_kvExecutor).update(_restHighLevelClient, _updateRequest);
+        verify(_kvExecutor).bulk(_restHighLevelClient, bulkRequest);
+        assertTrue(kvStorage.getDeleted());
     }
 
     @SuppressWarnings("unchecked")
     @Test
-    public void testDeleteAccountStoragesForDeletedAccounts() throws IOException {
+    public void testDeleteAccountStoragesForDeletedAccounts() throws Exception {
         KvStorage kvStorage = new KvStorage();
         kvStorage.setId(STORAGE_UUID);
         kvStorage.setType(KvStorage.KvStorageType.ACCOUNT);
@@ -575,19 +643,51 @@ public class KvStorageManagerImplTest {
         SearchCriteria<AccountVO> searchCriteria = mock(SearchCriteria.class);
 
         when(_kvRequestBuilder.getAccountStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
-        when(_kvExecutor.scroll(_restHighLevelClient, _searchRequest, KvStorage.class)).thenReturn(response);
+        setScrollExpectations(response.getResults());
         when(_accountVOByUuidSearchBuilder.create()).thenReturn(searchCriteria);
         doNothing().when(searchCriteria).setParameters(anyString(), eq(response.getResults().stream().map(KvStorage::getAccount).toArray()));
         when(_accountDao.searchIncludingRemoved(same(searchCriteria), eq(null), eq(null), eq(false))).thenReturn(accountVOList);
-        for (KvStorage storage : response.getResults()) {
-            when(_kvRequestBuilder.getMarkDeletedRequest(storage)).thenReturn(_updateRequest);
-            doNothing().when(_kvExecutor).update(_restHighLevelClient, _updateRequest);
-        }
-        SearchScrollRequest scrollRequest = new SearchScrollRequest();
-        when(_kvRequestBuilder.getScrollRequest(eq(response.getScrollId()), intThat(greaterThan(0)))).thenReturn(scrollRequest);
-        when(_kvExecutor.scroll(_restHighLevelClient, scrollRequest, KvStorage.class)).thenReturn(new ScrollableListResponse<>("id", null));
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getMarkDeletedBulkRequest(response.getResults())).thenReturn(bulkRequest);
+        when(_kvExecutor.bulk(_restHighLevelClient, bulkRequest)).thenReturn(Collections.emptyMap());
 
         _kvStorageManager.deleteAccountStoragesForDeletedAccounts();
+
+        verify(_kvExecutor).bulk(_restHighLevelClient, bulkRequest);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDeleteExpungedVmStoragesPartialFailure() throws Exception {
+        KvStorage removedVmStorage = new KvStorage();
+        removedVmStorage.setId(UUID);
+        removedVmStorage.setType(KvStorage.KvStorageType.VM);
+        KvStorage failedStorage = new KvStorage();
+        failedStorage.setId(STORAGE_UUID);
+        failedStorage.setType(KvStorage.KvStorageType.VM);
+        KvStorage existingVmStorage = new KvStorage();
+        existingVmStorage.setId("c0123777-921b-4e62-a7cc-8135015ca571");
+        existingVmStorage.setType(KvStorage.KvStorageType.VM);
+        ScrollableListResponse<KvStorage> response = new ScrollableListResponse<>("scrollId", ImmutableList.of(removedVmStorage, failedStorage, existingVmStorage));
+        VMInstanceVO existingVm = mock(VMInstanceVO.class);
+        when(existingVm.getUuid()).thenReturn(existingVmStorage.getId());
+        when(existingVm.isRemoved()).thenReturn(false);
+        SearchCriteria<VMInstanceVO> searchCriteria = mock(SearchCriteria.class);
+
+        when(_kvRequestBuilder.getVmStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
+        setScrollExpectations(response.getResults());
+        when(_vmInstanceVOByUuidSearchBuilder.create()).thenReturn(searchCriteria);
+        when(_vmInstanceDao.searchIncludingRemoved(same(searchCriteria), eq(null), eq(null), eq(false))).thenReturn(ImmutableList.of(existingVm));
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getMarkDeletedBulkRequest(ImmutableList.of(removedVmStorage, failedStorage))).thenReturn(bulkRequest);
+        when(_kvExecutor.bulk(_restHighLevelClient, bulkRequest)).thenReturn(ImmutableMap.of(STORAGE_UUID, "failure"));
+
+        _kvStorageManager.deleteExpungedVmStorages();
+
+        verify(_kvExecutor).bulk(_restHighLevelClient, bulkRequest);
+        verify(_kvStorageCacheInvalidator).invalidate(ImmutableList.of(removedVmStorage.getId()));
+        verify(_kvExecutor).scroll(eq(_restHighLevelClient), eq(_searchRequest), intThat(greaterThan(0)), eq(KvStorage.class), any(CheckedConsumer.class));
+        verify(_kvExecutor, never()).update(eq(_restHighLevelClient), any(UpdateRequest.class));
     }
 
     @Test
@@ -788,7 +888,6 @@ public class KvStorageManagerImplTest {
     public void testDeleteVmStorageDeleteRequestException() throws IOException {
         setVmExpectations();
         setDeleteVmStorageExpectations(true);
-        when(_kvExecutor.delete(_restHighLevelClient, _deleteStorageRequest)).thenThrow(new IOException());
 
         assertFalse(_kvStorageManager.deleteVmStorage(UUID));
     }
@@ -797,7 +896,6 @@ public class KvStorageManagerImplTest {
     public void testDeleteVmStorage() throws IOException {
         setVmExpectations();
         setDeleteVmStorageExpectations(false);
-        when(_kvExecutor.delete(_restHighLevelClient, _deleteStorageRequest)).thenReturn(true);
 
         assertTrue(_kvStorageManager.deleteVmStorage(UUID));
     }
@@ -808,32 +906,133 @@ public class KvStorageManagerImplTest {
         long timestamp = System.currentTimeMillis();
         when(_timeManager.getCurrentTimestamp()).thenReturn(timestamp);
         when(_kvRequestBuilder.getExpireTempStorageRequest(timestamp)).thenReturn(request);
-        when(_restHighLevelClient.getLowLevelClient()).thenReturn(_restClient);
-        when(_restClient.performRequest(request.getMethod(), request.getEndpoint(), request.getParameters(), request.getEntity())).thenReturn(_response);
-        when(_response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null));
+        when(_kvExecutor.byQuery(_restHighLevelClient, request)).thenReturn(getByQueryResponse(0, Collections.emptyList()));
 
         _kvStorageManager.expireTempStorages();
+
+        verify(_kvExecutor).byQuery(_restHighLevelClient, request);
     }
 
     @Test
-    public void testCleanupStorages() throws IOException {
+    public void testCleanupStorages() throws Exception {
         when(_kvRequestBuilder.getDeletedStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
         ScrollableListResponse<KvStorage> response = new ScrollableListResponse<>("scrollId", Collections.singletonList(new KvStorage()));
-        when(_kvExecutor.scroll(_restHighLevelClient, _searchRequest, KvStorage.class)).thenReturn(response);
-        for (KvStorage storage : response.getResults()) {
-            when(_kvRequestBuilder.getDeleteRequest(storage)).thenReturn(_deleteStorageRequest);
-            when(_kvExecutor.delete(_restHighLevelClient, _deleteStorageRequest)).thenReturn(true);
+        setScrollExpectations(response.getResults());
+        DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest();
+        when(_kvRequestBuilder.getDeleteIndicesRequest(response.getResults())).thenReturn(deleteIndexRequest);
+        when(_kvExecutor.deleteIndicesAsync(_restHighLevelClient, deleteIndexRequest)).thenReturn(CompletableFuture.completedFuture(true));
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getRegistryDeleteBulkRequest(response.getResults())).thenReturn(bulkRequest);
+        when(_kvExecutor.bulkAsync(_restHighLevelClient, bulkRequest)).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
+
+        _kvStorageManager.cleanupStorages();
+
+        verify(_kvExecutor).bulkAsync(_restHighLevelClient, bulkRequest);
+    }
+
+    @Test
+    public void testCleanupStoragesSharedLayout() throws Exception {
+        testCleanupStoragesSharedLayout(getByQueryResponse(0, Collections.emptyList()), true);
+    }
+
+    @Test
+    public void testCleanupStoragesSharedLayoutDataDeletionFailure() throws Exception {
+        testCleanupStoragesSharedLayout(null, false);
+    }
+
+    @Test
+    public void testCleanupStoragesSharedLayoutVersionConflicts() throws Exception {
+        testCleanupStoragesSharedLayout(getByQueryResponse(2, Collections.emptyList()), false);
+    }
+
+    @Test
+    public void testCleanupStoragesSharedLayoutDeletionFailures() throws Exception {
+        testCleanupStoragesSharedLayout(getByQueryResponse(0, Collections.singletonList(ImmutableMap.of("shard", 0))), false);
+    }
+
+    @Test
+    public void testCleanupStoragesMultipleBatches() throws Exception {
+        when(_kvRequestBuilder.getDeletedStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
+        List<KvStorage> storages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            KvStorage storage = new KvStorage();
+            storage.setId("storage" + i);
+            storages.add(storage);
         }
-        SearchScrollRequest scrollRequest = new SearchScrollRequest();
-        when(_kvRequestBuilder.getScrollRequest(eq(response.getScrollId()), intThat(greaterThan(0)))).thenReturn(scrollRequest);
-        when(_kvExecutor.scroll(_restHighLevelClient, scrollRequest, KvStorage.class)).thenReturn(new ScrollableListResponse<>("id", null));
+        ScrollableListResponse<KvStorage> response = new ScrollableListResponse<>("scrollId", storages);
+        setScrollExpectations(response.getResults());
+        DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest();
+        when(_kvRequestBuilder.getDeleteIndicesRequest(anyListOf(KvStorage.class))).thenReturn(deleteIndexRequest);
+        when(_kvExecutor.deleteIndicesAsync(_restHighLevelClient, deleteIndexRequest)).thenReturn(CompletableFuture.completedFuture(true));
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getRegistryDeleteBulkRequest(anyListOf(KvStorage.class))).thenReturn(bulkRequest);
+        when(_kvExecutor.bulkAsync(_restHighLevelClient, bulkRequest)).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
 
         _kvStorageManager.cleanupStorages();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<KvStorage>> captor = ArgumentCaptor.forClass((Class)List.class);
+        verify(_kvRequestBuilder, times(3)).getRegistryDeleteBulkRequest(captor.capture());
+        List<KvStorage> deletedStorages = new ArrayList<>();
+        captor.getAllValues().forEach(deletedStorages::addAll);
+        assertEquals(new HashSet<>(storages), new HashSet<>(deletedStorages));
+        verify(_kvExecutor, times(3)).bulkAsync(_restHighLevelClient, bulkRequest);
+    }
+
+    @Test
+    public void testCleanupStoragesWaitsForBatches() throws Exception {
+        when(_kvRequestBuilder.getDeletedStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
+        List<KvStorage> storages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            KvStorage storage = new KvStorage();
+            storage.setId("storage" + i);
+            storages.add(storage);
+        }
+        setScrollExpectations(storages);
+        DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest();
+        when(_kvRequestBuilder.getDeleteIndicesRequest(anyListOf(KvStorage.class))).thenReturn(deleteIndexRequest);
+        List<CompletableFuture<Boolean>> deletions = new CopyOnWriteArrayList<>();
+        CountDownLatch deletionsStarted = new CountDownLatch(3);
+        when(_kvExecutor.deleteIndicesAsync(_restHighLevelClient, deleteIndexRequest)).thenAnswer(invocation -> {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            deletions.add(future);
+            deletionsStarted.countDown();
+            return future;
+        });
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getRegistryDeleteBulkRequest(anyListOf(KvStorage.class))).thenReturn(bulkRequest);
+        when(_kvExecutor.bulkAsync(_restHighLevelClient, bulkRequest)).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
+
+        Thread cleanup = new Thread(_kvStorageManager::cleanupStorages);
+        cleanup.start();
+        deletionsStarted.await();
+
+        // batches are deleted asynchronously and the cleanup waits for them
+        assertTrue(cleanup.isAlive());
+        verify(_kvExecutor, never()).bulkAsync(eq(_restHighLevelClient), any(BulkRequest.class));
+        deletions.forEach(future -> future.complete(true));
+        cleanup.join();
+        verify(_kvExecutor, times(3)).bulkAsync(_restHighLevelClient, bulkRequest);
+    }
+
+    @Test
+    public void testCleanupStoragesIndexDeletionFailure() throws Exception {
+        when(_kvRequestBuilder.getDeletedStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
+        ScrollableListResponse<KvStorage> response = new ScrollableListResponse<>("scrollId", Collections.singletonList(new KvStorage()));
+        setScrollExpectations(response.getResults());
+        DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest();
+        when(_kvRequestBuilder.getDeleteIndicesRequest(response.getResults())).thenReturn(deleteIndexRequest);
+        when(_kvExecutor.deleteIndicesAsync(_restHighLevelClient, deleteIndexRequest)).thenReturn(CompletableFuture.completedFuture(false));
+
+        _kvStorageManager.cleanupStorages();
+
+        verify(_kvExecutor).deleteIndicesAsync(_restHighLevelClient, deleteIndexRequest);
+        verify(_kvExecutor, never()).bulkAsync(eq(_restHighLevelClient), any(BulkRequest.class));
     }
 
     @SuppressWarnings("unchecked")
     @Test
-    public void testDeleteExpungedVmStorages() throws IOException {
+    public void testDeleteExpungedVmStorages() throws Exception {
         ScrollableListResponse<KvStorage> response = new ScrollableListResponse<>("scrollId", Collections.singletonList(new KvStorage()));
         List<VMInstanceVO> vmInstanceVOList = response.getResults().stream().map(storage -> {
             VMInstanceVO vm = mock(VMInstanceVO.class);
@@ -844,17 +1043,13 @@ public class KvStorageManagerImplTest {
         SearchCriteria<VMInstanceVO> searchCriteria = mock(SearchCriteria.class);
 
         when(_kvRequestBuilder.getVmStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
-        when(_kvExecutor.scroll(_restHighLevelClient, _searchRequest, KvStorage.class)).thenReturn(response);
+        setScrollExpectations(response.getResults());
         when(_vmInstanceVOByUuidSearchBuilder.create()).thenReturn(searchCriteria);
         doNothing().when(searchCriteria).setParameters(anyString(), eq(response.getResults().stream().map(KvStorage::getId).toArray()));
         when(_vmInstanceDao.searchIncludingRemoved(same(searchCriteria), eq(null), eq(null), eq(false))).thenReturn(vmInstanceVOList);
-        for (KvStorage storage : response.getResults()) {
-            when(_kvRequestBuilder.getMarkDeletedRequest(storage)).thenReturn(_updateRequest);
-            doNothing().when(_kvExecutor).update(_restHighLevelClient, _updateRequest);
-        }
-        SearchScrollRequest scrollRequest = new SearchScrollRequest();
-        when(_kvRequestBuilder.getScrollRequest(eq(response.getScrollId()), intThat(greaterThan(0)))).thenReturn(scrollRequest);
-        when(_kvExecutor.scroll(_restHighLevelClient, scrollRequest, KvStorage.class)).thenReturn(new ScrollableListResponse<>("id", null));
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getMarkDeletedBulkRequest(response.getResults())).thenReturn(bulkRequest);
+        when(_kvExecutor.bulk(_restHighLevelClient, bulkRequest)).thenReturn(Collections.emptyMap());
 
         _kvStorageManager.deleteExpungedVmStorages();
     }
@@ -929,6 +1124,7 @@ public class KvStorageManagerImplTest {
         assertSame(updatedStorage, storage);
 
         verify(_kvExecutor).update(_restHighLevelClient, _updateRequest);
+        verify(_kvStorageCacheInvalidator).invalidate(Collections.singleton(UUID));
     }
 
     @Test
@@ -993,6 +1189,33 @@ public class KvStorageManagerImplTest {
 
         KvOperationResponse response = _kvStorageManager.getValue(STORAGE.getId(), KEY);
         assertSame(result, response);
+        verify(_kvValueCache).put(STORAGE, KEY, result);
+    }
+
+    @Test
+    public void testGetValueWrittenDuringRetrieval() throws ExecutionException {
+        setStorageCacheExpectations(STORAGE);
+        KvValue result = new KvValue(VALUE);
+        KvReadCoalescer readCoalescer = (KvReadCoalescer)ReflectionTestUtils.getField(_kvStorageManager, "_readCoalescer");
+        when(_kvOperationManager.get(STORAGE, KEY)).thenAnswer(invocation -> {
+            readCoalescer.write(STORAGE.getId(), () -> null);
+            return result;
+        });
+
+        KvOperationResponse response = _kvStorageManager.getValue(STORAGE.getId(), KEY);
+        assertSame(result, response);
+        verify(_kvValueCache, never()).put(STORAGE, KEY, result);
+    }
+
+    @Test
+    public void testGetValueCached() throws ExecutionException {
+        setStorageCacheExpectations(STORAGE);
+        KvValue result = new KvValue(VALUE);
+        when(_kvValueCache.get(STORAGE, KEY)).thenReturn(result);
+
+        KvOperationResponse response = _kvStorageManager.getValue(STORAGE.getId(), KEY);
+        assertSame(result, response);
+        verify(_kvOperationManager, never()).get(STORAGE, KEY);
     }
 
     @Test
@@ -1055,6 +1278,34 @@ public class KvStorageManagerImplTest {
 
         KvPair response = _kvStorageManager.setValue(STORAGE.getId(), KEY, VALUE);
         assertSame(result, response);
+        verify(_kvValueCache).invalidate(STORAGE.getId(), Collections.singleton(KEY));
+    }
+
+    @Test
+    public void testSetValueBatched() throws ExecutionException {
+        KvWriteBatcher kvWriteBatcher = mock(KvWriteBatcher.class);
+        ReflectionTestUtils.setField(_kvStorageManager, "_kvWriteBatcher", kvWriteBatcher);
+        setStorageCacheExpectations(STORAGE);
+        KvPair result = new KvPair(KEY, VALUE);
+        when(kvWriteBatcher.set(STORAGE, KEY, VALUE)).thenReturn(result);
+
+        KvPair response = _kvStorageManager.setValue(STORAGE.getId(), KEY, VALUE);
+        assertSame(result, response);
+        verify(_kvOperationManager, never()).set(STORAGE, KEY, VALUE);
+        verify(_kvValueCache).invalidate(STORAGE.getId(), Collections.singleton(KEY));
+    }
+
+    @Test
+    public void testSetValueHistoryEnabledNotBatched() throws ExecutionException {
+        KvWriteBatcher kvWriteBatcher = mock(KvWriteBatcher.class);
+        ReflectionTestUtils.setField(_kvStorageManager, "_kvWriteBatcher", kvWriteBatcher);
+        setStorageCacheExpectations(HISTORY_ENABLED_STORAGE);
+        KvPair result = new KvPair(KEY, VALUE);
+        when(_kvOperationManager.set(HISTORY_ENABLED_STORAGE, KEY, VALUE)).thenReturn(result);
+
+        KvPair response = _kvStorageManager.setValue(HISTORY_ENABLED_STORAGE.getId(), KEY, VALUE);
+        assertSame(result, response);
+        verifyZeroInteractions(kvWriteBatcher);
     }
 
     @Test
@@ -1086,6 +1337,7 @@ public class KvStorageManagerImplTest {
 
         KvResult response = _kvStorageManager.setValues(STORAGE.getId(), DATA);
         assertSame(result, response);
+        verify(_kvValueCache).invalidate(STORAGE.getId(), DATA.keySet());
     }
 
     @Test
@@ -1148,6 +1400,7 @@ public class KvStorageManagerImplTest {
 
         KvResult response = _kvStorageManager.deleteKeys(STORAGE.getId(), DATA.keySet());
         assertSame(result, response);
+        verify(_kvValueCache).invalidate(STORAGE.getId(), DATA.keySet());
     }
 
     @Test
@@ -1181,6 +1434,48 @@ public class KvStorageManagerImplTest {
         assertSame(result, response);
     }
 
+    @Test
+    public void testListKeysWithoutPagination() throws ExecutionException {
+        setStorageCacheExpectations(STORAGE);
+        KvKeys result = new KvKeys(new ArrayList<>(DATA.keySet()));
+        when(_kvOperationManager.list(STORAGE)).thenReturn(result);
+
+        KvKeys response = _kvStorageManager.listKeys(STORAGE.getId(), "", null, null);
+        assertSame(result, response);
+    }
+
+    @Test
+    public void testListKeysPage() throws ExecutionException {
+        setStorageCacheExpectations(STORAGE);
+        KvKeys result = new KvKeys(new ArrayList<>(DATA.keySet()), "cursor");
+        when(_kvOperationManager.list(STORAGE, "key", "previous cursor", DATA.size())).thenReturn(result);
+
+        KvKeys response = _kvStorageManager.listKeys(STORAGE.getId(), "key", "previous cursor", DATA.size());
+        assertSame(result, response);
+    }
+
+    @Test
+    public void testListKeysPageDefaultSize() throws ExecutionException {
+        setStorageCacheExpectations(STORAGE);
+        KvKeys result = new KvKeys(new ArrayList<>(DATA.keySet()));
+        when(_kvOperationManager.list(STORAGE, "key", null, KvStorageManager.KvStorageKeysPageSizeMax.value())).thenReturn(result);
+
+        KvKeys response = _kvStorageManager.listKeys(STORAGE.getId(), "key", "", null);
+        assertSame(result, response);
+    }
+
+    @Test
+    public void testListKeysPageInvalidSize() {
+        expectedException.expect(InvalidParameterValueException.class);
+        _kvStorageManager.listKeys(STORAGE.getId(), null, null, 0);
+    }
+
+    @Test
+    public void testListKeysPageSizeAboveMaximum() {
+        expectedException.expect(InvalidParameterValueException.class);
+        _kvStorageManager.listKeys(STORAGE.getId(), null, null, KvStorageManager.KvStorageKeysPageSizeMax.value() + 1);
+    }
+
     @Test
     public void testClearNonexistentStorage() throws ExecutionException, IOException {
         setNonexistentStorageCacheExpectations();
@@ -1210,6 +1505,7 @@ public class KvStorageManagerImplTest {
 
         KvOperationResponse response = _kvStorageManager.clear(STORAGE.getId());
         assertSame(result, response);
+        verify(_kvValueCache).invalidateAll(STORAGE.getId());
     }
 
     @Test
@@ -1335,11 +1631,11 @@ public class KvStorageManagerImplTest {
         Request request = new Request("POST", "http://localhost:9200", Collections.emptyMap(), new StringEntity("body"));
         daoPreparer.setExpectations();
         requestPreparer.accept(request);
-        when(_restHighLevelClient.getLowLevelClient()).thenReturn(_restClient);
-        when(_restClient.performRequest(request.getMethod(), request.getEndpoint(), request.getParameters(), request.getEntity())).thenReturn(_response);
-        when(_response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null));
+        when(_kvExecutor.byQuery(_restHighLevelClient, request)).thenReturn(getByQueryResponse(0, Collections.emptyList()));
 
         testMethodCaller.accept(_kvStorageManager);
+
+        verify(_kvExecutor).byQuery(_restHighLevelClient, request);
     }
 
     private void testGetKvStorageException(Class<? extends Exception> resultException, Exception checkerException) throws IOException {
@@ -1527,4 +1823,53 @@ public class KvStorageManagerImplTest {
         when(_kvExecutor.get(_restHighLevelClient, _getRequest, KvStorage.class)).thenReturn(storage);
         when(_exceptionFactory.getException(InvalidParameterValueCode.NONEXISTENT_STORAGE)).thenReturn(new InvalidParameterValueException("not found"));
     }
+
+    /**
+     * @param dataDeletionResponse the response of the delete by query request; null fails the request
+     */
+    private void testCleanupStoragesSharedLayout(ByQueryResponse dataDeletionResponse, boolean sharedDeleted) throws Exception {
+        when(_kvRequestBuilder.getDeletedStoragesRequest(intThat(greaterThan(0)), intThat(greaterThan(0)))).thenReturn(_searchRequest);
+        KvStorage dedicatedStorage = new KvStorage(UUID, SECRET_KEY, true);
+        KvStorage sharedStorage = new KvStorage("c0123777-921b-4e62-a7cc-8135015ca571", SECRET_KEY, true);
+        sharedStorage.setLayout(KvStorage.KvStorageLayout.SHARED);
+        sharedStorage.setSharedIndex(0);
+        ScrollableListResponse<KvStorage> response = new ScrollableListResponse<>("scrollId", ImmutableList.of(dedicatedStorage, sharedStorage));
+        setScrollExpectations(response.getResults());
+        DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest();
+        when(_kvRequestBuilder.getDeleteIndicesRequest(Collections.singletonList(dedicatedStorage))).thenReturn(deleteIndexRequest);
+        when(_kvExecutor.deleteIndicesAsync(_restHighLevelClient, deleteIndexRequest)).thenReturn(CompletableFuture.completedFuture(true));
+        Request request = new Request("POST", "storage-data-shared-0/_delete_by_query", Collections.emptyMap(), new StringEntity("body"));
+        when(_kvRequestBuilder.getDeleteSharedStoragesDataRequest(Collections.singletonList(sharedStorage))).thenReturn(request);
+        if (dataDeletionResponse != null) {
+            when(_kvExecutor.byQueryAsync(_restHighLevelClient, request)).thenReturn(CompletableFuture.completedFuture(dataDeletionResponse));
+        } else {
+            CompletableFuture<ByQueryResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(new CloudRuntimeException("Failed to execute by query operation"));
+            when(_kvExecutor.byQueryAsync(_restHighLevelClient, request)).thenReturn(future);
+        }
+        List<KvStorage> deletedStorages = sharedDeleted ? ImmutableList.of(dedicatedStorage, sharedStorage) : Collections.singletonList(dedicatedStorage);
+        BulkRequest bulkRequest = new BulkRequest();
+        when(_kvRequestBuilder.getRegistryDeleteBulkRequest(deletedStorages)).thenReturn(bulkRequest);
+        when(_kvExecutor.bulkAsync(_restHighLevelClient, bulkRequest)).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
+
+        _kvStorageManager.cleanupStorages();
+
+        verify(_kvRequestBuilder).getRegistryDeleteBulkRequest(deletedStorages);
+        verify(_kvExecutor).bulkAsync(_restHighLevelClient, bulkRequest);
+    }
+
+    private ByQueryResponse getByQueryResponse(long versionConflicts, List<Object> failures) {
+        ByQueryResponse response = new ByQueryResponse();
+        response.setVersionConflicts(versionConflicts);
+        response.setFailures(failures);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setScrollExpectations(List<KvStorage> results) throws Exception {
+        doAnswer(invocation -> {
+            ((CheckedConsumer<List<KvStorage>, Exception>)invocation.getArguments()[4]).accept(results);
+            return null;
+        }).when(_kvExecutor).scroll(eq(_restHighLevelClient), eq(_searchRequest), intThat(greaterThan(0)), eq(KvStorage.class), any(CheckedConsumer.class));
+    }
 }
@@ -0,0 +1,246 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.bwsw.cloudstack.storage.kv.service;
+
+import com.bwsw.cloudstack.storage.kv.entity.KvStorage;
+import com.bwsw.cloudstack.storage.kv.response.KvPair;
+import com.bwsw.cloudstack.storage.kv.response.KvResult;
+import com.cloud.exception.InvalidParameterValueException;
+import com.google.common.collect.ImmutableMap;
+import org.apache.cloudstack.api.ServerApiException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KvWriteBatcherTest {
+
+    private static final KvStorage STORAGE = new KvStorage("e0123777-921b-4e62-a7cc-8135015ca571", "secret", false);
+    private static final String KEY = "key";
+    private static final String VALUE = "value";
+    private static final Map<String, String> DATA = ImmutableMap.of("key1", "one", "key2", "two");
+    private static final int WINDOW = 50;
+    private static final long TIMEOUT = 5;
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Mock
+    private KvAsyncOperationManager _kvAsyncOperationManager;
+
+    @Mock
+    private ScheduledExecutorService _scheduler;
+
+    private final BlockingQueue<Runnable> _scheduledFlushes = new LinkedBlockingQueue<>();
+
+    private final ExecutorService _executorService = Executors.newFixedThreadPool(DATA.size());
+
+    private KvWriteBatcher _kvWriteBatcher;
+
+    @Before
+    public void before() {
+        // batch windows elapse only when the test runs scheduled flushes
+        when(_scheduler.schedule(any(Runnable.class), eq((long)WINDOW), eq(TimeUnit.MILLISECONDS))).thenAnswer(invocation -> {
+            _scheduledFlushes.add(invocation.getArgumentAt(0, Runnable.class));
+            return null;
+        });
+        _kvWriteBatcher = new KvWriteBatcher(_kvAsyncOperationManager, WINDOW, DATA.size(), _scheduler);
+    }
+
+    @After
+    public void after() {
+        _executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSetWindowElapsed() throws Exception {
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, VALUE))).thenReturn(CompletableFuture.completedFuture(new KvResult(ImmutableMap.of(KEY, true))));
+
+        KvPair result = setWindowElapsed(KEY, VALUE);
+        assertEquals(KEY, result.getKey());
+        assertEquals(VALUE, result.getValue());
+    }
+
+    @Test
+    public void testSetMaxSizeReached() throws Exception {
+        when(_kvAsyncOperationManager.setAsync(STORAGE, DATA)).thenReturn(CompletableFuture.completedFuture(new KvResult(ImmutableMap.of("key1", true, "key2", true))));
+
+        Future<KvPair> first = _executorService.submit(() -> _kvWriteBatcher.set(STORAGE, "key1", "one"));
+        Future<KvPair> second = _executorService.submit(() -> _kvWriteBatcher.set(STORAGE, "key2", "two"));
+
+        KvPair firstResult = first.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("key1", firstResult.getKey());
+        assertEquals("one", firstResult.getValue());
+        KvPair secondResult = second.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("key2", secondResult.getKey());
+        assertEquals("two", secondResult.getValue());
+        verify(_kvAsyncOperationManager).setAsync(eq(STORAGE), any());
+    }
+
+    @Test
+    public void testSetWindowElapsedAfterMaxSizeReached() throws Exception {
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, VALUE))).thenReturn(CompletableFuture.completedFuture(new KvResult(ImmutableMap.of(KEY, true))));
+        KvWriteBatcher kvWriteBatcher = new KvWriteBatcher(_kvAsyncOperationManager, WINDOW, 1, _scheduler);
+
+        kvWriteBatcher.set(STORAGE, KEY, VALUE);
+        elapseWindow();
+
+        verify(_kvAsyncOperationManager).setAsync(eq(STORAGE), any());
+    }
+
+    @Test
+    public void testSetDuplicateKey() throws Exception {
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, "one"))).thenReturn(CompletableFuture.completedFuture(new KvResult(ImmutableMap.of(KEY, true))));
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, "two"))).thenReturn(CompletableFuture.completedFuture(new KvResult(ImmutableMap.of(KEY, true))));
+
+        Future<KvPair> first = _executorService.submit(() -> _kvWriteBatcher.set(STORAGE, KEY, "one"));
+        // the flush is scheduled when the first batch is started
+        Runnable firstFlush = _scheduledFlushes.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull(firstFlush);
+        verify(_kvAsyncOperationManager, never()).setAsync(any(), any());
+        Future<KvPair> second = _executorService.submit(() -> _kvWriteBatcher.set(STORAGE, KEY, "two"));
+
+        assertEquals("one", first.get(TIMEOUT, TimeUnit.SECONDS).getValue());
+        verify(_kvAsyncOperationManager).setAsync(STORAGE, ImmutableMap.of(KEY, "one"));
+        verify(_kvAsyncOperationManager, never()).setAsync(STORAGE, ImmutableMap.of(KEY, "two"));
+        assertFalse(second.isDone());
+
+        firstFlush.run();
+        assertFalse(second.isDone());
+        elapseWindow();
+        assertEquals("two", second.get(TIMEOUT, TimeUnit.SECONDS).getValue());
+    }
+
+    @Test
+    public void testSetInvalidPair() throws Exception {
+        expectedException.expect(InvalidParameterValueException.class);
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, VALUE))).thenReturn(CompletableFuture.completedFuture(new KvResult(ImmutableMap.of(KEY, false))));
+
+        setWindowElapsed(KEY, VALUE);
+    }
+
+    @Test
+    public void testSetMissingResult() throws Exception {
+        expectedException.expect(ServerApiException.class);
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, VALUE))).thenReturn(CompletableFuture.completedFuture(new KvResult()));
+
+        setWindowElapsed(KEY, VALUE);
+    }
+
+    @Test
+    public void testSetOperationException() throws Exception {
+        InvalidParameterValueException exception = new InvalidParameterValueException("not found");
+        expectedException.expect(exception.getClass());
+        CompletableFuture<KvResult> future = new CompletableFuture<>();
+        future.completeExceptionally(exception);
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, VALUE))).thenReturn(future);
+
+        setWindowElapsed(KEY, VALUE);
+    }
+
+    @Test
+    public void testSetRejectedBatch() throws Exception {
+        CompletableFuture<KvResult> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new InvalidParameterValueException("Key/value pairs are invalid"));
+        when(_kvAsyncOperationManager.setAsync(STORAGE, DATA)).thenReturn(rejected);
+        when(_kvAsyncOperationManager.setAsync(STORAGE, "key1", "one")).thenReturn(CompletableFuture.completedFuture(new KvPair("key1", "one")));
+        CompletableFuture<KvPair> invalid = new CompletableFuture<>();
+        invalid.completeExceptionally(new InvalidParameterValueException("Key/value pair is invalid"));
+        when(_kvAsyncOperationManager.setAsync(STORAGE, "key2", "two")).thenReturn(invalid);
+
+        Future<KvPair> first = _executorService.submit(() -> _kvWriteBatcher.set(STORAGE, "key1", "one"));
+        Future<KvPair> second = _executorService.submit(() -> _kvWriteBatcher.set(STORAGE, "key2", "two"));
+
+        // pairs of the rejected batch are set one by one so that only invalid ones fail
+        assertEquals("one", first.get(TIMEOUT, TimeUnit.SECONDS).getValue());
+        try {
+            second.get(TIMEOUT, TimeUnit.SECONDS);
+            fail("Invalid key/value pair expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvalidParameterValueException);
+        }
+    }
+
+    @Test
+    public void testSetRejectedSinglePairBatch() throws Exception {
+        expectedException.expect(InvalidParameterValueException.class);
+        CompletableFuture<KvResult> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new InvalidParameterValueException("Key/value pairs are invalid"));
+        when(_kvAsyncOperationManager.setAsync(STORAGE, ImmutableMap.of(KEY, VALUE))).thenReturn(rejected);
+
+        try {
+            setWindowElapsed(KEY, VALUE);
+        } finally {
+            verify(_kvAsyncOperationManager, never()).setAsync(any(), any(), any());
+        }
+    }
+
+    @Test
+    public void testSetEmptyKey() {
+        expectedException.expect(InvalidParameterValueException.class);
+
+        try {
+            _kvWriteBatcher.set(STORAGE, "", VALUE);
+        } finally {
+            verify(_kvAsyncOperationManager, never()).setAsync(any(), any());
+        }
+    }
+
+    private KvPair setWindowElapsed(String key, String value) throws Exception {
+        Future<KvPair> future = _executorService.submit(() -> _kvWriteBatcher.set(STORAGE, key, value));
+        elapseWindow();
+        try {
+            return future.get(TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (Exception)e.getCause();
+        }
+    }
+
+    private void elapseWindow() throws InterruptedException {
+        Runnable flush = _scheduledFlushes.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull(flush);
+        flush.run();
+    }
+}